@@ -0,0 +1,115 @@
+package com.heig.entities.workflow.data;
+
+import com.heig.entities.workflow.types.WorkflowTypes;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the {@link BinaryCodec} with the Java serialization previously used to store the values in the cache.
+ * The values are written to and read from memory to only measure the encoding.
+ * Run with : mvn -Pbenchmark test-compile exec:exec -Dbenchmark=BinaryCodecBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BinaryCodecBenchmark {
+    /**
+     * The kind of value encoded
+     */
+    @Param({ "integers", "strings", "map", "nested" })
+    public String payload;
+
+    private Object value;
+    private byte[] encodedCodec;
+    private byte[] encodedJava;
+
+    @Setup
+    public void setup() throws IOException {
+        var random = new Random(42);
+        value = switch (payload) {
+            case "integers" -> {
+                var lst = new LinkedList<Integer>();
+                for (var i = 0; i < 100_000; i++) {
+                    lst.add(random.nextInt(1000));
+                }
+                yield lst;
+            }
+            case "strings" -> {
+                var lst = new LinkedList<String>();
+                for (var i = 0; i < 20_000; i++) {
+                    lst.add("value-" + random.nextInt());
+                }
+                yield lst;
+            }
+            case "map" -> {
+                var map = new HashMap<String, Double>();
+                for (var i = 0; i < 20_000; i++) {
+                    map.put("key-" + i, random.nextDouble());
+                }
+                yield map;
+            }
+            case "nested" -> {
+                var lst = new LinkedList<HashMap<String, LinkedList<Long>>>();
+                for (var i = 0; i < 1_000; i++) {
+                    var map = new HashMap<String, LinkedList<Long>>();
+                    for (var j = 0; j < 10; j++) {
+                        var values = new LinkedList<Long>();
+                        for (var k = 0; k < 10; k++) {
+                            values.add(random.nextLong() % 10_000);
+                        }
+                        map.put("key-" + j, values);
+                    }
+                    lst.add(map);
+                }
+                yield lst;
+            }
+            default -> throw new IllegalArgumentException("Unknown payload " + payload);
+        };
+        encodedCodec = encodeCodec();
+        encodedJava = encodeJava();
+        System.out.printf("%n%s : binary codec %d bytes, java serialization %d bytes%n", payload, encodedCodec.length, encodedJava.length);
+    }
+
+    @Benchmark
+    public byte[] encodeCodec() throws IOException {
+        var baos = new ByteArrayOutputStream();
+        try (var dos = new DataOutputStream(new BufferedOutputStream(baos))) {
+            BinaryCodec.encode(dos, "value", value);
+        }
+        return baos.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] encodeJava() throws IOException {
+        //Same as the previous implementation : the type in a first stream, the value in a second one
+        var baosType = new ByteArrayOutputStream();
+        try (var oos = new ObjectOutputStream(baosType)) {
+            oos.writeObject(WorkflowTypes.typeToString(WorkflowTypes.fromObject(value)));
+        }
+        var baos = new ByteArrayOutputStream();
+        try (var oos = new ObjectOutputStream(new BufferedOutputStream(baos))) {
+            oos.writeObject(value);
+        }
+        return baos.toByteArray();
+    }
+
+    @Benchmark
+    public Object decodeCodec() throws IOException {
+        try (var dis = new DataInputStream(new BufferedInputStream(new ByteArrayInputStream(encodedCodec)))) {
+            return BinaryCodec.decode(dis).value();
+        }
+    }
+
+    @Benchmark
+    public Object decodeJava() throws IOException, ClassNotFoundException {
+        try (var ois = new ObjectInputStream(new BufferedInputStream(new ByteArrayInputStream(encodedJava)))) {
+            return ois.readObject();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.heig.entities.workflow.data;
+
+import com.heig.entities.workflow.execution.NodeArguments;
+import com.heig.entities.workflow.execution.WorkflowExecutor;
+import com.heig.entities.workflow.nodes.CodeNode;
+import com.heig.entities.workflow.types.WCollection;
+import com.heig.entities.workflow.types.WPrimitive;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.heig.testHelpers.TestUtils.createWorkflowExecutor;
+
+/**
+ * Measures how the {@link Cache} of one workflow scales when independent nodes use it from multiple threads.
+ * Each invocation sets and gets an entry for every node, the nodes being split between the threads.
+ * Run with : mvn -Pbenchmark test-compile exec:exec -Dbenchmark=CacheBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CacheBenchmark {
+    /**
+     * The number of threads using the cache
+     */
+    @Param({ "1", "2", "4", "8" })
+    public int threads;
+
+    private WorkflowExecutor workflowExecutor;
+    private Cache cache;
+    private final List<CodeNode> nodes = new ArrayList<>();
+    private ExecutorService executor;
+    private int iteration = 0;
+
+    @Setup
+    public void setup() {
+        Data.clearAll();
+        workflowExecutor = createWorkflowExecutor("cache-benchmark");
+        for (var i = 0; i < 64; i++) {
+            var node = workflowExecutor.getWorkflow().getNodeBuilder().buildCodeNode();
+            node.getConnectorBuilder().buildInputConnector("param", WPrimitive.Integer);
+            node.getConnectorBuilder().buildOutputConnector("result", WCollection.of(WPrimitive.Integer));
+            node.setCode("outputs.put('result', []);");
+            nodes.add(node);
+        }
+        cache = Data.getOrCreate(workflowExecutor).getCache();
+        executor = Executors.newFixedThreadPool(threads);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+        workflowExecutor.delete();
+    }
+
+    @Benchmark
+    public void setAndGet() throws Exception {
+        //A new value each time, so the entries are written to the disk
+        var value = iteration++;
+        var futures = new LinkedList<Future<?>>();
+        for (var t = 0; t < threads; t++) {
+            var thread = t;
+            futures.add(executor.submit(() -> {
+                for (var i = thread; i < nodes.size(); i += threads) {
+                    var node = nodes.get(i);
+                    var inputs = new NodeArguments();
+                    inputs.putArgument("param", value);
+                    var outputs = new NodeArguments();
+                    var result = new LinkedList<Integer>();
+                    for (var j = 0; j < 1_000; j++) {
+                        result.add(value + j);
+                    }
+                    outputs.putArgument("result", result);
+                    cache.set(node, inputs, outputs);
+                    cache.get(node, inputs);
+                }
+            }));
+        }
+        for (var future : futures) {
+            future.get();
+        }
+    }
+}
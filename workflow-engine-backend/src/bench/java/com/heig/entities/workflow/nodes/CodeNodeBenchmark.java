@@ -0,0 +1,81 @@
+package com.heig.entities.workflow.nodes;
+
+import com.heig.entities.workflow.Workflow;
+import com.heig.entities.workflow.execution.NodeArguments;
+import com.heig.entities.workflow.types.WPrimitive;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures CPU-heavy {@link CodeNode} executions in the interpreter and with the optimizing Truffle runtime (see {@link ContextPool.EngineMode}).
+ * Each fork uses one engine mode, the optimized mode falls back to the interpreter if the runtime is not available.
+ * Run with : mvn -Pbenchmark,truffle-optimized test-compile exec:exec -Dbenchmark=CodeNodeBenchmark (on a GraalVM JDK)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodeNodeBenchmark {
+    /**
+     * The value of "code_engine_mode"
+     */
+    @Param({ "interpreter", "optimized" })
+    public String mode;
+
+    private CodeNode numericNode;
+    private CodeNode stringNode;
+    private NodeArguments inputs;
+
+    @Setup
+    public void setup() {
+        //Read when the pool is created, before the first execution
+        System.setProperty("code_engine_mode", mode);
+
+        var workflow = new Workflow("code-node-benchmark");
+        numericNode = workflow.getNodeBuilder().buildCodeNode();
+        numericNode.getConnectorBuilder().buildInputConnector("n", WPrimitive.Integer);
+        numericNode.getConnectorBuilder().buildOutputConnector("result", WPrimitive.Double);
+        numericNode.setCode("""
+            let sum = 0;
+            for (let i = 1; i <= inputs.get('n'); i++) {
+                sum += Math.sqrt(i) * Math.sin(i);
+            }
+            outputs.put('result', sum);
+            """);
+
+        stringNode = workflow.getNodeBuilder().buildCodeNode();
+        stringNode.getConnectorBuilder().buildInputConnector("n", WPrimitive.Integer);
+        stringNode.getConnectorBuilder().buildOutputConnector("result", WPrimitive.Integer);
+        stringNode.setCode("""
+            let count = 0;
+            for (let i = 0; i < inputs.get('n') / 10; i++) {
+                const s = ('line ' + i).toUpperCase().split('').reverse().join('');
+                if (s.includes('1')) {
+                    count += s.length;
+                }
+            }
+            outputs.put('result', count);
+            """);
+
+        inputs = new NodeArguments();
+        inputs.putArgument("n", 1_000_000);
+    }
+
+    @TearDown
+    public void tearDown() {
+        ContextPool.INSTANCE.clear();
+    }
+
+    @Benchmark
+    public Object numeric() {
+        return numericNode.execute(inputs, line -> { }).getArgument("result");
+    }
+
+    @Benchmark
+    public Object string() {
+        return stringNode.execute(inputs, line -> { }).getArgument("result");
+    }
+}
@@ -0,0 +1,95 @@
+package com.heig.entities.workflow.nodes;
+
+import com.heig.entities.workflow.Workflow;
+import com.heig.entities.workflow.execution.NodeArguments;
+import com.heig.entities.workflow.types.WCollection;
+import com.heig.entities.workflow.types.WPrimitive;
+import com.heig.entities.workflow.types.WType;
+import com.heig.entities.workflow.types.WorkflowTypes;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the conversion of big collections between the workflow and the code of a {@link CodeNode} (see {@link PolyglotBridge}).
+ * Each node reads a list of 1M doubles, the first computes its sum, the second returns a new list and the third returns its input.
+ * The "fixed" list is the list received by a node in a workflow, passed through {@link WorkflowTypes#fixObject(Object)} by the executor.
+ * Run with : mvn -Pbenchmark test-compile exec:exec -Dbenchmark=PolyglotBridgeBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PolyglotBridgeBenchmark {
+    /**
+     * The list given to the nodes
+     */
+    @Param({ "linked", "array", "fixed" })
+    public String listType;
+
+    private CodeNode sumNode;
+    private CodeNode mapNode;
+    private CodeNode identityNode;
+    private NodeArguments inputs;
+
+    @Setup
+    public void setup() {
+        var workflow = new Workflow("polyglot-bridge-benchmark");
+        sumNode = buildNode(workflow, WPrimitive.Double, """
+            const list = inputs.get('list');
+            let sum = 0;
+            for (let i = 0; i < list.length; i++) {
+                sum += list[i];
+            }
+            outputs.put('result', sum);
+            """);
+        mapNode = buildNode(workflow, WCollection.of(WPrimitive.Double), """
+            const list = inputs.get('list');
+            const result = new Array(list.length);
+            for (let i = 0; i < list.length; i++) {
+                result[i] = list[i] * 2;
+            }
+            outputs.put('result', result);
+            """);
+        identityNode = buildNode(workflow, WCollection.of(WPrimitive.Double), "outputs.put('result', inputs.get('list'));");
+
+        var list = listType.equals("linked") ? new LinkedList<Double>() : new ArrayList<Double>();
+        for (var i = 0; i < 1_000_000; i++) {
+            list.add((double) i);
+        }
+        inputs = new NodeArguments();
+        inputs.putArgument("list", listType.equals("fixed") ? WorkflowTypes.fixObject(list) : list);
+    }
+
+    private static CodeNode buildNode(Workflow workflow, WType resultType, String code) {
+        var node = workflow.getNodeBuilder().buildCodeNode();
+        node.getConnectorBuilder().buildInputConnector("list", WCollection.of(WPrimitive.Double));
+        node.getConnectorBuilder().buildOutputConnector("result", resultType);
+        node.setCode(code);
+        return node;
+    }
+
+    @TearDown
+    public void tearDown() {
+        ContextPool.INSTANCE.clear();
+    }
+
+    @Benchmark
+    public Object sum() {
+        return sumNode.execute(inputs, line -> { }).getArgument("result");
+    }
+
+    @Benchmark
+    public Object map() {
+        return mapNode.execute(inputs, line -> { }).getArgument("result");
+    }
+
+    @Benchmark
+    public Object identity() {
+        return identityNode.execute(inputs, line -> { }).getArgument("result");
+    }
+}
@@ -6,6 +6,8 @@ import com.google.gson.JsonParseException;
 import com.heig.entities.workflow.connectors.InputConnector;
 import com.heig.entities.workflow.connectors.OutputConnector;
 import com.heig.entities.workflow.errors.*;
+import com.heig.entities.workflow.nodes.CodeModule;
+import com.heig.entities.workflow.nodes.CodeNode;
 import com.heig.entities.workflow.nodes.Node;
 import com.heig.helpers.CustomJsonDeserializer;
 import com.heig.helpers.CustomJsonSerializer;
@@ -21,6 +23,7 @@ import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 
 /**
@@ -38,6 +41,7 @@ public class Workflow {
             obj.add("nodes", Utils.serializeList(new Node.Serializer(), value.nodes.values().stream().toList()));
             obj.addProperty("uuid", value.getUUID().toString());
             obj.addProperty("name", value.getName());
+            obj.add("modules", Utils.serializeList(new CodeModule.Serializer(), value.modules.values().stream().toList()));
             return obj;
         }
     }
@@ -53,6 +57,11 @@ public class Workflow {
             var uuid = obj.get("uuid").getAsString();
             var name = obj.get("name").getAsString();
             var workflow = new Workflow(currentId, uuid, name);
+            if (obj.has("modules")) {
+                for (var module : Utils.deserializeList(new CodeModule.Deserializer(), obj.get("modules").getAsJsonArray())) {
+                    workflow.modules.put(module.name(), module);
+                }
+            }
 
             Utils.Connexions connexionsToMake = new Utils.Connexions(new LinkedList<>());
             var nodes = Utils.deserializeList(new Node.Deserializer(connexionsToMake, workflow), obj.get("nodes").getAsJsonArray());
@@ -90,6 +99,16 @@ public class Workflow {
      */
     private final ConcurrentMap<Integer, Node> nodes = new ConcurrentHashMap<>();
 
+    /**
+     * The modules shared by the code nodes of the workflow. The key is the module name
+     */
+    private final ConcurrentMap<String, CodeModule> modules = new ConcurrentHashMap<>();
+
+    /**
+     * Incremented every time the graph changes (nodes, connectors or connexions added or removed)
+     */
+    private final AtomicLong graphVersion = new AtomicLong(0);
+
     /**
      * The node builder for this workflow
      */
@@ -157,6 +176,7 @@ public class Workflow {
         Objects.requireNonNull(nodeCreator);
         var node = nodeCreator.apply(currentId.incrementAndGet());
         nodes.put(node.getId(), node);
+        graphModified();
         return node;
     }
 
@@ -170,7 +190,9 @@ public class Workflow {
         //When removing a node we need to disconnect everything connected to it
         node.disconnectEverything();
 
-        return nodes.remove(node.getId()) != null;
+        var removed = nodes.remove(node.getId()) != null;
+        graphModified();
+        return removed;
     }
 
     public Map<Integer, Node> getNodes() {
@@ -181,6 +203,62 @@ public class Workflow {
         return Optional.ofNullable(nodes.get(id));
     }
 
+    public Map<String, CodeModule> getModules() {
+        return Collections.unmodifiableMap(modules);
+    }
+
+    /**
+     * Adds a module or replaces the module with the same name.
+     * Notifies {@link Workflow#nodeModified(Node)} for the code nodes using the language of the module
+     * @param module The module
+     */
+    public void setModule(@Nonnull CodeModule module) {
+        Objects.requireNonNull(module);
+        var previous = modules.put(module.name(), module);
+        if (!module.equals(previous)) {
+            modulesModified(module, previous);
+        }
+    }
+
+    /**
+     * Removes a module.
+     * Notifies {@link Workflow#nodeModified(Node)} for the code nodes using the language of the module
+     * @param name The name of the module
+     * @return True if the module was removed, false otherwise
+     */
+    public boolean removeModule(@Nonnull String name) {
+        Objects.requireNonNull(name);
+        var previous = modules.remove(name);
+        if (previous == null) {
+            return false;
+        }
+        modulesModified(previous, null);
+        return true;
+    }
+
+    private void modulesModified(@Nonnull CodeModule module, CodeModule previous) {
+        for (var node : nodes.values()) {
+            if (node instanceof CodeNode codeNode && (codeNode.getLanguage() == module.language() || (previous != null && codeNode.getLanguage() == previous.language()))) {
+                nodeModified(codeNode);
+            }
+        }
+    }
+
+    /**
+     * Returns the version of the graph, which changes every time a node, a connector or a connexion is added or removed
+     * @return The version of the graph
+     */
+    public long getGraphVersion() {
+        return graphVersion.get();
+    }
+
+    /**
+     * Notifies that the graph has changed (see {@link Workflow#getGraphVersion()})
+     */
+    public void graphModified() {
+        graphVersion.incrementAndGet();
+    }
+
     public UUID getUUID() {
         return uuid;
     }
@@ -216,6 +294,7 @@ public class Workflow {
 
         //We connect the input to the output
         input.setConnectedTo(output);
+        graphModified();
         return true;
     }
 
@@ -234,6 +313,7 @@ public class Workflow {
             }
         });
         input.setConnectedTo(null);
+        graphModified();
         return true;
     }
 
@@ -288,6 +368,11 @@ public class Workflow {
             }
         }
 
+        //Errors in the definition of the nodes (found by the warmup of the code nodes for example)
+        for (var node : nodes.values()) {
+            node.addDefinitionErrors(errors);
+        }
+
         //Check the types compatibility
         for (var node : nodes.values()) {
             for (var output : node.getOutputs().values()) {
@@ -305,6 +390,18 @@ public class Workflow {
         return Optional.empty();
     }
 
+    /**
+     * Waits for the checks of the nodes running in the background (see {@link Node#awaitDefinitionChecks()}), then checks if the workflow is valid.
+     * Used before an execution, {@link Workflow#isValid()} does not wait and can miss the errors not found yet.
+     * @return The errors if there are some
+     */
+    public Optional<WorkflowErrors> validate() {
+        for (var node : nodes.values()) {
+            node.awaitDefinitionChecks();
+        }
+        return isValid();
+    }
+
     public void addNodeModifiedListener(@Nonnull NodeModifiedListener consumer) {
         Objects.requireNonNull(consumer);
         listeners.add(consumer);
@@ -0,0 +1,402 @@
+package com.heig.entities.workflow.data;
+
+import com.heig.entities.workflow.types.WCollection;
+import com.heig.entities.workflow.types.WType;
+import com.heig.entities.workflow.types.WorkflowTypes;
+import jakarta.annotation.Nonnull;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Compact binary format used to store the values in the {@link CacheStore}. The encoding is driven by the {@link WType} of the value
+ * (see {@link WType#write(DataOutput, Object)} and {@link WType#read(DataInput)}), so no class information is stored and
+ * reading a value never instantiates arbitrary classes.<br>
+ * A stored value starts with a header containing a magic number, the version of the format, the name of the value and the string
+ * representation of its type (see {@link WorkflowTypes#typeToString(WType)}) and the layout of the value, followed by the encoded value.<br>
+ * Big lists can be written with an index, so they can be read lazily from a file mapped in memory (see {@link MappedList}).
+ */
+public class BinaryCodec {
+    /**
+     * The bytes at the start of every encoded value
+     */
+    private static final byte[] MAGIC = { 'W', 'F', 'C' };
+
+    /**
+     * The version of the format
+     */
+    private static final byte VERSION = 2;
+
+    /**
+     * The value is encoded directly after the header
+     */
+    private static final byte LAYOUT_PLAIN = 0;
+
+    /**
+     * The value is a list encoded with its digest, its size, its elements, the position of each element and the position of this table
+     */
+    private static final byte LAYOUT_INDEXED_LIST = 1;
+
+    /**
+     * The size of the buffers used to read and write the files
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private BinaryCodec() {}
+
+    /**
+     * A decoded value with its name
+     * @param name The name of the value
+     * @param type The type of the value
+     * @param value The value
+     */
+    public record NamedValue(String name, WType type, Object value) { }
+
+    /**
+     * Writes an unsigned variable length integer (7 bits per byte, the highest bit is set when more bytes follow)
+     * @param output The output
+     * @param value The value (interpreted as unsigned)
+     * @throws IOException If the output cannot be written
+     */
+    public static void writeVarInt(@Nonnull DataOutput output, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            output.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.writeByte(value);
+    }
+
+    /**
+     * Reads an unsigned variable length integer written by {@link BinaryCodec#writeVarInt(DataOutput, int)}
+     * @param input The input
+     * @return The value
+     * @throws IOException If the input cannot be read or the value is malformed
+     */
+    public static int readVarInt(@Nonnull DataInput input) throws IOException {
+        var value = 0;
+        for (var shift = 0; shift < 35; shift += 7) {
+            var b = input.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length integer");
+    }
+
+    /**
+     * Writes an unsigned variable length long (7 bits per byte, the highest bit is set when more bytes follow)
+     * @param output The output
+     * @param value The value (interpreted as unsigned)
+     * @throws IOException If the output cannot be written
+     */
+    public static void writeVarLong(@Nonnull DataOutput output, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            output.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        output.writeByte((int) value);
+    }
+
+    /**
+     * Reads an unsigned variable length long written by {@link BinaryCodec#writeVarLong(DataOutput, long)}
+     * @param input The input
+     * @return The value
+     * @throws IOException If the input cannot be read or the value is malformed
+     */
+    public static long readVarLong(@Nonnull DataInput input) throws IOException {
+        var value = 0L;
+        for (var shift = 0; shift < 70; shift += 7) {
+            var b = input.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length long");
+    }
+
+    /**
+     * Writes a signed integer with the zigzag encoding, so small negative values also use few bytes
+     * @param output The output
+     * @param value The value
+     * @throws IOException If the output cannot be written
+     */
+    public static void writeSignedVarInt(@Nonnull DataOutput output, int value) throws IOException {
+        writeVarInt(output, (value << 1) ^ (value >> 31));
+    }
+
+    /**
+     * Reads a signed integer written by {@link BinaryCodec#writeSignedVarInt(DataOutput, int)}
+     * @param input The input
+     * @return The value
+     * @throws IOException If the input cannot be read or the value is malformed
+     */
+    public static int readSignedVarInt(@Nonnull DataInput input) throws IOException {
+        var value = readVarInt(input);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Writes a signed long with the zigzag encoding, so small negative values also use few bytes
+     * @param output The output
+     * @param value The value
+     * @throws IOException If the output cannot be written
+     */
+    public static void writeSignedVarLong(@Nonnull DataOutput output, long value) throws IOException {
+        writeVarLong(output, (value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * Reads a signed long written by {@link BinaryCodec#writeSignedVarLong(DataOutput, long)}
+     * @param input The input
+     * @return The value
+     * @throws IOException If the input cannot be read or the value is malformed
+     */
+    public static long readSignedVarLong(@Nonnull DataInput input) throws IOException {
+        var value = readVarLong(input);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Writes a string encoded in UTF-8 prefixed by its length in bytes
+     * @param output The output
+     * @param value The string
+     * @throws IOException If the output cannot be written
+     */
+    public static void writeString(@Nonnull DataOutput output, @Nonnull String value) throws IOException {
+        var bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(output, bytes.length);
+        output.write(bytes);
+    }
+
+    /**
+     * Reads a string written by {@link BinaryCodec#writeString(DataOutput, String)}
+     * @param input The input
+     * @return The string
+     * @throws IOException If the input cannot be read
+     */
+    public static String readString(@Nonnull DataInput input) throws IOException {
+        var bytes = new byte[readVarInt(input)];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Encodes a value with its header. The real type of the value is used (see {@link WorkflowTypes#fromObject(Object)}).
+     * @param output The output
+     * @param name The name of the value
+     * @param value The value
+     * @throws IOException If the output cannot be written
+     */
+    public static void encode(@Nonnull DataOutput output, @Nonnull String name, @Nonnull Object value) throws IOException {
+        Objects.requireNonNull(output);
+        var type = writeHeader(output, name, value);
+        output.writeByte(LAYOUT_PLAIN);
+        type.write(output, value);
+    }
+
+    /**
+     * Writes the header of a value
+     * @param output The output
+     * @param name The name of the value
+     * @param value The value
+     * @return The real type of the value
+     * @throws IOException If the output cannot be written
+     */
+    private static WType writeHeader(@Nonnull DataOutput output, @Nonnull String name, @Nonnull Object value) throws IOException {
+        Objects.requireNonNull(name);
+        Objects.requireNonNull(value);
+        var type = WorkflowTypes.fromObject(value);
+        output.write(MAGIC);
+        output.writeByte(VERSION);
+        writeString(output, name);
+        writeString(output, WorkflowTypes.typeToString(type));
+        return type;
+    }
+
+    /**
+     * Decodes a value written by {@link BinaryCodec#encode(DataOutput, String, Object)} or {@link BinaryCodec#toFile(File, String, Object, int)}.
+     * If the input is a buffer mapped in memory and the value is an indexed list, a {@link MappedList} is returned instead of decoding all the elements.
+     * @param input The input
+     * @return The value with its name and type
+     * @throws IOException If the input cannot be read or is not in the expected format
+     */
+    public static NamedValue decode(@Nonnull DataInput input) throws IOException {
+        Objects.requireNonNull(input);
+        var magic = new byte[MAGIC.length];
+        input.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("The data is not a value encoded by the binary codec");
+        }
+        var version = input.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary codec version %d".formatted(version));
+        }
+        var name = readString(input);
+        var type = WorkflowTypes.typeFromString(readString(input));
+        var layout = input.readByte();
+        if (layout == LAYOUT_PLAIN) {
+            return new NamedValue(name, type, type.read(input));
+        }
+        if (layout != LAYOUT_INDEXED_LIST || !(type instanceof WCollection collectionType)) {
+            throw new IOException("Invalid binary codec layout %d for type %s".formatted(layout, WorkflowTypes.typeToString(type)));
+        }
+
+        var contentDigest = readString(input);
+        var size = readVarInt(input);
+        if (input instanceof ByteBufferInput bufferInput) {
+            //The table with the position of each element is at the end, followed by its own position
+            var buffer = bufferInput.getBuffer();
+            var indexPosition = buffer.getLong(buffer.limit() - Long.BYTES);
+            if (indexPosition < 0 || indexPosition + (long) size * Long.BYTES > buffer.limit() - Long.BYTES) {
+                throw new IOException("Invalid binary codec index position");
+            }
+            return new NamedValue(name, type, new MappedList(buffer, collectionType, contentDigest, size, (int) indexPosition));
+        }
+        //Without a mapped buffer, the elements are read sequentially and the index is ignored
+        var list = new LinkedList<>();
+        for (var i = 0; i < size; i++) {
+            list.add(collectionType.getValueType().read(input));
+        }
+        return new NamedValue(name, type, list);
+    }
+
+    /**
+     * Encodes a value with its header to a file. The lists (not the sets) with at least indexedListMinSize elements are written with
+     * a table containing the position of each element and with their digest, so they can be read as a {@link MappedList} by {@link BinaryCodec#fromFile(File)}.
+     * @param output The file
+     * @param name The name of the value
+     * @param value The value
+     * @param indexedListMinSize The minimum number of elements of a list to write it with an index
+     */
+    public static void toFile(@Nonnull File output, @Nonnull String name, @Nonnull Object value, int indexedListMinSize) {
+        Objects.requireNonNull(output);
+        try (var pos = new PositionOutputStream(new BufferedOutputStream(new FileOutputStream(output), BUFFER_SIZE));
+             var dos = new DataOutputStream(pos)) {
+            if (!(value instanceof List<?> list) || list.size() < indexedListMinSize) {
+                encode(dos, name, value);
+                return;
+            }
+
+            var type = (WCollection) writeHeader(dos, name, value);
+            dos.writeByte(LAYOUT_INDEXED_LIST);
+            writeString(dos, ContentDigest.of(value));
+            writeVarInt(dos, list.size());
+            //The list itself is in memory, so an array of positions is small compared to it
+            var positions = new long[list.size()];
+            var i = 0;
+            for (var element : list) {
+                positions[i++] = pos.getPosition();
+                type.getValueType().write(dos, element);
+            }
+            var indexPosition = pos.getPosition();
+            for (var position : positions) {
+                dos.writeLong(position);
+            }
+            dos.writeLong(indexPosition);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Encodes a value with its header to a file, without index (see {@link BinaryCodec#toFile(File, String, Object, int)})
+     * @param output The file
+     * @param name The name of the value
+     * @param value The value
+     */
+    public static void toFile(@Nonnull File output, @Nonnull String name, @Nonnull Object value) {
+        toFile(output, name, value, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Decodes a value from a file written by {@link BinaryCodec#toFile(File, String, Object, int)}.
+     * The file is mapped in memory (see {@link FileChannel#map(FileChannel.MapMode, long, long)}), so the indexed lists are returned
+     * as a {@link MappedList} and only the pages actually read are loaded. The files too big to be mapped are read sequentially.
+     * The file stays mapped only for a {@link MappedList}, until the list is collected.
+     * @param input The file
+     * @return The value with its name and type
+     */
+    public static NamedValue fromFile(@Nonnull File input) {
+        Objects.requireNonNull(input);
+        try (var channel = FileChannel.open(input.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() <= Integer.MAX_VALUE) {
+                //The mapping stays valid after the channel is closed
+                var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                NamedValue namedValue;
+                try {
+                    namedValue = decode(new ByteBufferInput(buffer));
+                } catch (IOException | RuntimeException e) {
+                    unmap(buffer);
+                    throw e;
+                }
+                //The other values are completely decoded, the file does not need to stay mapped
+                if (!(namedValue.value() instanceof MappedList)) {
+                    unmap(buffer);
+                }
+                return namedValue;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        try (var dis = new DataInputStream(new BufferedInputStream(new FileInputStream(input), BUFFER_SIZE))) {
+            return decode(dis);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Unmaps a buffer mapped in memory without waiting for the garbage collector, so the file can be deleted immediately on every system.
+     * The buffer must not be used afterward.
+     * @param buffer The buffer
+     */
+    static void unmap(@Nonnull ByteBuffer buffer) {
+        if (!buffer.isDirect()) {
+            return;
+        }
+        try {
+            var unsafeClass = Class.forName("sun.misc.Unsafe");
+            var unsafeField = unsafeClass.getDeclaredField("theUnsafe");
+            unsafeField.setAccessible(true);
+            unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(unsafeField.get(null), buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            //Without access to the cleaner, the buffer is unmapped by the garbage collector
+        }
+    }
+
+    /**
+     * Output stream counting the number of bytes written (the {@link DataOutputStream} writes directly to it), used to know the position of the elements of the indexed lists
+     */
+    private static class PositionOutputStream extends FilterOutputStream {
+        private long position = 0;
+
+        PositionOutputStream(@Nonnull OutputStream out) {
+            super(out);
+        }
+
+        public long getPosition() {
+            return position;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            position++;
+        }
+
+        @Override
+        public void write(@Nonnull byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            position += len;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.heig.entities.workflow.data;
+
+import jakarta.annotation.Nonnull;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * {@link DataInput} reading from a {@link ByteBuffer} (usually a file mapped in memory).
+ * Reading from the buffer does not copy the data in an intermediate buffer, only the pages actually read are loaded from the disk.
+ */
+class ByteBufferInput implements DataInput {
+    private final ByteBuffer buffer;
+
+    ByteBufferInput(@Nonnull ByteBuffer buffer) {
+        this.buffer = Objects.requireNonNull(buffer);
+    }
+
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Throws an {@link EOFException} if less than the number of bytes requested are remaining
+     * @param length The number of bytes requested
+     * @throws EOFException If less than the number of bytes requested are remaining
+     */
+    private void ensureRemaining(int length) throws EOFException {
+        if (buffer.remaining() < length) {
+            throw new EOFException();
+        }
+    }
+
+    @Override
+    public void readFully(@Nonnull byte[] b) throws IOException {
+        readFully(b, 0, b.length);
+    }
+
+    @Override
+    public void readFully(@Nonnull byte[] b, int off, int len) throws IOException {
+        ensureRemaining(len);
+        buffer.get(b, off, len);
+    }
+
+    @Override
+    public int skipBytes(int n) {
+        var skipped = Math.max(0, Math.min(n, buffer.remaining()));
+        buffer.position(buffer.position() + skipped);
+        return skipped;
+    }
+
+    @Override
+    public boolean readBoolean() throws IOException {
+        return readByte() != 0;
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+        try {
+            return buffer.get();
+        } catch (BufferUnderflowException e) {
+            throw new EOFException();
+        }
+    }
+
+    @Override
+    public int readUnsignedByte() throws IOException {
+        return readByte() & 0xFF;
+    }
+
+    @Override
+    public short readShort() throws IOException {
+        ensureRemaining(Short.BYTES);
+        return buffer.getShort();
+    }
+
+    @Override
+    public int readUnsignedShort() throws IOException {
+        return readShort() & 0xFFFF;
+    }
+
+    @Override
+    public char readChar() throws IOException {
+        ensureRemaining(Character.BYTES);
+        return buffer.getChar();
+    }
+
+    @Override
+    public int readInt() throws IOException {
+        ensureRemaining(Integer.BYTES);
+        return buffer.getInt();
+    }
+
+    @Override
+    public long readLong() throws IOException {
+        ensureRemaining(Long.BYTES);
+        return buffer.getLong();
+    }
+
+    @Override
+    public float readFloat() throws IOException {
+        ensureRemaining(Float.BYTES);
+        return buffer.getFloat();
+    }
+
+    @Override
+    public double readDouble() throws IOException {
+        ensureRemaining(Double.BYTES);
+        return buffer.getDouble();
+    }
+
+    @Override
+    public String readLine() {
+        throw new UnsupportedOperationException("Lines cannot be read from a binary buffer");
+    }
+
+    @Override
+    public String readUTF() throws IOException {
+        return DataInputStream.readUTF(this);
+    }
+}
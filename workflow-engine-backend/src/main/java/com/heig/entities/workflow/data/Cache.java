@@ -1,30 +1,85 @@
 package com.heig.entities.workflow.data;
 
 import com.heig.entities.workflow.Workflow;
-import com.heig.entities.workflow.connectors.OutputConnector;
+import com.heig.entities.workflow.connectors.InputConnector;
 import com.heig.entities.workflow.execution.NodeArguments;
 import com.heig.entities.workflow.nodes.Node;
-import com.heig.entities.workflow.types.WorkflowTypes;
 import com.heig.helpers.Utils;
 import jakarta.annotation.Nonnull;
+import org.eclipse.microprofile.config.ConfigProvider;
 
 import java.io.*;
-import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Represents the cache for a workflow
+ * Represents the cache for a workflow. The outputs are stored in the {@link CacheStore} shared by all the workflows,
+ * the cache of the workflow only keeps, for each node, the digests of the entries of the store used by the node.
+ * Each node keeps up to "cache_entries_per_node" entries (8 by default, from the quarkus config), so switching an input back and forth
+ * between a few values does not recompute the node. When the limit is reached, an entry is evicted according to the
+ * "cache_eviction_policy" ("lru" by default or "fifo").<br>
+ * The nodes are locked separately (see {@link StripedLocks}), so the nodes of independent branches use the cache in parallel.
  */
 public class Cache {
+    /**
+     * The policies to choose the entry to evict when a node has too many entries
+     */
+    public enum EvictionPolicy {
+        /**
+         * The least recently used entry (set or retrieved) is evicted
+         */
+        LRU,
+        /**
+         * The oldest entry set is evicted
+         */
+        FIFO
+    }
+
+    /**
+     * The maximum number of entries kept for a node
+     */
+    private static final int maxEntriesPerNode = ConfigProvider.getConfig().getOptionalValue("cache_entries_per_node", Integer.class).orElse(8);
+
+    /**
+     * The policy used to evict the entries of a node
+     */
+    private static final EvictionPolicy evictionPolicy = EvictionPolicy.valueOf(
+        ConfigProvider.getConfig().getOptionalValue("cache_eviction_policy", String.class).orElse("lru").toUpperCase()
+    );
+
     /**
      * The cache directory
      */
     private final File cacheDirectory;
 
+    /**
+     * The UUID of the workflow
+     */
+    private final UUID workflowUUID;
+
+    /**
+     * The digests of the entries referenced by each node, in eviction order (the first one is the next to be evicted).
+     * Loaded from the disk the first time a node is used.
+     */
+    private final Map<Integer, LinkedList<String>> references = new ConcurrentHashMap<>();
+
+    /**
+     * The locks of the nodes (by id). The references of a node are only used with the lock of the node,
+     * so the nodes of independent branches can read and write the cache in parallel.
+     */
+    private final StripedLocks locks = new StripedLocks(64);
+
     Cache(@Nonnull Workflow w, @Nonnull File rootDirectory) {
         Objects.requireNonNull(w);
         Objects.requireNonNull(rootDirectory);
 
+        if (maxEntriesPerNode <= 0) {
+            throw new IllegalArgumentException("The number of cache entries per node must be greater than 0");
+        }
+
+        workflowUUID = w.getUUID();
         cacheDirectory = new File(rootDirectory, "cache");
         if (!cacheDirectory.exists() && !cacheDirectory.mkdirs()) {
             throw new RuntimeException("Could not create workflow cache directory");
@@ -33,26 +88,15 @@ public class Cache {
 
     /**
      * Returns the cache directory for the node
-     * @param node The node
+     * @param nodeId The id of the node
      * @return The cache directory
      */
-    private File getNodeCacheDirectory(@Nonnull Node node) {
-        return new File(cacheDirectory, String.valueOf(node.getId()));
-    }
-
-    /**
-     * Returns the cache file for an input connector
-     * @param nodeCacheDirectory The cache directory of the node
-     * @param outputConnector The output connector
-     * @param isType If true, returns a file ending in .type, .obj otherwise
-     * @return The cache file for the connector
-     */
-    private File getOutputConnectorFile(@Nonnull File nodeCacheDirectory, @Nonnull OutputConnector outputConnector, boolean isType) {
-        return new File(nodeCacheDirectory, outputConnector.getId() + "." + (isType ? "type" : "obj"));
+    private File getNodeCacheDirectory(int nodeId) {
+        return new File(cacheDirectory, String.valueOf(nodeId));
     }
 
     /**
-     * Return the info file for the node cache directory
+     * Return the info file for the node cache directory. The info file contains the digests of the entries referenced by the node (one per line, in eviction order when the entries last changed).
      * @param nodeCacheDirectory The node cache directory
      * @return The info file for the node cache directory
      */
@@ -61,144 +105,212 @@ public class Cache {
     }
 
     /**
-     * Returns the hash for all the inputs
+     * Returns the digest of the definition of the node and of all the inputs. The digest identifies the entry in the {@link CacheStore}.
      * @param node The node
      * @param inputs The inputs
-     * @return The hash
+     * @return The digest as a hexadecimal string
      */
-    private static int getHashFor(@Nonnull Node node, @Nonnull NodeArguments inputs) {
+    private static String getDigestFor(@Nonnull Node node, @Nonnull NodeArguments inputs) {
         Objects.requireNonNull(node);
         Objects.requireNonNull(inputs);
-        var lstHashCodes = new LinkedList<Integer>();
-        for (var input : node.getInputs().values()) {
+        var digest = new ContentDigest();
+        node.updateDefinitionDigest(digest);
+        for (var input : node.getInputs().values().stream().sorted(Comparator.comparing(InputConnector::getName)).toList()) {
             var argumentOpt = inputs.getArgument(input.getName());
             if (argumentOpt.isEmpty()) {
                 //If the input is optional and is not connected
                 if (input.isOptional() && input.getConnectedTo().isEmpty()) {
+                    digest.putByte((byte) 0);
                     continue;
                 }
                 throw new RuntimeException("Should never happen ! Node should have been marked as modified !");
             } else {
                 var argument = argumentOpt.get();
                 //Here we use the real type, not the one declared by the input.
-                //If the input was WObject, but the type is WFile, we want to get the hash code from the WFile type, not from WObject
-                var realType = WorkflowTypes.fromObject(argument);
-                lstHashCodes.add(realType.getHashCode(argument));
+                //If the input was WObject, but the type is WFile, we want to get the digest from the WFile type, not from WObject.
+                //The digest of each input is computed separately, so the digest stored with a mapped list can be used directly
+                digest.putByte((byte) 1).putString(input.getName()).putString(ContentDigest.of(argument));
             }
         }
-        return Arrays.hashCode(lstHashCodes.toArray());
+        return digest.toHexString();
+    }
+
+    public static int getMaxEntriesPerNode() {
+        return maxEntriesPerNode;
+    }
+
+    public static EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
     }
 
     /**
-     * Sets the cache for the node
-     * @param node The node
-     * @param inputs The inputs
-     * @param outputs The outputs
+     * Returns the digests of the entries referenced by the node
+     * @param nodeId The id of the node
+     * @return The digests in eviction order
      */
-    public synchronized void set(@Nonnull Node node, @Nonnull NodeArguments inputs, @Nonnull NodeArguments outputs) {
-        Objects.requireNonNull(node);
-        Objects.requireNonNull(inputs);
-        Objects.requireNonNull(outputs);
-        var nodeCacheDirectory = getNodeCacheDirectory(node);
-        if (nodeCacheDirectory.exists()) {
-            Utils.deleteCompleteDirectory(nodeCacheDirectory);
+    private LinkedList<String> getReferences(int nodeId) {
+        return references.computeIfAbsent(nodeId, id -> {
+            var infoFile = getInfoFile(getNodeCacheDirectory(id));
+            if (!infoFile.exists()) {
+                return new LinkedList<>();
+            }
+            try {
+                return new LinkedList<>(Files.readAllLines(infoFile.toPath(), StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    /**
+     * Marks the entry as used by the node. The entry is added to the references of the node if needed
+     * (the reference must already be added to the {@link CacheStore}) and the entries exceeding the limit are evicted.
+     * The info file is only written when the entries of the node change: the order of the entries already referenced
+     * is kept in memory and written with the next change, so a cache hit does not touch the disk.
+     * The lock of the node must be held.
+     * @param nodeId The id of the node
+     * @param digest The digest of the entry
+     */
+    private void useEntry(int nodeId, @Nonnull String digest) {
+        var nodeReferences = getReferences(nodeId);
+        if (nodeReferences.contains(digest)) {
+            //With the FIFO policy, using an entry does not change the order. With LRU, the entry becomes the last one to be evicted.
+            if (evictionPolicy == EvictionPolicy.LRU && !nodeReferences.getLast().equals(digest)) {
+                nodeReferences.remove(digest);
+                nodeReferences.addLast(digest);
+            }
+            return;
         }
-        if (!nodeCacheDirectory.mkdir()) {
-            throw new RuntimeException("Could not create cache directory");
+        nodeReferences.addLast(digest);
+
+        while (nodeReferences.size() > maxEntriesPerNode) {
+            var evicted = nodeReferences.removeFirst();
+            CacheStore.INSTANCE.removeReference(evicted, CacheStore.referenceName(workflowUUID, nodeId));
         }
 
-        var infoFile = getInfoFile(nodeCacheDirectory);
+        var nodeCacheDirectory = getNodeCacheDirectory(nodeId);
+        if (!nodeCacheDirectory.exists() && !nodeCacheDirectory.mkdirs()) {
+            throw new RuntimeException("Could not create cache directory");
+        }
         try {
-            if (!infoFile.createNewFile()) {
-                throw new RuntimeException("Could not create info file");
-            }
-            try (var sw = new BufferedOutputStream(new FileOutputStream(infoFile))) {
-                sw.write(ByteBuffer.allocate(4).putInt(getHashFor(node, inputs)).array());
-            }
+            Files.write(getInfoFile(nodeCacheDirectory).toPath(), nodeReferences, StandardCharsets.UTF_8);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+    }
 
+    /**
+     * Sets the cache for the node. The outputs are put in the {@link MemoryCache} and given to the {@link CacheWriter},
+     * which writes them to the {@link CacheStore} (if no other node already stored them), usually in the background.
+     * @param node The node
+     * @param inputs The inputs
+     * @param outputs The outputs
+     */
+    public void set(@Nonnull Node node, @Nonnull NodeArguments inputs, @Nonnull NodeArguments outputs) {
+        Objects.requireNonNull(node);
+        Objects.requireNonNull(inputs);
+        Objects.requireNonNull(outputs);
+        var digest = getDigestFor(node, inputs);
+
+        var nodeOutputs = new NodeArguments();
         for (var output : node.getOutputs().values()) {
             var argumentOpt = outputs.getArgument(output.getName());
             if (argumentOpt.isEmpty()) {
                 //All outputs should have a value (even the ones marked as optional -> default type value)
                 throw new RuntimeException("Should never happen ! Node should have been marked as modified !");
             }
-            var argument = argumentOpt.get();
+            nodeOutputs.putArgument(output.getName(), argumentOpt.get());
+        }
 
-            var cacheFile = getOutputConnectorFile(nodeCacheDirectory, output, false);
-            var cacheFileType = getOutputConnectorFile(nodeCacheDirectory, output, true);
-            try {
-                if (!cacheFileType.createNewFile()) {
-                    throw new RuntimeException("Could not create cache file type");
-                }
-                //Here we cannot use output.getType() directly. Imagine the output type is an object but the real type of the value is a file.
-                //We should do the processing for the file type and not the object type
-                var argumentType = WorkflowTypes.fromObject(argument);
-                Data.toFile(cacheFileType, WorkflowTypes.typeToString(argumentType));
-                argumentType.toFile(cacheFile, argument);
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
+        var lock = locks.get(node.getId());
+        lock.lock();
+        try {
+            CacheStore.INSTANCE.addReference(digest, CacheStore.referenceName(workflowUUID, node.getId()));
+            useEntry(node.getId(), digest);
+            MemoryCache.INSTANCE.put(digest, nodeOutputs);
+            CacheWriter.INSTANCE.write(digest, nodeOutputs);
+        } finally {
+            lock.unlock();
         }
     }
 
     /**
-     * Tries to get the outputs from the cache for a node
+     * Tries to get the outputs from the cache for a node. The {@link MemoryCache} is used first, then the outputs waiting to be written
+     * by the {@link CacheWriter} and finally the {@link CacheStore}.
+     * The entry can have been stored by another node (of this workflow or of another one) having the same definition and the same inputs.
+     * The outputs read from the disk are then stored in the {@link MemoryCache}.
      * @param node The node
      * @param currentInputs The current inputs
-     * @return The outputs or {@link Optional#empty()} if the retrieval failed (the hash code of the inputs changed for example)
+     * @return The outputs or {@link Optional#empty()} if the retrieval failed (the digest of the inputs changed for example)
      */
-    public synchronized Optional<NodeArguments> get(@Nonnull Node node, @Nonnull NodeArguments currentInputs) {
+    public Optional<NodeArguments> get(@Nonnull Node node, @Nonnull NodeArguments currentInputs) {
         Objects.requireNonNull(node);
         Objects.requireNonNull(currentInputs);
-        var nodeCacheDirectory = getNodeCacheDirectory(node);
-        if (!nodeCacheDirectory.exists()) {
-            return Optional.empty();
-        }
-
-        var infoFile = getInfoFile(nodeCacheDirectory);
-        if (!infoFile.exists()) {
-            return Optional.empty();
-        }
-
-        int cachedHashCode;
-        try (var sr = new BufferedInputStream(new FileInputStream(infoFile))) {
-            cachedHashCode = ByteBuffer.wrap(sr.readAllBytes()).getInt();
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+        var digest = getDigestFor(node, currentInputs);
+        var reference = CacheStore.referenceName(workflowUUID, node.getId());
 
-        //The hash code stored in the file should be equals to the hash of the currentInputs
-        if (cachedHashCode != getHashFor(node, currentInputs)) {
-            return Optional.empty();
-        }
-
-        var nodesArguments = new NodeArguments();
-        for (var outputConnector : node.getOutputs().values()) {
-            var cacheFile = getOutputConnectorFile(nodeCacheDirectory, outputConnector, false);
-            var cacheFileType = getOutputConnectorFile(nodeCacheDirectory, outputConnector, true);
-            if (cacheFileType.exists()) {
-                var typeOpt = Data.fromFile(cacheFileType);
-                if (typeOpt.isPresent() && typeOpt.get() instanceof String objTypeStr) {
-                    var objType = WorkflowTypes.typeFromString(objTypeStr);
-                    var obj = objType.fromFile(cacheFile);
-                    //Because we checked the hash before, every output that should be available will be
-                    obj.ifPresent(o -> nodesArguments.putArgument(outputConnector.getName(), o));
-                } else {
-                    throw new RuntimeException("Could not find type for the cached value");
+        var lock = locks.get(node.getId());
+        lock.lock();
+        try {
+            var inMemory = MemoryCache.INSTANCE.get(digest).or(() -> CacheWriter.INSTANCE.getPending(digest));
+            if (inMemory.isPresent()) {
+                if (!getReferences(node.getId()).contains(digest)) {
+                    CacheStore.INSTANCE.addReference(digest, reference);
                 }
+                useEntry(node.getId(), digest);
+                return inMemory;
+            }
+
+            var stored = CacheStore.INSTANCE.get(digest, reference);
+            if (stored.isEmpty()) {
+                return Optional.empty();
             }
+            useEntry(node.getId(), digest);
+            MemoryCache.INSTANCE.put(digest, stored.get());
+            return stored;
+        } finally {
+            lock.unlock();
         }
+    }
 
-        return Optional.of(nodesArguments);
+    /**
+     * Gets the outputs from the cache for a node like {@link Cache#get(Node, NodeArguments)}, but without changing the cache:
+     * no reference is added to the entry, the eviction order of the node is not changed and the outputs read from the disk are not put
+     * in the {@link MemoryCache}. Used by the runs that do not write the cache, so they cannot evict the entries of the main execution.
+     * @param node The node
+     * @param currentInputs The current inputs
+     * @return The outputs or {@link Optional#empty()} if the entry is not stored
+     */
+    public Optional<NodeArguments> peek(@Nonnull Node node, @Nonnull NodeArguments currentInputs) {
+        Objects.requireNonNull(node);
+        Objects.requireNonNull(currentInputs);
+        var digest = getDigestFor(node, currentInputs);
+        return MemoryCache.INSTANCE.get(digest)
+            .or(() -> CacheWriter.INSTANCE.getPending(digest))
+            .or(() -> CacheStore.INSTANCE.read(digest));
     }
 
     /**
-     * Clears the cache for this workflow
+     * Clears the cache for this workflow. The entries of the {@link CacheStore} are deleted if they are not used by another workflow.
+     * The writes of this workflow waiting in the {@link CacheWriter} are not waited for: the write of a deleted entry is discarded,
+     * and an entry not referenced anymore is never written by the store.
      */
-    public synchronized void clear() {
-        Utils.deleteCompleteDirectory(cacheDirectory);
+    public void clear() {
+        locks.lockAll();
+        try {
+            var nodeDirectories = cacheDirectory.list();
+            if (nodeDirectories != null) {
+                for (var nodeDirectory : nodeDirectories) {
+                    var nodeId = Integer.parseInt(nodeDirectory);
+                    for (var digest : getReferences(nodeId)) {
+                        CacheStore.INSTANCE.removeReference(digest, CacheStore.referenceName(workflowUUID, nodeId));
+                    }
+                }
+            }
+            references.clear();
+            Utils.deleteCompleteDirectory(cacheDirectory);
+        } finally {
+            locks.unlockAll();
+        }
     }
 }
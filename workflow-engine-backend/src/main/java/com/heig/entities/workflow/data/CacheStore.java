@@ -0,0 +1,387 @@
+package com.heig.entities.workflow.data;
+
+import com.heig.entities.workflow.execution.NodeArguments;
+import com.heig.helpers.Utils;
+import jakarta.annotation.Nonnull;
+import org.eclipse.microprofile.config.ConfigProvider;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.Cleaner;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Content-addressed store shared by the {@link Cache} of every workflow.
+ * An entry is identified by the digest of the definition of a node and of its inputs, so the outputs of identical nodes
+ * (even in different workflows) are stored only once. Each entry keeps a reference for every node using it and is deleted
+ * when the last reference is removed.<br>
+ * Layout of an entry : &lt;store&gt;/&lt;2 first characters of the digest&gt;/&lt;digest&gt;/
+ * <ul>
+ *     <li>outputs/&lt;i&gt;.bin : the name, the type and the value of the i-th output encoded with the {@link BinaryCodec}</li>
+ *     <li>refs/&lt;workflow UUID&gt;_&lt;node id&gt; : an empty file for each node referencing the entry</li>
+ * </ul>
+ * Each entry is locked separately (see {@link StripedLocks}), so only the operations on the same entry wait for each other.
+ */
+public class CacheStore {
+    /**
+     * The store used by every {@link Cache}, located in the data root directory
+     */
+    public static final CacheStore INSTANCE = new CacheStore(new File(Data.dataRootDirectory, "store"));
+
+    /**
+     * The minimum number of elements of an output list to write it with an index, so it is read lazily from a file mapped in memory
+     * (see {@link MappedList})
+     */
+    private static final int indexedListMinSize = ConfigProvider.getConfig().getOptionalValue("cache_indexed_list_min_size", Integer.class).orElse(4096);
+
+    /**
+     * The root directory of the store
+     */
+    private final File rootDirectory;
+
+    /**
+     * The locks of the entries (by digest), so the entries can be read and written in parallel
+     */
+    private final StripedLocks locks = new StripedLocks(64);
+
+    /**
+     * Notifies the store when a {@link MappedList} is collected, so the entry it was read from can be deleted
+     */
+    private static final Cleaner cleaner = Cleaner.create();
+
+    /**
+     * The number of {@link MappedList} read from each entry (by digest) and not collected yet.
+     * The files of an entry stay in place while one of its lists is used, because a mapped file cannot be deleted on every system
+     */
+    private final Map<String, Integer> mappedLists = new ConcurrentHashMap<>();
+
+    CacheStore(@Nonnull File rootDirectory) {
+        this.rootDirectory = Objects.requireNonNull(rootDirectory);
+    }
+
+    public File getRootDirectory() {
+        return rootDirectory;
+    }
+
+    /**
+     * Returns the name of the reference of a node
+     * @param workflowUUID The UUID of the workflow
+     * @param nodeId The id of the node
+     * @return The name of the reference
+     */
+    public static String referenceName(@Nonnull UUID workflowUUID, int nodeId) {
+        return Objects.requireNonNull(workflowUUID) + "_" + nodeId;
+    }
+
+    /**
+     * Returns the directory of an entry
+     * @param digest The digest of the entry
+     * @return The directory of the entry
+     */
+    private File getEntryDirectory(@Nonnull String digest) {
+        Objects.requireNonNull(digest);
+        return new File(new File(rootDirectory, digest.substring(0, 2)), digest);
+    }
+
+    /**
+     * Returns true if the outputs of the entry are stored
+     * @param digest The digest of the entry
+     * @return True if the outputs of the entry are stored, false otherwise
+     */
+    public boolean contains(@Nonnull String digest) {
+        return new File(getEntryDirectory(digest), "outputs").isDirectory();
+    }
+
+    /**
+     * Stores the outputs of a referenced entry. The outputs are not written again if the entry is already stored
+     * (the outputs of a deterministic node are always the same for the same inputs) or if the entry is not referenced anymore
+     * (it was evicted before the {@link CacheWriter} wrote it).
+     * The outputs are written in a temporary directory which is then renamed, so an entry is never read partially written.
+     * @param digest The digest of the entry
+     * @param outputs The outputs
+     * @param sync True to force the outputs to be written to the disk before returning
+     * @return True if the outputs were written, false if they were not needed
+     */
+    public boolean write(@Nonnull String digest, @Nonnull NodeArguments outputs, boolean sync) {
+        var lock = locks.get(digest);
+        lock.lock();
+        try {
+            Objects.requireNonNull(outputs);
+            var entryDirectory = getEntryDirectory(digest);
+            var outputsDirectory = new File(entryDirectory, "outputs");
+            var refs = new File(entryDirectory, "refs").list();
+            if (outputsDirectory.isDirectory() || refs == null || refs.length == 0) {
+                return false;
+            }
+
+            var tmpDirectory = new File(entryDirectory, "outputs.tmp");
+            if (tmpDirectory.exists()) {
+                Utils.deleteCompleteDirectory(tmpDirectory);
+            }
+            if (!tmpDirectory.mkdirs()) {
+                throw new RuntimeException("Could not create cache store entry directory");
+            }
+
+            var i = 0;
+            for (var output : outputs.getArguments().entrySet()) {
+                //The codec uses the real type of the value, not the type of the output connector.
+                //Imagine the output type is an object but the real type of the value is a file, we should do the processing for the file type
+                BinaryCodec.toFile(new File(tmpDirectory, i + ".bin"), output.getKey(), output.getValue(), indexedListMinSize);
+                i++;
+            }
+
+            try {
+                Files.move(tmpDirectory.toPath(), outputsDirectory.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            if (sync) {
+                sync(digest);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forces the outputs of an entry to be written to the disk
+     * @param digest The digest of the entry
+     */
+    public void sync(@Nonnull String digest) {
+        var lock = locks.get(digest);
+        lock.lock();
+        try {
+            var entryDirectory = getEntryDirectory(digest);
+            var outputsDirectory = new File(entryDirectory, "outputs");
+            var outputFiles = outputsDirectory.listFiles();
+            if (outputFiles == null) {
+                return;
+            }
+            try {
+                for (var outputFile : outputFiles) {
+                    force(outputFile.toPath());
+                }
+                //The directories are synced too, so the rename of the entry is not lost
+                force(outputsDirectory.toPath());
+                force(entryDirectory.toPath());
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forces a file or a directory to be written to the disk
+     * @param path The path of the file or directory
+     * @throws IOException If the file cannot be synced
+     */
+    private static void force(@Nonnull Path path) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            //Some systems (like Windows) cannot open a directory, its content is still synced with the files
+            if (!Files.isDirectory(path)) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Reads the outputs of an entry and adds the reference to it. The big lists are not decoded but returned as a {@link MappedList}.
+     * An entry that cannot be decoded (written by an older version for example) is deleted and considered as not stored.
+     * @param digest The digest of the entry
+     * @param reference The name of the reference (see {@link CacheStore#referenceName(UUID, int)})
+     * @return The outputs or {@link Optional#empty()} if the entry is not stored
+     */
+    public Optional<NodeArguments> get(@Nonnull String digest, @Nonnull String reference) {
+        Objects.requireNonNull(reference);
+        var lock = locks.get(digest);
+        lock.lock();
+        try {
+            var outputs = read(digest);
+            if (outputs.isPresent()) {
+                addReference(digest, reference);
+            }
+            return outputs;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads the outputs of an entry without adding a reference to it, see {@link CacheStore#get(String, String)}
+     * @param digest The digest of the entry
+     * @return The outputs or {@link Optional#empty()} if the entry is not stored
+     */
+    public Optional<NodeArguments> read(@Nonnull String digest) {
+        var lock = locks.get(digest);
+        lock.lock();
+        try {
+            var outputsDirectory = new File(getEntryDirectory(digest), "outputs");
+            if (!outputsDirectory.isDirectory()) {
+                return Optional.empty();
+            }
+
+            var nodeArguments = new NodeArguments();
+            try {
+                for (var i = 0; new File(outputsDirectory, i + ".bin").exists(); i++) {
+                    var namedValue = BinaryCodec.fromFile(new File(outputsDirectory, i + ".bin"));
+                    if (namedValue.value() instanceof MappedList mappedList) {
+                        mappedLists.merge(digest, 1, Integer::sum);
+                        //The action must not reference the list, otherwise it would never be collected
+                        cleaner.register(mappedList, () -> mappedListCollected(digest));
+                    }
+                    nodeArguments.putArgument(namedValue.name(), namedValue.value());
+                }
+            } catch (RuntimeException e) {
+                deleteEntry(getEntryDirectory(digest));
+                return Optional.empty();
+            }
+            return Optional.of(nodeArguments);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds a reference to an entry
+     * @param digest The digest of the entry
+     * @param reference The name of the reference (see {@link CacheStore#referenceName(UUID, int)})
+     */
+    public void addReference(@Nonnull String digest, @Nonnull String reference) {
+        var lock = locks.get(digest);
+        lock.lock();
+        try {
+            Objects.requireNonNull(reference);
+            var refsDirectory = new File(getEntryDirectory(digest), "refs");
+            if (!refsDirectory.exists() && !refsDirectory.mkdirs()) {
+                throw new RuntimeException("Could not create cache store references directory");
+            }
+            try {
+                var refFile = new File(refsDirectory, reference);
+                if (!refFile.exists() && !refFile.createNewFile()) {
+                    throw new RuntimeException("Could not create cache store reference");
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes a reference from an entry. The entry is deleted if it is not referenced anymore.
+     * @param digest The digest of the entry
+     * @param reference The name of the reference (see {@link CacheStore#referenceName(UUID, int)})
+     */
+    public void removeReference(@Nonnull String digest, @Nonnull String reference) {
+        var lock = locks.get(digest);
+        lock.lock();
+        try {
+            Objects.requireNonNull(reference);
+            var entryDirectory = getEntryDirectory(digest);
+            var refsDirectory = new File(entryDirectory, "refs");
+            var refFile = new File(refsDirectory, reference);
+            if (refFile.exists() && !refFile.delete()) {
+                throw new RuntimeException("Could not delete cache store reference");
+            }
+            var remaining = refsDirectory.list();
+            if (remaining == null || remaining.length == 0) {
+                deleteEntry(entryDirectory);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Deletes an entry from the disk and from the {@link MemoryCache}, and cancels its write if the {@link CacheWriter} did not write it yet.
+     * If a {@link MappedList} read from the entry is still used, only the references are deleted: the outputs stay mapped
+     * and are deleted once the last list is collected (see {@link CacheStore#mappedListCollected(String)}).
+     * The lock of the entry must be held.
+     * @param entryDirectory The directory of the entry
+     */
+    private void deleteEntry(@Nonnull File entryDirectory) {
+        MemoryCache.INSTANCE.invalidate(entryDirectory.getName());
+        CacheWriter.INSTANCE.discard(entryDirectory.getName());
+        var refsDirectory = new File(entryDirectory, "refs");
+        if (mappedLists.containsKey(entryDirectory.getName())) {
+            if (refsDirectory.exists()) {
+                Utils.deleteCompleteDirectory(refsDirectory);
+            }
+            return;
+        }
+        if (entryDirectory.exists()) {
+            Utils.deleteCompleteDirectory(entryDirectory);
+        }
+    }
+
+    /**
+     * Called when a {@link MappedList} read from an entry is collected.
+     * The entry is deleted if it was deleted while the list was used (it is not referenced) and no other list read from it is used.
+     * @param digest The digest of the entry
+     */
+    private void mappedListCollected(@Nonnull String digest) {
+        var lock = locks.get(digest);
+        lock.lock();
+        try {
+            mappedLists.computeIfPresent(digest, (d, count) -> count > 1 ? count - 1 : null);
+            var entryDirectory = getEntryDirectory(digest);
+            var refs = new File(entryDirectory, "refs").list();
+            if (entryDirectory.exists() && (refs == null || refs.length == 0)) {
+                deleteEntry(entryDirectory);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the references of the workflows that do not exist anymore and deletes the entries that are not referenced
+     * (the references can be left if the application stopped before a workflow was deleted completely)
+     */
+    public void collectGarbage() {
+        var shards = rootDirectory.listFiles(File::isDirectory);
+        if (shards == null) {
+            return;
+        }
+        for (var shard : shards) {
+            var entries = shard.listFiles(File::isDirectory);
+            if (entries == null) {
+                continue;
+            }
+            for (var entryDirectory : entries) {
+                var lock = locks.get(entryDirectory.getName());
+                lock.lock();
+                try {
+                    var refsDirectory = new File(entryDirectory, "refs");
+                    var refs = refsDirectory.listFiles();
+                    if (refs != null) {
+                        for (var ref : refs) {
+                            var workflowUUID = ref.getName().substring(0, ref.getName().lastIndexOf('_'));
+                            if (!new File(Data.dataRootDirectory, workflowUUID).isDirectory() && !ref.delete()) {
+                                throw new RuntimeException("Could not delete cache store reference");
+                            }
+                        }
+                    }
+                    var remaining = refsDirectory.list();
+                    if (remaining == null || remaining.length == 0) {
+                        deleteEntry(entryDirectory);
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.heig.entities.workflow.data;
+
+import com.heig.entities.workflow.execution.NodeArguments;
+import jakarta.annotation.Nonnull;
+import org.eclipse.microprofile.config.ConfigProvider;
+
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes the outputs of the entries to the {@link CacheStore} in a background thread, so the successors of a node do not wait for the disk.
+ * The writes waiting to be done are kept in memory and can be read with {@link CacheWriter#getPending(String)}.
+ * At most "cache_write_queue_size" writes can wait (64 by default, from the quarkus config), then the nodes wait for the writer.<br>
+ * The durability is chosen with "cache_write_mode" (see {@link Durability}, "async" by default).
+ * The outputs containing a file are always written directly because the file can be modified before the writer reads it.
+ */
+public class CacheWriter {
+    /**
+     * When the outputs are written and forced to the disk
+     */
+    public enum Durability {
+        /**
+         * The outputs are written in the background and never forced to the disk (they can be lost if the system crashes)
+         */
+        ASYNC,
+        /**
+         * The outputs are written in the background and forced to the disk after each batch of writes
+         */
+        BATCH,
+        /**
+         * The outputs are written and forced to the disk before the node finishes
+         */
+        SYNC
+    }
+
+    /**
+     * The statistics of the writer
+     * @param pending The number of writes waiting to be done
+     * @param written The number of entries written by the background thread
+     * @param failed The number of writes that failed (the node is executed again the next time)
+     */
+    public record Stats(long pending, long written, long failed) { }
+
+    /**
+     * The writer used by every {@link Cache}
+     */
+    public static final CacheWriter INSTANCE = new CacheWriter(
+        CacheStore.INSTANCE,
+        Durability.valueOf(ConfigProvider.getConfig().getOptionalValue("cache_write_mode", String.class).orElse("async").toUpperCase()),
+        ConfigProvider.getConfig().getOptionalValue("cache_write_queue_size", Integer.class).orElse(64)
+    );
+
+    private final CacheStore store;
+    private final Durability durability;
+
+    /**
+     * The digests of the entries to write, in order
+     */
+    private final BlockingQueue<String> queue;
+
+    /**
+     * The outputs of the entries waiting to be written
+     */
+    private final Map<String, NodeArguments> pending = new ConcurrentHashMap<>();
+
+    private final AtomicLong written = new AtomicLong(0);
+    private final AtomicLong failed = new AtomicLong(0);
+
+    CacheWriter(@Nonnull CacheStore store, @Nonnull Durability durability, int queueSize) {
+        if (queueSize <= 0) {
+            throw new IllegalArgumentException("The size of the cache write queue must be greater than 0");
+        }
+        this.store = Objects.requireNonNull(store);
+        this.durability = Objects.requireNonNull(durability);
+        queue = new ArrayBlockingQueue<>(queueSize);
+
+        if (durability != Durability.SYNC) {
+            var thread = new Thread(this::run, "cache-writer");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    public Durability getDurability() {
+        return durability;
+    }
+
+    /**
+     * Writes the outputs of an entry to the {@link CacheStore}. The reference of the node must already be added to the entry.
+     * Waits if too many writes are already waiting.
+     * @param digest The digest of the entry
+     * @param outputs The outputs
+     */
+    public void write(@Nonnull String digest, @Nonnull NodeArguments outputs) {
+        Objects.requireNonNull(digest);
+        Objects.requireNonNull(outputs);
+        var values = outputs.getArguments().values();
+        if (durability == Durability.SYNC || !values.stream().allMatch(MemoryCache::isStorable)) {
+            store.write(digest, outputs, durability != Durability.ASYNC);
+            return;
+        }
+
+        //The outputs are copied, so the values given to the successors can be modified before being written
+        var copy = new NodeArguments();
+        outputs.getArguments().forEach((name, value) -> copy.putArgument(name, MemoryCache.copy(value)));
+        //The same digest always has the same outputs, there is no need to write them twice
+        if (pending.putIfAbsent(digest, copy) == null) {
+            try {
+                queue.put(digest);
+            } catch (InterruptedException e) {
+                pending.remove(digest, copy);
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * Returns the outputs of an entry waiting to be written
+     * @param digest The digest of the entry
+     * @return A copy of the outputs or {@link Optional#empty()} if no write is waiting for this entry
+     */
+    public Optional<NodeArguments> getPending(@Nonnull String digest) {
+        Objects.requireNonNull(digest);
+        var outputs = pending.get(digest);
+        if (outputs == null) {
+            return Optional.empty();
+        }
+        var copy = new NodeArguments();
+        outputs.getArguments().forEach((name, value) -> copy.putArgument(name, MemoryCache.copy(value)));
+        return Optional.of(copy);
+    }
+
+    /**
+     * Cancels the write of an entry (because the entry was deleted)
+     * @param digest The digest of the entry
+     */
+    public void discard(@Nonnull String digest) {
+        pending.remove(Objects.requireNonNull(digest));
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Waits until all the writes waiting are done
+     */
+    public synchronized void flush() {
+        try {
+            while (!pending.isEmpty()) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns the current statistics
+     * @return The current statistics
+     */
+    public Stats getStats() {
+        return new Stats(pending.size(), written.get(), failed.get());
+    }
+
+    /**
+     * Writes the entries of the queue in batches (all the entries waiting when the writer wakes up)
+     */
+    private void run() {
+        var batch = new ArrayList<String>();
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch);
+
+            var done = new HashMap<String, NodeArguments>();
+            for (var digest : batch) {
+                var outputs = pending.get(digest);
+                //The entry was discarded or already written by a previous occurrence in the batch
+                if (outputs == null || done.containsKey(digest)) {
+                    continue;
+                }
+                try {
+                    if (store.write(digest, outputs, false)) {
+                        written.incrementAndGet();
+                    }
+                } catch (RuntimeException e) {
+                    //The entry is not stored, the node will be executed again the next time
+                    failed.incrementAndGet();
+                }
+                done.put(digest, outputs);
+            }
+            if (durability == Durability.BATCH) {
+                for (var digest : done.keySet()) {
+                    try {
+                        store.sync(digest);
+                    } catch (RuntimeException e) {
+                        failed.incrementAndGet();
+                    }
+                }
+            }
+
+            //Only removes the outputs written, the same digest can have been set again since
+            done.forEach(pending::remove);
+            synchronized (this) {
+                notifyAll();
+            }
+            batch.clear();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.heig.entities.workflow.data;
+
+import com.heig.entities.workflow.types.WorkflowTypes;
+import jakarta.annotation.Nonnull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Objects;
+
+/**
+ * Streaming SHA-256 digest used to identify the values stored in the {@link Cache}.
+ * The values are fed incrementally (see {@link com.heig.entities.workflow.types.WType#updateDigest(ContentDigest, Object)}),
+ * so big values like files never need to be fully loaded in memory.
+ * Every variable length value is prefixed by its length, so two different sequences of values cannot produce the same input for the digest.
+ */
+public class ContentDigest {
+    /**
+     * The size of the buffer used to read the streams
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final MessageDigest digest;
+
+    /**
+     * Buffer used to convert the numbers to bytes
+     */
+    private final ByteBuffer numberBuffer = ByteBuffer.allocate(Long.BYTES);
+
+    public ContentDigest() {
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns the digest of a value, computed with the real type of the value
+     * @param value The value
+     * @return The digest as a hexadecimal string
+     */
+    public static String of(@Nonnull Object value) {
+        Objects.requireNonNull(value);
+        //The digest of a mapped list is stored with it, so the list does not need to be decoded
+        if (value instanceof MappedList mappedList) {
+            return mappedList.getContentDigest();
+        }
+        var contentDigest = new ContentDigest();
+        WorkflowTypes.fromObject(value).updateDigest(contentDigest, value);
+        return contentDigest.toHexString();
+    }
+
+    /**
+     * Adds a byte to the digest
+     * @param value The byte
+     * @return This instance
+     */
+    public ContentDigest putByte(byte value) {
+        digest.update(value);
+        return this;
+    }
+
+    /**
+     * Adds an integer to the digest
+     * @param value The integer
+     * @return This instance
+     */
+    public ContentDigest putInt(int value) {
+        numberBuffer.clear();
+        digest.update(numberBuffer.putInt(value).array(), 0, Integer.BYTES);
+        return this;
+    }
+
+    /**
+     * Adds a long to the digest
+     * @param value The long
+     * @return This instance
+     */
+    public ContentDigest putLong(long value) {
+        numberBuffer.clear();
+        digest.update(numberBuffer.putLong(value).array(), 0, Long.BYTES);
+        return this;
+    }
+
+    /**
+     * Adds a string (encoded in UTF-8) to the digest
+     * @param value The string
+     * @return This instance
+     */
+    public ContentDigest putString(@Nonnull String value) {
+        Objects.requireNonNull(value);
+        return putBytes(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Adds an array of bytes to the digest
+     * @param value The array of bytes
+     * @return This instance
+     */
+    public ContentDigest putBytes(@Nonnull byte[] value) {
+        Objects.requireNonNull(value);
+        putInt(value.length);
+        digest.update(value);
+        return this;
+    }
+
+    /**
+     * Adds all the bytes of the stream to the digest. The stream is read by blocks and is not closed.
+     * @param stream The stream
+     * @return This instance
+     * @throws IOException If the stream cannot be read
+     */
+    public ContentDigest putStream(@Nonnull InputStream stream) throws IOException {
+        Objects.requireNonNull(stream);
+        var buffer = new byte[BUFFER_SIZE];
+        var total = 0L;
+        int read;
+        while ((read = stream.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+            total += read;
+        }
+        //The length is added after the content because it is only known at the end of the stream
+        return putLong(total);
+    }
+
+    /**
+     * Completes the digest. The instance cannot be used anymore after this call.
+     * @return The digest
+     */
+    public byte[] toBytes() {
+        return digest.digest();
+    }
+
+    /**
+     * Completes the digest. The instance cannot be used anymore after this call.
+     * @return The digest as a hexadecimal string
+     */
+    public String toHexString() {
+        return HexFormat.of().formatHex(toBytes());
+    }
+}
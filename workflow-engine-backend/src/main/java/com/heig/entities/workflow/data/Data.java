@@ -82,6 +82,7 @@ public class Data {
      * Deletes the data directory for a single workflow UUID
      */
     public void delete() {
+        cache.clear();
         Utils.deleteCompleteDirectory(dataDirectory);
     }
 
@@ -89,6 +90,8 @@ public class Data {
      * Deletes the data root directory
      */
     public static void clearAll() {
+        CacheWriter.INSTANCE.flush();
+        MemoryCache.INSTANCE.clear();
         Utils.deleteCompleteDirectory(dataRootDirectory);
     }
 
@@ -121,33 +124,4 @@ public class Data {
     public static Optional<Data> get(@Nonnull UUID workflowUUID) {
         return Optional.ofNullable(instances.get(workflowUUID));
     }
-
-    /**
-     * Used to write an object to an output file with {@link ObjectOutputStream}
-     * @param output The output file
-     * @param value The value to write to the file
-     */
-    public static void toFile(@Nonnull File output, @Nonnull Object value) {
-        Objects.requireNonNull(output);
-        Objects.requireNonNull(value);
-        try (var oos = new ObjectOutputStream(new FileOutputStream(output))) {
-            oos.writeObject(value);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
-    }
-
-    /**
-     * Used to read an object from an input file with {@link ObjectInputStream}
-     * @param input The input file
-     * @return The object read or {@link Optional#empty()} if an error was thrown
-     */
-    public static Optional<Object> fromFile(@Nonnull File input) {
-        Objects.requireNonNull(input);
-        try (var ois = new ObjectInputStream(new FileInputStream(input))) {
-            return Optional.ofNullable(ois.readObject());
-        } catch (Exception e) {
-            return Optional.empty();
-        }
-    }
 }
@@ -0,0 +1,80 @@
+package com.heig.entities.workflow.data;
+
+import com.heig.entities.workflow.types.WCollection;
+import jakarta.annotation.Nonnull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * Read-only list backed by a cache file mapped in memory (see {@link BinaryCodec#fromFile(java.io.File)}).
+ * The elements are only decoded when they are accessed, so reading a slice of a big list only loads the pages containing this slice.
+ * The type and the digest of the list are stored in the file, so they are known without decoding the elements.<br>
+ * The file stays mapped as long as the list is used: the {@link CacheStore} only deletes the entry containing the file
+ * once all the lists read from it are collected.
+ */
+public class MappedList extends AbstractList<Object> implements RandomAccess {
+    /**
+     * The buffer containing the whole file, mapped in memory
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * The type of the list
+     */
+    private final WCollection type;
+
+    /**
+     * The digest of the content of the list (as computed by {@link ContentDigest#of(Object)} on the original list)
+     */
+    private final String contentDigest;
+
+    /**
+     * The number of elements
+     */
+    private final int size;
+
+    /**
+     * The position in the buffer of the table containing the position of each element
+     */
+    private final int indexPosition;
+
+    MappedList(@Nonnull ByteBuffer buffer, @Nonnull WCollection type, @Nonnull String contentDigest, int size, int indexPosition) {
+        this.buffer = Objects.requireNonNull(buffer);
+        this.type = Objects.requireNonNull(type);
+        this.contentDigest = Objects.requireNonNull(contentDigest);
+        this.size = size;
+        this.indexPosition = indexPosition;
+    }
+
+    public WCollection getType() {
+        return type;
+    }
+
+    public String getContentDigest() {
+        return contentDigest;
+    }
+
+    @Override
+    public Object get(int index) {
+        Objects.checkIndex(index, size);
+        try {
+            //Each access uses its own view of the buffer, so the list can be read by multiple threads
+            var view = buffer.duplicate();
+            //The index was checked to be inside the buffer when the list was created
+            var position = view.getLong(indexPosition + index * Long.BYTES);
+            view.position((int) position);
+            return type.getValueType().read(new ByteBufferInput(view));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,229 @@
+package com.heig.entities.workflow.data;
+
+import com.heig.entities.workflow.execution.NodeArguments;
+import com.heig.entities.workflow.file.FileWrapper;
+import jakarta.annotation.Nonnull;
+import org.eclipse.microprofile.config.ConfigProvider;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory tier placed in front of the {@link CacheStore}. It is shared by all the workflows and bounded by the estimated size (in bytes) of the values stored.
+ * The entries are identified by the same digest as in the {@link CacheStore}.
+ * When the maximum size is reached, the least recently used entries are evicted.
+ * Values containing a {@link FileWrapper} are never stored in memory: retrieving them from the cache must restore the file content on the disk.
+ */
+public class MemoryCache {
+    /**
+     * Snapshot of the statistics of a {@link MemoryCache}
+     * @param hits The number of successful retrievals
+     * @param misses The number of failed retrievals
+     * @param evictions The number of entries evicted to free some space
+     * @param entries The number of entries currently stored
+     * @param sizeBytes The estimated size of the entries currently stored
+     * @param maxSizeBytes The maximum size of the entries
+     */
+    public record Stats(long hits, long misses, long evictions, int entries, long sizeBytes, long maxSizeBytes) { }
+
+    /**
+     * An entry of the cache
+     * @param outputs The values of the outputs by output name
+     * @param sizeBytes The estimated size of the values
+     */
+    private record Entry(Map<String, Object> outputs, long sizeBytes) { }
+
+    /**
+     * The instance used by every {@link Cache}. The maximum size is loaded from the quarkus config ("cache_memory_max_bytes", 64 MiB by default)
+     */
+    public static final MemoryCache INSTANCE = new MemoryCache(
+        ConfigProvider.getConfig().getOptionalValue("cache_memory_max_bytes", Long.class).orElse(64L * 1024 * 1024)
+    );
+
+    /**
+     * The entries in access order (the first entry is the least recently used)
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * The maximum estimated size of the entries
+     */
+    private final long maxSizeBytes;
+
+    /**
+     * The current estimated size of the entries
+     */
+    private long sizeBytes = 0;
+
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+    private final AtomicLong evictions = new AtomicLong(0);
+
+    public MemoryCache(long maxSizeBytes) {
+        if (maxSizeBytes < 0) {
+            throw new IllegalArgumentException("The maximum size cannot be negative");
+        }
+        this.maxSizeBytes = maxSizeBytes;
+    }
+
+    /**
+     * Returns a copy of the outputs stored for the digest
+     * @param digest The digest of the entry
+     * @return A copy of the outputs or {@link Optional#empty()} if the digest is not in the cache
+     */
+    public Optional<NodeArguments> get(@Nonnull String digest) {
+        Objects.requireNonNull(digest);
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(digest);
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return Optional.empty();
+        }
+        hits.incrementAndGet();
+
+        //The values are copied so that the node receiving them cannot modify the values stored in the cache
+        var args = new NodeArguments();
+        entry.outputs().forEach((name, value) -> args.putArgument(name, copy(value)));
+        return Optional.of(args);
+    }
+
+    /**
+     * Stores a copy of the outputs for the digest. Does nothing if one of the outputs cannot be stored in memory or if the outputs are bigger than the maximum size
+     * @param digest The digest of the entry
+     * @param outputs The outputs
+     */
+    public void put(@Nonnull String digest, @Nonnull NodeArguments outputs) {
+        Objects.requireNonNull(digest);
+        Objects.requireNonNull(outputs);
+
+        var values = outputs.getArguments();
+        if (!values.values().stream().allMatch(MemoryCache::isStorable)) {
+            return;
+        }
+        var copy = new HashMap<String, Object>();
+        var size = 0L;
+        for (var output : values.entrySet()) {
+            copy.put(output.getKey(), copy(output.getValue()));
+            size += estimateSize(output.getValue());
+        }
+        if (size > maxSizeBytes) {
+            return;
+        }
+
+        synchronized (this) {
+            var old = entries.put(digest, new Entry(copy, size));
+            if (old != null) {
+                sizeBytes -= old.sizeBytes();
+            }
+            sizeBytes += size;
+
+            //Evicts the least recently used entries until the size is below the maximum
+            var it = entries.entrySet().iterator();
+            while (sizeBytes > maxSizeBytes && it.hasNext()) {
+                var eldest = it.next();
+                sizeBytes -= eldest.getValue().sizeBytes();
+                it.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Removes an entry
+     * @param digest The digest of the entry
+     */
+    public synchronized void invalidate(@Nonnull String digest) {
+        Objects.requireNonNull(digest);
+        var old = entries.remove(digest);
+        if (old != null) {
+            sizeBytes -= old.sizeBytes();
+        }
+    }
+
+    /**
+     * Removes all the entries
+     */
+    public synchronized void clear() {
+        entries.clear();
+        sizeBytes = 0;
+    }
+
+    /**
+     * Returns the current statistics
+     * @return The current statistics
+     */
+    public synchronized Stats getStats() {
+        return new Stats(hits.get(), misses.get(), evictions.get(), entries.size(), sizeBytes, maxSizeBytes);
+    }
+
+    /**
+     * Returns true if the value can be stored in memory (it is not and does not contain a {@link FileWrapper} or a {@link MappedList})
+     * @param value The value
+     * @return True if the value can be stored in memory, false otherwise
+     */
+    static boolean isStorable(Object value) {
+        //A mapped list is already cheap to read and copying it would decode it completely
+        if (value instanceof FileWrapper || value instanceof MappedList) {
+            return false;
+        }
+        if (value instanceof Collection<?> collection) {
+            return collection.stream().allMatch(MemoryCache::isStorable);
+        }
+        if (value instanceof Map<?, ?> map) {
+            return map.entrySet().stream().allMatch(e -> isStorable(e.getKey()) && isStorable(e.getValue()));
+        }
+        return true;
+    }
+
+    /**
+     * Returns a deep copy of the collections and maps contained in the value. The other values are immutable and are not copied.
+     * @param value The value to copy
+     * @return The copy
+     */
+    static Object copy(Object value) {
+        if (value instanceof Set<?> set) {
+            var copy = new HashSet<>();
+            set.forEach(e -> copy.add(copy(e)));
+            return copy;
+        }
+        if (value instanceof Collection<?> collection) {
+            var copy = new LinkedList<>();
+            collection.forEach(e -> copy.add(copy(e)));
+            return copy;
+        }
+        if (value instanceof Map<?, ?> map) {
+            var copy = new HashMap<>();
+            map.forEach((k, v) -> copy.put(copy(k), copy(v)));
+            return copy;
+        }
+        return value;
+    }
+
+    /**
+     * Returns a rough estimation of the memory used by the value
+     * @param value The value
+     * @return The estimated size in bytes
+     */
+    private static long estimateSize(Object value) {
+        if (value instanceof String s) {
+            return 40 + 2L * s.length();
+        }
+        if (value instanceof Collection<?> collection) {
+            var size = 48L;
+            for (var e : collection) {
+                size += 24 + estimateSize(e);
+            }
+            return size;
+        }
+        if (value instanceof Map<?, ?> map) {
+            var size = 64L;
+            for (var e : map.entrySet()) {
+                size += 48 + estimateSize(e.getKey()) + estimateSize(e.getValue());
+            }
+            return size;
+        }
+        return 16;
+    }
+}
@@ -0,0 +1,62 @@
+package com.heig.entities.workflow.data;
+
+import jakarta.annotation.Nonnull;
+
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed number of locks shared by the keys having the same hash, so operations on different keys (usually) do not wait for each other
+ * without creating a lock per key
+ */
+class StripedLocks {
+    private final ReentrantLock[] locks;
+
+    /**
+     * Creates the locks
+     * @param stripes The number of locks (rounded up to a power of two)
+     */
+    StripedLocks(int stripes) {
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("The number of stripes must be greater than 0");
+        }
+        var size = Integer.highestOneBit(stripes);
+        if (size < stripes) {
+            size <<= 1;
+        }
+        locks = new ReentrantLock[size];
+        for (var i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Returns the lock of a key
+     * @param key The key
+     * @return The lock
+     */
+    public ReentrantLock get(@Nonnull Object key) {
+        var hash = Objects.requireNonNull(key).hashCode();
+        //Spreads the high bits, so keys only differing by them do not use the same lock
+        hash ^= hash >>> 16;
+        return locks[hash & (locks.length - 1)];
+    }
+
+    /**
+     * Acquires all the locks (always in the same order, so two threads locking everything cannot deadlock)
+     */
+    public void lockAll() {
+        for (var lock : locks) {
+            lock.lock();
+        }
+    }
+
+    /**
+     * Releases all the locks acquired by {@link StripedLocks#lockAll()}
+     */
+    public void unlockAll() {
+        for (var i = locks.length - 1; i >= 0; i--) {
+            locks[i].unlock();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.heig.entities.workflow.errors;
+
+import com.heig.entities.workflow.nodes.CodeNode;
+import jakarta.annotation.Nonnull;
+
+import java.util.Objects;
+
+public class CodeSyntaxError extends WorkflowNodeError {
+    private final String message;
+    public CodeSyntaxError(@Nonnull CodeNode node, @Nonnull String message) {
+        super(node);
+        this.message = Objects.requireNonNull(message);
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return "Syntax error in the code: %s".formatted(message);
+    }
+}
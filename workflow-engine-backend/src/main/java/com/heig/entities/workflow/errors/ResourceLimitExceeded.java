@@ -0,0 +1,65 @@
+package com.heig.entities.workflow.errors;
+
+import com.google.gson.JsonObject;
+import com.heig.entities.workflow.nodes.Node;
+import jakarta.annotation.Nonnull;
+
+import java.util.Objects;
+
+public class ResourceLimitExceeded extends WorkflowNodeError {
+    /**
+     * The resources that can be limited
+     */
+    public enum Resource {
+        /**
+         * The CPU time used by the thread executing the node, in ms
+         */
+        CPU_TIME("CPU time", "ms"),
+        /**
+         * The memory allocated by the thread executing the node, in bytes
+         */
+        ALLOCATED_MEMORY("allocated memory", "bytes"),
+        /**
+         * The number of statements executed by the code
+         */
+        STATEMENTS("statements", "statements");
+
+        private final String description;
+        private final String unit;
+
+        Resource(@Nonnull String description, @Nonnull String unit) {
+            this.description = Objects.requireNonNull(description);
+            this.unit = Objects.requireNonNull(unit);
+        }
+    }
+
+    private final Resource resource;
+    private final long limit;
+
+    public ResourceLimitExceeded(@Nonnull Node node, @Nonnull Resource resource, long limit) {
+        super(node);
+        this.resource = Objects.requireNonNull(resource);
+        this.limit = limit;
+    }
+
+    public Resource getResource() {
+        return resource;
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    @Override
+    public JsonObject toJson() {
+        var obj = super.toJson();
+        obj.addProperty("resource", resource.name());
+        obj.addProperty("limit", limit);
+        return obj;
+    }
+
+    @Override
+    public String toString() {
+        return "Resource limit exceeded: %s (%d %s)".formatted(resource.description, limit, resource.unit);
+    }
+}
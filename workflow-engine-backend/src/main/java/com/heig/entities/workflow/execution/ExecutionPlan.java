@@ -0,0 +1,286 @@
+package com.heig.entities.workflow.execution;
+
+import com.heig.entities.workflow.Workflow;
+import com.heig.entities.workflow.nodes.Node;
+import jakarta.annotation.Nonnull;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * The immutable plan of the execution of a {@link Workflow}, compiled once and reused by the executions while the graph does not change
+ * (see {@link Workflow#getGraphVersion()}).<br>
+ * The nodes are indexed by an int, each node knows the number of connected inputs it waits for and the edges going out of its outputs.
+ * During an execution ({@link Run}), each value arriving on an input decrements the counter of its node, the node is ready when the counter reaches 0.
+ * The connected inputs are exactly the inputs that must have a value, the unconnected inputs being optional in a valid workflow.<br>
+ * The ready nodes of a run are started by priority (see {@link ExecutionPlan#getCriticalPathWeights(long[])}).
+ */
+class ExecutionPlan {
+    /**
+     * An edge from an output of a node to an input of another node
+     * @param outputName The name of the output
+     * @param target The index of the node of the input
+     * @param inputId The id of the input
+     */
+    record Edge(String outputName, int target, int inputId) { }
+
+    /**
+     * An execution of the plan, counting the inputs still missing for each node
+     */
+    class Run {
+        private final AtomicIntegerArray pending = new AtomicIntegerArray(pendingInputs);
+
+        /**
+         * The priority of each node
+         */
+        private final long[] priorities;
+
+        private Run(@Nonnull long[] priorities) {
+            if (priorities.length != nodes.length) {
+                throw new IllegalArgumentException("There must be one priority per node");
+            }
+            this.priorities = priorities;
+        }
+
+        public long getPriority(int index) {
+            return priorities[index];
+        }
+
+        /**
+         * Notifies that a value arrived on an input of a node
+         * @param target The index of the node
+         * @return True if it was the last input missing (the node is ready), false otherwise
+         */
+        public boolean inputReceived(int target) {
+            return pending.decrementAndGet(target) == 0;
+        }
+
+        public ExecutionPlan getPlan() {
+            return ExecutionPlan.this;
+        }
+    }
+
+    /**
+     * The version of the graph compiled
+     */
+    private final long graphVersion;
+
+    /**
+     * The nodes by index
+     */
+    private final Node[] nodes;
+
+    /**
+     * The index of each node by node id
+     */
+    private final Map<Integer, Integer> indexes;
+
+    /**
+     * The number of connected inputs of each node
+     */
+    private final int[] pendingInputs;
+
+    /**
+     * The edges going out of each node
+     */
+    private final Edge[][] edges;
+
+    /**
+     * The nodes without connected inputs, started first
+     */
+    private final int[] roots;
+
+    /**
+     * The nodes in topological order (every node is after the nodes it depends on)
+     */
+    private final int[] topologicalOrder;
+
+    private ExecutionPlan(long graphVersion, Node[] nodes, Map<Integer, Integer> indexes, int[] pendingInputs, Edge[][] edges, int[] roots) {
+        this.graphVersion = graphVersion;
+        this.nodes = nodes;
+        this.indexes = indexes;
+        this.pendingInputs = pendingInputs;
+        this.edges = edges;
+        this.roots = roots;
+
+        //Kahn's algorithm, the nodes of a cycle are not ordered (a workflow with a cycle is not valid)
+        topologicalOrder = new int[nodes.length];
+        var remaining = pendingInputs.clone();
+        var count = 0;
+        for (var root : roots) {
+            topologicalOrder[count++] = root;
+        }
+        for (var i = 0; i < count; i++) {
+            for (var edge : edges[topologicalOrder[i]]) {
+                if (--remaining[edge.target()] == 0) {
+                    topologicalOrder[count++] = edge.target();
+                }
+            }
+        }
+        if (count != nodes.length) {
+            throw new IllegalArgumentException("The graph contains a cycle");
+        }
+    }
+
+    /**
+     * Compiles the plan of a workflow. The workflow must not be modified during the compilation.
+     * @param workflow The workflow
+     * @return The plan
+     */
+    public static ExecutionPlan compile(@Nonnull Workflow workflow) {
+        Objects.requireNonNull(workflow);
+        var graphVersion = workflow.getGraphVersion();
+        var nodes = workflow.getNodes().values().toArray(Node[]::new);
+        var indexes = new HashMap<Integer, Integer>(nodes.length * 2);
+        for (var i = 0; i < nodes.length; i++) {
+            indexes.put(nodes[i].getId(), i);
+        }
+
+        var pendingInputs = new int[nodes.length];
+        var edges = new Edge[nodes.length][];
+        var rootsCount = 0;
+        for (var i = 0; i < nodes.length; i++) {
+            for (var input : nodes[i].getInputs().values()) {
+                if (input.getConnectedTo().isPresent()) {
+                    pendingInputs[i]++;
+                }
+            }
+            if (pendingInputs[i] == 0) {
+                rootsCount++;
+            }
+
+            var nodeEdges = new ArrayList<Edge>();
+            for (var output : nodes[i].getOutputs().values()) {
+                for (var input : output.getConnectedTo()) {
+                    nodeEdges.add(new Edge(output.getName(), indexes.get(input.getParent().getId()), input.getId()));
+                }
+            }
+            edges[i] = nodeEdges.toArray(Edge[]::new);
+        }
+
+        var roots = new int[rootsCount];
+        var root = 0;
+        for (var i = 0; i < nodes.length; i++) {
+            if (pendingInputs[i] == 0) {
+                roots[root++] = i;
+            }
+        }
+        return new ExecutionPlan(graphVersion, nodes, Collections.unmodifiableMap(indexes), pendingInputs, edges, roots);
+    }
+
+    /**
+     * Returns true if the plan was compiled from the current graph of the workflow
+     * @param workflow The workflow
+     * @return True if the plan can be reused, false if it must be compiled again
+     */
+    public boolean isUpToDate(@Nonnull Workflow workflow) {
+        return workflow.getGraphVersion() == graphVersion;
+    }
+
+    /**
+     * Marks as dirty every node depending on a dirty node
+     * @param dirty For each node, true if it is dirty. Modified in place.
+     */
+    public void propagateDirty(@Nonnull boolean[] dirty) {
+        if (dirty.length != nodes.length) {
+            throw new IllegalArgumentException("There must be one value per node");
+        }
+        var toVisit = new ArrayDeque<Integer>();
+        for (var i = 0; i < dirty.length; i++) {
+            if (dirty[i]) {
+                toVisit.push(i);
+            }
+        }
+        while (!toVisit.isEmpty()) {
+            for (var edge : edges[toVisit.pop()]) {
+                if (!dirty[edge.target()]) {
+                    dirty[edge.target()] = true;
+                    toVisit.push(edge.target());
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the weight of the critical path starting at each node : the duration of the node plus the longest weight of the nodes depending on it.
+     * Starting first the nodes with the longest remaining path reduces the total duration when the nodes wait for a thread.
+     * @param durations The expected duration of each node
+     * @return The weight of each node
+     */
+    public long[] getCriticalPathWeights(@Nonnull long[] durations) {
+        if (durations.length != nodes.length) {
+            throw new IllegalArgumentException("There must be one duration per node");
+        }
+        var weights = new long[nodes.length];
+        for (var i = topologicalOrder.length - 1; i >= 0; i--) {
+            var index = topologicalOrder[i];
+            var longest = 0L;
+            for (var edge : edges[index]) {
+                longest = Math.max(longest, weights[edge.target()]);
+            }
+            weights[index] = durations[index] + longest;
+        }
+        return weights;
+    }
+
+    /**
+     * Starts a new execution of the plan where every node has the same priority
+     * @return The execution
+     */
+    public Run newRun() {
+        return new Run(new long[nodes.length]);
+    }
+
+    /**
+     * Starts a new execution of the plan
+     * @param priorities The priority of each node
+     * @return The execution
+     */
+    public Run newRun(@Nonnull long[] priorities) {
+        return new Run(priorities);
+    }
+
+    public int size() {
+        return nodes.length;
+    }
+
+    public Node getNode(int index) {
+        return nodes[index];
+    }
+
+    /**
+     * Returns the index of a node
+     * @param node The node
+     * @return The index or empty if the node is not in the plan
+     */
+    public OptionalInt indexOf(@Nonnull Node node) {
+        var index = indexes.get(node.getId());
+        return index == null ? OptionalInt.empty() : OptionalInt.of(index);
+    }
+
+    /**
+     * Returns the edges going out of a node. The array must not be modified.
+     * @param index The index of the node
+     * @return The edges
+     */
+    public Edge[] getEdges(int index) {
+        return edges[index];
+    }
+
+    /**
+     * Returns the number of connected inputs of a node
+     * @param index The index of the node
+     * @return The number of connected inputs
+     */
+    public int getPendingInputs(int index) {
+        return pendingInputs[index];
+    }
+
+    /**
+     * Returns the indexes of the nodes without connected inputs. The array must not be modified.
+     * @return The indexes of the nodes
+     */
+    public int[] getRoots() {
+        return roots;
+    }
+}
@@ -0,0 +1,46 @@
+package com.heig.entities.workflow.execution;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Represents the threads used by every {@link WorkflowExecutor} to execute the workflows.
+ * The orchestration (scheduling the nodes, propagating the outputs, ...) and the execution of the nodes are done on separate executors,
+ * like this a node taking a long time to execute cannot block the orchestration of the other workflows.
+ * The implementation used can be changed with {@link ExecutionPools#set(ExecutionPool)}
+ */
+public interface ExecutionPool {
+    /**
+     * Returns the executor running the orchestration tasks (short tasks that should never block)
+     * @return The orchestration executor
+     */
+    Executor getOrchestrationExecutor();
+
+    /**
+     * Returns the executor running the body of the nodes ({@link com.heig.entities.workflow.nodes.Node#execute})
+     * @return The node executor
+     */
+    Executor getNodeExecutor();
+
+    /**
+     * Returns the maximum number of nodes that a single workflow can execute at the same time
+     * @return The maximum number of nodes that a single workflow can execute at the same time
+     */
+    int getMaxConcurrentNodesPerWorkflow();
+
+    /**
+     * Returns the maximum number of nodes executed at the same time by the pool, more nodes would wait in the pool without the {@link WorkflowScheduler} deciding their order
+     * @return The maximum number of nodes executed at the same time, {@link Integer#MAX_VALUE} if there is no limit
+     */
+    int getMaxConcurrentNodes();
+
+    /**
+     * Returns the current metrics of the pool
+     * @return The current metrics of the pool
+     */
+    ExecutionPoolMetrics getMetrics();
+
+    /**
+     * Stops the threads of the pool. Tasks already submitted are still executed.
+     */
+    void shutdown();
+}
@@ -0,0 +1,17 @@
+package com.heig.entities.workflow.execution;
+
+/**
+ * Snapshot of the metrics of an {@link ExecutionPool}
+ * @param orchestrationActiveThreads The number of orchestration threads currently running a task
+ * @param orchestrationQueued The number of orchestration tasks waiting for a thread
+ * @param nodeActiveThreads The number of node threads currently running a task
+ * @param nodeQueued The number of node tasks waiting for a thread
+ * @param nodeCompleted The number of node tasks completed since the creation of the pool
+ */
+public record ExecutionPoolMetrics(
+    int orchestrationActiveThreads,
+    int orchestrationQueued,
+    int nodeActiveThreads,
+    int nodeQueued,
+    long nodeCompleted
+) { }
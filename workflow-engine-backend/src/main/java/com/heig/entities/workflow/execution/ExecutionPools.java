@@ -0,0 +1,101 @@
+package com.heig.entities.workflow.execution;
+
+import jakarta.annotation.Nonnull;
+import org.eclipse.microprofile.config.ConfigProvider;
+import org.jboss.logging.Logger;
+
+import java.util.Objects;
+
+/**
+ * Holds the {@link ExecutionPool} shared by all the {@link WorkflowExecutor}.
+ * The default pool can be configured in the quarkus config with :
+ * <ul>
+ *     <li>execution_mode : "platform" (default) to run the nodes on a fixed size pool of platform threads or "virtual" to run each node on a virtual thread (Java 21 or newer)</li>
+ *     <li>execution_orchestration_threads : the number of orchestration threads</li>
+ *     <li>execution_node_threads : the number of threads executing the nodes (only used in "platform" mode)</li>
+ *     <li>execution_workflow_max_concurrent_nodes : the maximum number of nodes executed at the same time by a single workflow</li>
+ *     <li>execution_max_in_flight : the maximum number of nodes executed at the same time by all the workflows (see {@link WorkflowScheduler})</li>
+ * </ul>
+ */
+public class ExecutionPools {
+    private static final Logger LOG = Logger.getLogger(ExecutionPools.class);
+
+    private ExecutionPools() {}
+
+    /**
+     * The current pool. Created from the quarkus config the first time it is used.
+     */
+    private static volatile ExecutionPool current = null;
+
+    /**
+     * Returns an integer from the quarkus config or the default value if it is not present
+     * @param name The name of the config value
+     * @param defaultValue The default value
+     * @return The value from the config or the default value
+     */
+    private static int getConfigValue(@Nonnull String name, int defaultValue) {
+        return ConfigProvider.getConfig().getOptionalValue(name, Integer.class).orElse(defaultValue);
+    }
+
+    /**
+     * Creates the {@link ExecutionPool} described by the quarkus config
+     * @return The {@link ExecutionPool}
+     */
+    private static ExecutionPool fromConfig() {
+        var processors = Runtime.getRuntime().availableProcessors();
+        var orchestrationThreads = getConfigValue("execution_orchestration_threads", Math.max(2, processors / 2));
+        var mode = ConfigProvider.getConfig().getOptionalValue("execution_mode", String.class).orElse("platform");
+        if (mode.equals("virtual")) {
+            if (VirtualThreadExecutionPool.isSupported()) {
+                return new VirtualThreadExecutionPool(
+                    orchestrationThreads,
+                    getConfigValue("execution_workflow_max_concurrent_nodes", 10_000)
+                );
+            }
+            LOG.warn("Virtual threads are not supported by this JVM, falling back to the platform execution mode");
+        } else if (!mode.equals("platform")) {
+            throw new RuntimeException("The execution mode '%s' was not found".formatted(mode));
+        }
+
+        var nodeThreads = getConfigValue("execution_node_threads", Math.max(2, processors));
+        return new ThreadPoolExecutionPool(
+            orchestrationThreads,
+            nodeThreads,
+            getConfigValue("execution_workflow_max_concurrent_nodes", nodeThreads)
+        );
+    }
+
+    /**
+     * Returns the current {@link ExecutionPool}
+     * @return The current {@link ExecutionPool}
+     */
+    public static ExecutionPool get() {
+        var pool = current;
+        if (pool == null) {
+            synchronized (ExecutionPools.class) {
+                if (current == null) {
+                    current = fromConfig();
+                }
+                pool = current;
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * Replaces the current {@link ExecutionPool}. The old pool is shut down, the tasks already submitted to it will still be executed.
+     * Only the nodes started after this call will use the new pool.
+     * @param pool The new {@link ExecutionPool}
+     */
+    public static void set(@Nonnull ExecutionPool pool) {
+        Objects.requireNonNull(pool);
+        ExecutionPool old;
+        synchronized (ExecutionPools.class) {
+            old = current;
+            current = pool;
+        }
+        if (old != null && old != pool) {
+            old.shutdown();
+        }
+    }
+}
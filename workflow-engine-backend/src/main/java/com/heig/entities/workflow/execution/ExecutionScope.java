@@ -0,0 +1,54 @@
+package com.heig.entities.workflow.execution;
+
+import com.heig.entities.workflow.nodes.Node;
+import jakarta.annotation.Nonnull;
+
+import java.util.Optional;
+
+/**
+ * The state of an execution of the nodes of a workflow by the {@link WorkflowExecutor} : the main execution of the workflow,
+ * or a {@link WorkflowRun} with its own {@link NodeState} sharing the graph and the cache of the workflow
+ */
+interface ExecutionScope {
+    /**
+     * Returns the {@link NodeState} of the node in this execution, created if it does not exist
+     * @param node The node
+     * @return The {@link NodeState}
+     */
+    NodeState getStateFor(@Nonnull Node node);
+
+    /**
+     * Called when the {@link State} of a {@link NodeState} of this execution changed
+     * @param state The {@link NodeState}
+     */
+    void nodeStateChanged(@Nonnull NodeState state);
+
+    /**
+     * Called when a node of this execution writes a line to its standard output
+     * @param line The line
+     */
+    void newLogLine(@Nonnull String line);
+
+    boolean isStopRequested();
+
+    /**
+     * Adds a {@link Runnable} started if a stop of this execution is requested
+     * @param stopListener The {@link Runnable}
+     */
+    void addStopListener(@Nonnull Runnable stopListener);
+
+    void removeStopListener(@Nonnull Runnable stopListener);
+
+    /**
+     * Returns the outputs given to a node instead of executing it
+     * @param node The node
+     * @return The outputs or empty if the node must be executed
+     */
+    Optional<NodeArguments> getOverriddenOutputs(@Nonnull Node node);
+
+    /**
+     * Returns true if the outputs of the deterministic nodes executed are stored in the cache of the workflow
+     * @return True if the execution writes to the cache, false if it only reads from it
+     */
+    boolean writesCache();
+}
@@ -0,0 +1,27 @@
+package com.heig.entities.workflow.execution;
+
+import jakarta.annotation.Nonnull;
+
+import java.util.Objects;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the threads of the {@link ExecutionPool} with a name prefix.
+ * The threads are daemon threads to not prevent the JVM from exiting.
+ */
+class NamedThreadFactory implements ThreadFactory {
+    private final String prefix;
+    private final AtomicInteger currentId = new AtomicInteger(0);
+
+    NamedThreadFactory(@Nonnull String prefix) {
+        this.prefix = Objects.requireNonNull(prefix);
+    }
+
+    @Override
+    public Thread newThread(@Nonnull Runnable r) {
+        var thread = new Thread(r, prefix + "-" + currentId.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+}
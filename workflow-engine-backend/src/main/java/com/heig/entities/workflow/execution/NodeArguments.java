@@ -15,6 +15,14 @@ import java.util.*;
     Code (in JS here) :
     let n = inputs.get("number");
     outputs.put("squared", n * n);
+    The collections are given as arrays, which also have the methods of a Java list
+    (size(), get(i), add(value)...), and the maps as maps. They can be modified,
+    the first modification makes a copy so the other nodes still receive the original
+    values. They can be put directly in the outputs.
+    In batch mode, the code is executed once per chunk of the collections, each chunk
+    receives its part of the collections as arrays and must put collections (or arrays) in the outputs.
+    The modules of the workflow written in the language of the node are available in "modules",
+    for example modules.get("parser") in JS. They are shared and must not be modified.
     """)
 public class NodeArguments {
     private final Map<String, Object> arguments = new HashMap<>();
@@ -29,6 +29,7 @@ public class NodeState {
             obj.addProperty("posX", value.getPosition().x);
             obj.addProperty("posY", value.getPosition().y);
             obj.addProperty("hasBeenModified", value.hasBeenModified());
+            value.getAverageDurationMs().ifPresent(duration -> obj.addProperty("averageDurationMs", duration));
             return obj;
         }
     }
@@ -58,6 +59,9 @@ public class NodeState {
             var nodeState = new NodeState(node);
             nodeState.setPosition(new Point2D.Double(posX, posY));
             nodeState.setHasBeenModified(hasBeenModified);
+            if (obj.has("averageDurationMs")) {
+                nodeState.averageDurationMs = obj.get("averageDurationMs").getAsDouble();
+            }
 
             return nodeState;
         }
@@ -78,6 +82,21 @@ public class NodeState {
      */
     private WorkflowErrors errors = null;
 
+    /**
+     * The resources used by the last execution of the node
+     */
+    private ResourceUsage resourceUsage = null;
+
+    /**
+     * The outputs of the last successful execution of the node, kept in memory for the incremental executions (not saved)
+     */
+    private NodeArguments lastOutputs = null;
+
+    /**
+     * The average duration of the executions of the node (exponential moving average), -1 if the node was never executed
+     */
+    private double averageDurationMs = -1;
+
     /**
      * The {@link Node} linked to this {@link NodeState}
      */
@@ -148,6 +167,45 @@ public class NodeState {
         return Optional.ofNullable(errors);
     }
 
+    public synchronized void setResourceUsage(@Nonnull ResourceUsage resourceUsage) {
+        this.resourceUsage = Objects.requireNonNull(resourceUsage);
+    }
+
+    public synchronized Optional<ResourceUsage> getResourceUsage() {
+        return Optional.ofNullable(resourceUsage);
+    }
+
+    /**
+     * Sets the outputs of the last execution of the node
+     * @param lastOutputs The outputs or null if the last execution failed
+     */
+    public synchronized void setLastOutputs(NodeArguments lastOutputs) {
+        this.lastOutputs = lastOutputs;
+    }
+
+    public synchronized Optional<NodeArguments> getLastOutputs() {
+        return Optional.ofNullable(lastOutputs);
+    }
+
+    /**
+     * Records the duration of a successful execution of the node. The recent executions count more in the average.
+     * @param durationMs The duration in ms
+     */
+    public synchronized void recordDuration(long durationMs) {
+        if (durationMs < 0) {
+            throw new IllegalArgumentException("The duration cannot be negative");
+        }
+        averageDurationMs = averageDurationMs < 0 ? durationMs : (averageDurationMs + durationMs) / 2;
+    }
+
+    /**
+     * Returns the average duration of the executions of the node
+     * @return The average duration in ms or empty if the node was never executed
+     */
+    public synchronized Optional<Double> getAverageDurationMs() {
+        return averageDurationMs < 0 ? Optional.empty() : Optional.of(averageDurationMs);
+    }
+
     public synchronized void setState(@Nonnull State state) {
         this.state = Objects.requireNonNull(state);
     }
@@ -0,0 +1,28 @@
+package com.heig.entities.workflow.execution;
+
+import com.heig.entities.workflow.errors.ResourceLimitExceeded;
+import jakarta.annotation.Nonnull;
+
+import java.util.Objects;
+
+/**
+ * Thrown by a node whose execution exceeded a resource limit, converted to a {@link ResourceLimitExceeded} error by the {@link WorkflowExecutor}
+ */
+public class ResourceLimitException extends RuntimeException {
+    private final ResourceLimitExceeded.Resource resource;
+    private final long limit;
+
+    public ResourceLimitException(@Nonnull ResourceLimitExceeded.Resource resource, long limit) {
+        super("The limit of %d for %s was exceeded".formatted(limit, Objects.requireNonNull(resource).name()));
+        this.resource = resource;
+        this.limit = limit;
+    }
+
+    public ResourceLimitExceeded.Resource getResource() {
+        return resource;
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+}
@@ -0,0 +1,240 @@
+package com.heig.entities.workflow.execution;
+
+import com.heig.entities.workflow.errors.ResourceLimitExceeded;
+import com.heig.entities.workflow.nodes.Node;
+import jakarta.annotation.Nonnull;
+import org.eclipse.microprofile.config.ConfigProvider;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the resources used by the executions of the nodes and cancels the executions exceeding a limit, so one node cannot use all the resources of the server.
+ * The limits are read from the quarkus config (0 by default, meaning no limit) :
+ * <ul>
+ *     <li>node_cpu_time_limit_ms : the CPU time used by the thread executing the node</li>
+ *     <li>node_allocated_bytes_limit : the memory allocated by the thread executing the node</li>
+ *     <li>node_resource_check_interval_ms : the interval between two checks of the limits (50 by default)</li>
+ * </ul>
+ * The parts of an execution running on other threads (see {@link Node#execute(NodeArguments, java.util.function.Consumer, java.util.concurrent.Executor)})
+ * are attributed to the execution of the node with {@link Execution#runPart(Runnable)}.
+ * The CPU time and the allocated memory are not available for the virtual threads, they are not limited in the "virtual" execution mode.
+ */
+class ResourceMonitor {
+    /**
+     * The monitor used by every {@link WorkflowExecutor}
+     */
+    static final ResourceMonitor INSTANCE = new ResourceMonitor(
+        ConfigProvider.getConfig().getOptionalValue("node_cpu_time_limit_ms", Long.class).orElse(0L),
+        ConfigProvider.getConfig().getOptionalValue("node_allocated_bytes_limit", Long.class).orElse(0L),
+        ConfigProvider.getConfig().getOptionalValue("node_resource_check_interval_ms", Long.class).orElse(50L)
+    );
+
+    /**
+     * A thread measured from a starting point
+     * @param thread The thread
+     * @param startCpuTime The CPU time of the thread at the start (-1 if not available)
+     * @param startAllocatedBytes The memory allocated by the thread at the start (-1 if not available)
+     */
+    private record MeasuredThread(Thread thread, long startCpuTime, long startAllocatedBytes) { }
+
+    /**
+     * An execution of a node
+     */
+    class Execution {
+        private final Node node;
+        private final Thread thread;
+        private final long startNanos;
+        private final long startCpuTime;
+        private final long startAllocatedBytes;
+
+        /**
+         * The threads currently executing a part of the execution (see {@link Execution#runPart(Runnable)})
+         */
+        private final Set<MeasuredThread> parts = ConcurrentHashMap.newKeySet();
+
+        /**
+         * The CPU time (in ns) used by the parts finished, -1 if not available
+         */
+        private final AtomicLong partsCpuTime = new AtomicLong(0);
+
+        /**
+         * The memory allocated by the parts finished, -1 if not available
+         */
+        private final AtomicLong partsAllocatedBytes = new AtomicLong(0);
+
+        /**
+         * The limit exceeded, null if no limit was exceeded
+         */
+        private volatile ResourceLimitException exceeded = null;
+
+        private Execution(@Nonnull Node node) {
+            this.node = Objects.requireNonNull(node);
+            thread = Thread.currentThread();
+            startNanos = System.nanoTime();
+            startCpuTime = getCpuTime(thread);
+            startAllocatedBytes = getAllocatedBytes(thread);
+        }
+
+        /**
+         * Runs a part of the execution on the current thread, its resources are added to the resources of the execution
+         * @param part The part
+         */
+        public void runPart(@Nonnull Runnable part) {
+            var measured = new MeasuredThread(Thread.currentThread(), getCpuTime(Thread.currentThread()), getAllocatedBytes(Thread.currentThread()));
+            parts.add(measured);
+            try {
+                part.run();
+            } finally {
+                parts.remove(measured);
+                add(partsCpuTime, measured.startCpuTime(), getCpuTime(measured.thread()));
+                add(partsAllocatedBytes, measured.startAllocatedBytes(), getAllocatedBytes(measured.thread()));
+            }
+        }
+
+        /**
+         * Returns the CPU time (in ns) used by the execution and its parts
+         * @return The CPU time or -1 if not available
+         */
+        private long getUsedCpuTime() {
+            var total = new AtomicLong(partsCpuTime.get());
+            add(total, startCpuTime, getCpuTime(thread));
+            for (var part : parts) {
+                add(total, part.startCpuTime(), getCpuTime(part.thread()));
+            }
+            return total.get();
+        }
+
+        /**
+         * Returns the memory allocated by the execution and its parts
+         * @return The allocated memory or -1 if not available
+         */
+        private long getUsedAllocatedBytes() {
+            var total = new AtomicLong(partsAllocatedBytes.get());
+            add(total, startAllocatedBytes, getAllocatedBytes(thread));
+            for (var part : parts) {
+                add(total, part.startAllocatedBytes(), getAllocatedBytes(part.thread()));
+            }
+            return total.get();
+        }
+
+        /**
+         * Stops monitoring the execution. Must be called by the thread executing the node.
+         * @return The resources used by the execution, with its parts
+         */
+        public ResourceUsage stop() {
+            executions.remove(this);
+            var cpuTime = getUsedCpuTime();
+            return new ResourceUsage(
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos),
+                cpuTime < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(cpuTime),
+                getUsedAllocatedBytes()
+            );
+        }
+
+        /**
+         * Returns the limit exceeded by the execution
+         * @return The limit exceeded or empty if no limit was exceeded
+         */
+        public Optional<ResourceLimitException> getExceeded() {
+            return Optional.ofNullable(exceeded);
+        }
+
+        /**
+         * Cancels the node if it exceeded a limit
+         */
+        private void check() {
+            if (exceeded != null) {
+                return;
+            }
+            if (cpuTimeLimitMs > 0) {
+                var cpuTime = getUsedCpuTime();
+                if (cpuTime >= 0 && TimeUnit.NANOSECONDS.toMillis(cpuTime) > cpuTimeLimitMs) {
+                    exceeded = new ResourceLimitException(ResourceLimitExceeded.Resource.CPU_TIME, cpuTimeLimitMs);
+                }
+            }
+            if (exceeded == null && allocatedBytesLimit > 0) {
+                var allocatedBytes = getUsedAllocatedBytes();
+                if (allocatedBytes >= 0 && allocatedBytes > allocatedBytesLimit) {
+                    exceeded = new ResourceLimitException(ResourceLimitExceeded.Resource.ALLOCATED_MEMORY, allocatedBytesLimit);
+                }
+            }
+            //Cancelling the thread of the node also cancels its parts
+            if (exceeded != null) {
+                node.cancel(thread);
+            }
+        }
+    }
+
+    private final long cpuTimeLimitMs;
+    private final long allocatedBytesLimit;
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+    /**
+     * The executions currently monitored
+     */
+    private final Set<Execution> executions = ConcurrentHashMap.newKeySet();
+
+    ResourceMonitor(long cpuTimeLimitMs, long allocatedBytesLimit, long checkIntervalMs) {
+        if (cpuTimeLimitMs < 0 || allocatedBytesLimit < 0 || checkIntervalMs <= 0) {
+            throw new IllegalArgumentException("Invalid resource limits");
+        }
+        this.cpuTimeLimitMs = cpuTimeLimitMs;
+        this.allocatedBytesLimit = allocatedBytesLimit;
+
+        //The limits are only checked if there is at least one
+        if (cpuTimeLimitMs > 0 || allocatedBytesLimit > 0) {
+            var checker = Executors.newSingleThreadScheduledExecutor(r -> {
+                var thread = new Thread(r, "resource-monitor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            checker.scheduleWithFixedDelay(() -> executions.forEach(Execution::check), checkIntervalMs, checkIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Starts monitoring the execution of a node. Must be called by the thread executing the node.
+     * @param node The node
+     * @return The execution, to stop with {@link Execution#stop()}
+     */
+    public Execution start(@Nonnull Node node) {
+        var execution = new Execution(node);
+        executions.add(execution);
+        return execution;
+    }
+
+    /**
+     * Adds the difference between two measures to a total, the total becomes -1 if a measure is not available
+     * @param total The total
+     * @param start The measure at the start
+     * @param end The measure at the end
+     */
+    private static void add(@Nonnull AtomicLong total, long start, long end) {
+        total.updateAndGet(current -> current < 0 || start < 0 || end < 0 ? -1 : current + end - start);
+    }
+
+    private long getCpuTime(@Nonnull Thread thread) {
+        try {
+            return threadMXBean.isThreadCpuTimeSupported() ? threadMXBean.getThreadCpuTime(thread.getId()) : -1;
+        } catch (UnsupportedOperationException e) {
+            return -1;
+        }
+    }
+
+    private long getAllocatedBytes(@Nonnull Thread thread) {
+        try {
+            if (threadMXBean instanceof com.sun.management.ThreadMXBean sunThreadMXBean && sunThreadMXBean.isThreadAllocatedMemorySupported()) {
+                return sunThreadMXBean.getThreadAllocatedBytes(thread.getId());
+            }
+        } catch (UnsupportedOperationException ignored) { }
+        return -1;
+    }
+}
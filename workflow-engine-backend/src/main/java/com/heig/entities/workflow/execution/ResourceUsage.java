@@ -0,0 +1,9 @@
+package com.heig.entities.workflow.execution;
+
+/**
+ * The resources used by the last execution of a node (see {@link ResourceMonitor})
+ * @param wallTimeMs The duration of the execution in ms
+ * @param cpuTimeMs The CPU time used by the thread executing the node in ms, -1 if it is not supported by the JVM
+ * @param allocatedBytes The memory allocated by the thread executing the node in bytes, -1 if it is not supported by the JVM
+ */
+public record ResourceUsage(long wallTimeMs, long cpuTimeMs, long allocatedBytes) { }
@@ -0,0 +1,81 @@
+package com.heig.entities.workflow.execution;
+
+import java.util.concurrent.*;
+
+/**
+ * {@link ExecutionPool} using two fixed size thread pools of platform threads
+ */
+public class ThreadPoolExecutionPool implements ExecutionPool {
+    /**
+     * The pool running the orchestration tasks
+     */
+    private final ThreadPoolExecutor orchestrationExecutor;
+
+    /**
+     * The pool running the nodes
+     */
+    private final ThreadPoolExecutor nodeExecutor;
+
+    /**
+     * The maximum number of nodes that a single workflow can execute at the same time
+     */
+    private final int maxConcurrentNodesPerWorkflow;
+
+    /**
+     * Creates the pools. Throws an {@link IllegalArgumentException} if one of the parameters is smaller or equals than 0
+     * @param orchestrationThreads The number of threads running the orchestration tasks
+     * @param nodeThreads The number of threads running the nodes
+     * @param maxConcurrentNodesPerWorkflow The maximum number of nodes that a single workflow can execute at the same time
+     */
+    public ThreadPoolExecutionPool(int orchestrationThreads, int nodeThreads, int maxConcurrentNodesPerWorkflow) {
+        if (orchestrationThreads <= 0 || nodeThreads <= 0 || maxConcurrentNodesPerWorkflow <= 0) {
+            throw new IllegalArgumentException("The number of threads must be greater than 0");
+        }
+        this.orchestrationExecutor = new ThreadPoolExecutor(
+            orchestrationThreads, orchestrationThreads, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(), new NamedThreadFactory("workflow-orchestration")
+        );
+        this.nodeExecutor = new ThreadPoolExecutor(
+            nodeThreads, nodeThreads, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(), new NamedThreadFactory("workflow-node")
+        );
+        this.maxConcurrentNodesPerWorkflow = maxConcurrentNodesPerWorkflow;
+    }
+
+    @Override
+    public Executor getOrchestrationExecutor() {
+        return orchestrationExecutor;
+    }
+
+    @Override
+    public Executor getNodeExecutor() {
+        return nodeExecutor;
+    }
+
+    @Override
+    public int getMaxConcurrentNodesPerWorkflow() {
+        return maxConcurrentNodesPerWorkflow;
+    }
+
+    @Override
+    public int getMaxConcurrentNodes() {
+        return nodeExecutor.getMaximumPoolSize();
+    }
+
+    @Override
+    public ExecutionPoolMetrics getMetrics() {
+        return new ExecutionPoolMetrics(
+            orchestrationExecutor.getActiveCount(),
+            orchestrationExecutor.getQueue().size(),
+            nodeExecutor.getActiveCount(),
+            nodeExecutor.getQueue().size(),
+            nodeExecutor.getCompletedTaskCount()
+        );
+    }
+
+    @Override
+    public void shutdown() {
+        orchestrationExecutor.shutdown();
+        nodeExecutor.shutdown();
+    }
+}
@@ -0,0 +1,149 @@
+package com.heig.entities.workflow.execution;
+
+import jakarta.annotation.Nonnull;
+
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link ExecutionPool} running the nodes on virtual threads (one virtual thread per node).
+ * A node blocked on I/O only holds a virtual thread, so thousands of nodes can be in flight on a few carrier threads.
+ * The orchestration tasks still run on a small fixed size pool of platform threads.
+ * Virtual threads are only available from Java 21, use {@link VirtualThreadExecutionPool#isSupported()} before creating the pool.
+ */
+public class VirtualThreadExecutionPool implements ExecutionPool {
+    /**
+     * The pool running the orchestration tasks
+     */
+    private final ThreadPoolExecutor orchestrationExecutor;
+
+    /**
+     * The executor starting a new virtual thread for each node
+     */
+    private final ExecutorService virtualThreadExecutor;
+
+    /**
+     * The maximum number of nodes that a single workflow can execute at the same time
+     */
+    private final int maxConcurrentNodesPerWorkflow;
+
+    /**
+     * The number of nodes currently running
+     */
+    private final AtomicInteger activeNodes = new AtomicInteger(0);
+
+    /**
+     * The number of nodes completed since the creation of the pool
+     */
+    private final AtomicLong completedNodes = new AtomicLong(0);
+
+    /**
+     * The executor counting the active and completed nodes before delegating to {@link VirtualThreadExecutionPool#virtualThreadExecutor}
+     */
+    private final Executor nodeExecutor = this::executeNode;
+
+    /**
+     * Creates the pool. Throws an {@link IllegalArgumentException} if one of the parameters is smaller or equals than 0 and
+     * an {@link UnsupportedOperationException} if the virtual threads are not available in the current JVM
+     * @param orchestrationThreads The number of threads running the orchestration tasks
+     * @param maxConcurrentNodesPerWorkflow The maximum number of nodes that a single workflow can execute at the same time
+     */
+    public VirtualThreadExecutionPool(int orchestrationThreads, int maxConcurrentNodesPerWorkflow) {
+        if (orchestrationThreads <= 0 || maxConcurrentNodesPerWorkflow <= 0) {
+            throw new IllegalArgumentException("The number of threads must be greater than 0");
+        }
+        this.virtualThreadExecutor = createVirtualThreadExecutor();
+        this.orchestrationExecutor = new ThreadPoolExecutor(
+            orchestrationThreads, orchestrationThreads, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(), new NamedThreadFactory("workflow-orchestration")
+        );
+        this.maxConcurrentNodesPerWorkflow = maxConcurrentNodesPerWorkflow;
+    }
+
+    /**
+     * Returns true if the virtual threads are available in the current JVM
+     * @return True if the virtual threads are available in the current JVM, false otherwise
+     */
+    public static boolean isSupported() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Creates the executor with {@code Executors.newVirtualThreadPerTaskExecutor()}.
+     * The method is called by reflection because the project is compiled for Java 17.
+     * @return The executor starting a new virtual thread for each task
+     */
+    private static ExecutorService createVirtualThreadExecutor() {
+        try {
+            var method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new UnsupportedOperationException("Virtual threads are not supported by this JVM (Java 21 or newer is needed)");
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Starts the task on a new virtual thread
+     * @param task The task
+     */
+    private void executeNode(@Nonnull Runnable task) {
+        Objects.requireNonNull(task);
+        virtualThreadExecutor.execute(() -> {
+            activeNodes.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                activeNodes.decrementAndGet();
+                completedNodes.incrementAndGet();
+            }
+        });
+    }
+
+    @Override
+    public Executor getOrchestrationExecutor() {
+        return orchestrationExecutor;
+    }
+
+    @Override
+    public Executor getNodeExecutor() {
+        return nodeExecutor;
+    }
+
+    @Override
+    public int getMaxConcurrentNodesPerWorkflow() {
+        return maxConcurrentNodesPerWorkflow;
+    }
+
+    @Override
+    public int getMaxConcurrentNodes() {
+        //A virtual thread is started for every node
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public ExecutionPoolMetrics getMetrics() {
+        //Virtual threads are never queued, every node submitted is started right away
+        return new ExecutionPoolMetrics(
+            orchestrationExecutor.getActiveCount(),
+            orchestrationExecutor.getQueue().size(),
+            activeNodes.get(),
+            0,
+            completedNodes.get()
+        );
+    }
+
+    @Override
+    public void shutdown() {
+        orchestrationExecutor.shutdown();
+        virtualThreadExecutor.shutdown();
+    }
+}
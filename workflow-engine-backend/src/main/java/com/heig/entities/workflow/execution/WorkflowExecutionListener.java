@@ -18,6 +18,12 @@ public interface WorkflowExecutionListener {
      */
     void nodeStateChanged(@Nonnull NodeState state);
 
+    /**
+     * Called when the {@link State} of a {@link WorkflowRun} changed (submitted, started or done)
+     * @param run The {@link WorkflowRun}
+     */
+    void runStateChanged(@Nonnull WorkflowRun run);
+
     /**
      * Called when a new line should be appended to the logs
      * @param line The line to append
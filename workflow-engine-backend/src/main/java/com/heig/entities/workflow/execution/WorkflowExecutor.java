@@ -5,6 +5,7 @@ import com.heig.entities.workflow.NodeModifiedListener;
 import com.heig.entities.workflow.data.Data;
 import com.heig.entities.workflow.errors.*;
 import com.heig.entities.workflow.nodes.Node;
+import com.heig.entities.workflow.nodes.PrimitiveNode;
 import com.heig.entities.workflow.Workflow;
 import com.heig.entities.workflow.types.WorkflowTypes;
 import com.heig.helpers.CustomJsonDeserializer;
@@ -13,16 +14,17 @@ import com.heig.helpers.ResultOrWorkflowError;
 import com.heig.helpers.Utils;
 import io.vertx.core.impl.ConcurrentHashSet;
 import jakarta.annotation.Nonnull;
+import org.eclipse.microprofile.config.ConfigProvider;
 
 import java.awt.*;
 import java.util.*;
 import java.util.List;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.function.Supplier;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * Handles the execution of the workflow
+ * Handles the execution of the workflow and of its runs (see {@link WorkflowRun})
  */
 public class WorkflowExecutor {
     /**
@@ -114,6 +116,76 @@ public class WorkflowExecutor {
      */
     private final ConcurrentHashSet<Runnable> waitingForStop = new ConcurrentHashSet<>();
 
+    /**
+     * The main execution of the workflow, using the {@link NodeState} of this {@link WorkflowExecutor} and notifying the {@link WorkflowExecutionListener}
+     */
+    private final ExecutionScope mainScope = new ExecutionScope() {
+        @Override
+        public NodeState getStateFor(@Nonnull Node node) {
+            return WorkflowExecutor.this.getStateFor(node);
+        }
+
+        @Override
+        public void nodeStateChanged(@Nonnull NodeState state) {
+            listener.nodeStateChanged(state);
+        }
+
+        @Override
+        public void newLogLine(@Nonnull String line) {
+            listener.newLogLine(line);
+        }
+
+        @Override
+        public boolean isStopRequested() {
+            return stopRequested.get();
+        }
+
+        @Override
+        public void addStopListener(@Nonnull Runnable stopListener) {
+            waitingForStop.add(stopListener);
+        }
+
+        @Override
+        public void removeStopListener(@Nonnull Runnable stopListener) {
+            waitingForStop.remove(stopListener);
+        }
+
+        @Override
+        public Optional<NodeArguments> getOverriddenOutputs(@Nonnull Node node) {
+            return Optional.empty();
+        }
+
+        @Override
+        public boolean writesCache() {
+            return true;
+        }
+    };
+
+    /**
+     * Object used to synchronize the runs (see {@link WorkflowRun})
+     */
+    private final Object runsLock = new Object();
+
+    /**
+     * The runs submitted and not removed, by id
+     */
+    private final ConcurrentMap<UUID, WorkflowRun> runs = new ConcurrentHashMap<>();
+
+    /**
+     * The runs waiting to be started
+     */
+    private final Queue<WorkflowRun> pendingRuns = new LinkedList<>();
+
+    /**
+     * The number of runs currently executing
+     */
+    private int runningRuns = 0;
+
+    /**
+     * The maximum number of runs executing at the same time, from the quarkus config "workflow_max_concurrent_runs" (the number of processors by default)
+     */
+    private int maxConcurrentRuns = ConfigProvider.getConfig().getOptionalValue("workflow_max_concurrent_runs", Integer.class).orElse(Runtime.getRuntime().availableProcessors());
+
     WorkflowExecutor(@Nonnull Workflow workflow, @Nonnull WorkflowExecutionListener listener) {
         this(workflow, listener, null, new LinkedList<>());
     }
@@ -153,213 +225,436 @@ public class WorkflowExecutor {
     }
 
     /**
-     * Changes the state for a {@link Node} and notifies the {@link WorkflowExecutionListener}
+     * Changes the state for a {@link Node} and notifies the {@link ExecutionScope}
+     * @param scope The execution of the node
      * @param ns The {@link NodeState} to change
      * @param state The new {@link State}
      */
-    private void changeNodeState(@Nonnull NodeState ns, @Nonnull State state) {
+    private void changeNodeState(@Nonnull ExecutionScope scope, @Nonnull NodeState ns, @Nonnull State state) {
         Objects.requireNonNull(ns);
         Objects.requireNonNull(state);
         ns.setState(state);
-        listener.nodeStateChanged(ns);
+        scope.nodeStateChanged(ns);
+    }
+
+    /**
+     * The queue of the nodes waiting to be executed for this workflow
+     */
+    private final WorkflowTaskQueue taskQueue = new WorkflowTaskQueue();
+
+    /**
+     * The plan of the last execution, reused while the graph of the workflow does not change
+     */
+    private volatile ExecutionPlan plan = null;
+
+    /**
+     * The plan used by the last incremental execution, null if the next execution must execute every node
+     */
+    private volatile ExecutionPlan lastRunPlan = null;
+
+    /**
+     * True if only the dirty nodes are executed (see {@link WorkflowExecutor#setIncremental(boolean)}), from the quarkus config "workflow_incremental_execution" (true by default)
+     */
+    private volatile boolean incremental = ConfigProvider.getConfig().getOptionalValue("workflow_incremental_execution", Boolean.class).orElse(true);
+
+    /**
+     * Returns the plan of the workflow, compiling it again if the graph changed since the last execution
+     * @return The plan
+     */
+    ExecutionPlan getExecutionPlan() {
+        var current = plan;
+        if (current == null || !current.isUpToDate(workflow)) {
+            current = ExecutionPlan.compile(workflow);
+            plan = current;
+        }
+        return current;
+    }
+
+    /**
+     * Returns the nodes to execute : the dirty nodes and every node depending on them.
+     * A node is dirty if it was modified, if it is not deterministic or if its last execution did not succeed.
+     * Every node is dirty if the graph changed or if the last execution was not incremental.
+     * @param plan The plan
+     * @return For each node of the plan, true if it must be executed
+     */
+    private boolean[] findDirtyNodes(@Nonnull ExecutionPlan plan) {
+        var dirty = new boolean[plan.size()];
+        var isFullExecution = !incremental || plan != lastRunPlan;
+        for (var i = 0; i < plan.size(); i++) {
+            var node = plan.getNode(i);
+            var ns = getStateFor(node);
+            dirty[i] = isFullExecution || ns.hasBeenModified() || !node.isDeterministic() || ns.getState() != State.FINISHED || ns.getLastOutputs().isEmpty();
+        }
+        plan.propagateDirty(dirty);
+        return dirty;
     }
 
     /**
-     * The thread pool to execute the tasks
+     * Returns the priority of each node : the weight of its critical path computed from the average durations of the last executions,
+     * so the nodes gating the end of the workflow are started first when the nodes wait in the {@link WorkflowTaskQueue}.
+     * A node never executed is expected to last the average duration of the other nodes.
+     * @param plan The plan
+     * @return The priority of each node of the plan
      */
-    private static final ExecutorService executor = Executors.newCachedThreadPool();
+    private long[] getPriorities(@Nonnull ExecutionPlan plan) {
+        var averages = new double[plan.size()];
+        var known = 0;
+        var total = 0.0;
+        for (var i = 0; i < plan.size(); i++) {
+            averages[i] = getStateFor(plan.getNode(i)).getAverageDurationMs().orElse(-1.0);
+            if (averages[i] >= 0) {
+                known++;
+                total += averages[i];
+            }
+        }
+        var defaultDuration = known == 0 ? 1.0 : total / known;
+        var durations = new long[plan.size()];
+        for (var i = 0; i < plan.size(); i++) {
+            //At least 1 so the length of the path counts when the nodes are fast
+            durations[i] = Math.max(1, Math.round(averages[i] >= 0 ? averages[i] : defaultDuration));
+        }
+        return plan.getCriticalPathWeights(durations);
+    }
 
     /**
      * Executes the node
-     * @param node The {@link Node} to execute
+     * @param scope The execution of the workflow
+     * @param run The execution of the plan
+     * @param index The index of the {@link Node} to execute in the plan
      * @return A future that completes when the {@link Node} and all the nodes depending on this node are executed
      */
-    private CompletableFuture<Void> executeNode(@Nonnull Node node) {
-        Objects.requireNonNull(node);
-        return CompletableFuture.supplyAsync((Supplier<ResultOrWorkflowError<NodeArguments>>) () -> {
-            var ns = getStateFor(node);
-            var error = false;
-            var we = new WorkflowErrors();
-            var args = new NodeArguments();
-            //To run a node, we need all inputs (except the ones marked as optional) values to be available with no error
-            for (var input : node.getInputs().values()) {
-                var inputValueOpt = ns.getInputValue(input.getId());
-                //The only way for res to be null is when it is an optional input
-                if (inputValueOpt.isEmpty()) {
-                    if (!input.isOptional()) {
-                        throw new RuntimeException("Should never happen ! The input should have been optional to be null !");
-                    }
-                    continue;
+    private CompletableFuture<Void> executeNode(@Nonnull ExecutionScope scope, @Nonnull ExecutionPlan.Run run, int index) {
+        Objects.requireNonNull(scope);
+        Objects.requireNonNull(run);
+        var node = run.getPlan().getNode(index);
+        var orchestration = ExecutionPools.get().getOrchestrationExecutor();
+        return CompletableFuture.completedFuture(node)
+            .thenComposeAsync(n -> runNode(scope, n, run.getPriority(index)), orchestration)
+            .thenApplyAsync(o -> {
+                var ns = scope.getStateFor(node);
+                synchronized (ns) {
+                    o.execute(value -> {
+                        ns.setLastOutputs(value);
+                        changeNodeState(scope, ns, State.FINISHED);
+                    }, we -> {
+                        ns.setLastOutputs(null);
+                        ns.setErrors(we);
+                        changeNodeState(scope, ns, State.FAILED);
+                    });
                 }
-                var inputValue = inputValueOpt.get();
+                return o.getResult();
+            }, orchestration)
+            .thenComposeAsync(o -> {
+                var toWait = new LinkedList<CompletableFuture<Void>>();
+
+                for (var edge : run.getPlan().getEdges(index)) {
+                    var res = o.map(
+                        value -> {
+                            var opt = value.getArgument(edge.outputName());
+                            if (opt.isPresent()) {
+                                return opt.get();
+                            }
+                            throw new RuntimeException("Should never happen! Already checked before");
+                        }
+                    ).orElse(null);
 
-                if (inputValue.isEmpty()) {
-                    error = true;
-                    we.addError(new ErroredInputConnector(input));
-                } else {
-                    args.putArgument(input.getName(), inputValue.get());
-                }
-            }
-            if (error) {
-                return ResultOrWorkflowError.error(we);
-            }
+                    //Here we use fixObject again to obtain new instances for the map and the collection for example
+                    //If this wasn't done, all the nodes connected to the outputs would have the same instance and could lead to concurrent modification
+                    if (res != null) {
+                        res = WorkflowTypes.fixObject(res);
+                    }
+                    scope.getStateFor(run.getPlan().getNode(edge.target())).setInputValue(edge.inputId(), res);
 
-            //Case if the node hasn't been modified and neither have the previous nodes (the node needs to be deterministic too)
-            if (!ns.hasBeenModified() && node.isDeterministic()) {
-                var optCache = data.getCache().get(node, args);
-                if (optCache.isPresent()) {
-                    return ResultOrWorkflowError.result(optCache.get());
+                    //The node is started by the arrival of its last input
+                    if (run.inputReceived(edge.target())) {
+                        toWait.add(executeNode(scope, run, edge.target()));
+                    }
                 }
-            }
 
-            synchronized (ns) {
-                changeNodeState(ns, State.RUNNING);
-            }
+                return CompletableFuture.allOf(toWait.toArray(CompletableFuture[]::new));
+            }, orchestration);
+    }
 
-            if (stopRequested.get()) {
-                we.addError(new FailedExecution(node, "A stop has been requested"));
-                return ResultOrWorkflowError.error(we);
+    /**
+     * Gathers the inputs of the node and executes it (or retrieves its outputs from the cache)
+     * @param scope The execution of the workflow
+     * @param node The {@link Node} to run
+     * @param priority The priority of the node in the {@link WorkflowTaskQueue}
+     * @return A future that completes with the outputs of the node or the errors of the execution
+     */
+    private CompletableFuture<ResultOrWorkflowError<NodeArguments>> runNode(@Nonnull ExecutionScope scope, @Nonnull Node node, long priority) {
+        var ns = scope.getStateFor(node);
+        var error = false;
+        var we = new WorkflowErrors();
+        var args = new NodeArguments();
+        //To run a node, we need all inputs (except the ones marked as optional) values to be available with no error
+        for (var input : node.getInputs().values()) {
+            var inputValueOpt = ns.getInputValue(input.getId());
+            //The only way for res to be null is when it is an optional input
+            if (inputValueOpt.isEmpty()) {
+                if (!input.isOptional()) {
+                    throw new RuntimeException("Should never happen ! The input should have been optional to be null !");
+                }
+                continue;
             }
+            var inputValue = inputValueOpt.get();
 
-            var fut = executor
-                .<ResultOrWorkflowError<NodeArguments>>submit(() -> {
-                    try {
-                        return ResultOrWorkflowError.result(node.execute(args, listener::newLogLine));
-                    } catch (Exception e) {
-                        we.addError(new FailedExecution(node, e.getMessage() == null ? "Unknown error" : e.getMessage()));
-                        return ResultOrWorkflowError.error(we);
-                    }
-                });
-            Runnable listener = node::cancel;
-            waitingForStop.add(listener);
-            if (stopRequested.get()) {
-                node.cancel();
+            if (inputValue.isEmpty()) {
+                error = true;
+                we.addError(new ErroredInputConnector(input));
+            } else {
+                args.putArgument(input.getName(), inputValue.get());
             }
+        }
+        if (error) {
+            return CompletableFuture.completedFuture(ResultOrWorkflowError.error(we));
+        }
 
-            ResultOrWorkflowError<NodeArguments> resultOpt;
-            try {
-                resultOpt = fut.get(node.getTimeout(), TimeUnit.MILLISECONDS);
-            } catch (Exception e) {
-                waitingForStop.remove(listener);
-                var otherErrors = new WorkflowErrors();
-                if (e instanceof TimeoutException) {
-                    otherErrors.addError(new ExecutionTimeout(node));
-                } else {
-                    otherErrors.addError(new FailedExecution(node, e.getMessage() == null ? "Unknown error" : e.getMessage()));
-                }
-                node.cancel();
-                return ResultOrWorkflowError.error(otherErrors);
-            }
+        //The outputs of an overridden node are given by the run, the node is not executed
+        var overridden = scope.getOverriddenOutputs(node);
+        if (overridden.isPresent()) {
+            return CompletableFuture.completedFuture(ResultOrWorkflowError.result(overridden.get()));
+        }
 
-            waitingForStop.remove(listener);
-            if (resultOpt.getErrorMessage().isPresent()) {
-                return ResultOrWorkflowError.error(resultOpt.getErrorMessage().get());
+        //Case if the node hasn't been modified and neither have the previous nodes (the node needs to be deterministic too)
+        if (!ns.hasBeenModified() && node.isDeterministic()) {
+            //The runs not writing the cache only read it, so they do not change the entries kept for the main execution
+            var optCache = scope.writesCache() ? data.getCache().get(node, args) : data.getCache().peek(node, args);
+            if (optCache.isPresent()) {
+                return CompletableFuture.completedFuture(ResultOrWorkflowError.result(optCache.get()));
             }
-            var result = resultOpt.getResult().get();
-
-            //Checking that every output needed (non-optional) is present and of the correct type
-            var isErrored = false;
-            for (var output : node.getOutputs().values()) {
-                var argument = result.getArgument(output.getName());
-                if (argument.isEmpty()) {
-                    if (output.isOptional()) {
-                        //If there are no value for the output and that the output is optional, we put the default value for the output type
-                        result.putArgument(output.getName(), output.getType().defaultValue());
-                        continue;
-                    }
+        }
 
-                    we.addError(new MissingOutputValue(output));
-                    isErrored = true;
-                    continue;
-                }
-                var argumentValue = argument.get();
+        synchronized (ns) {
+            changeNodeState(scope, ns, State.RUNNING);
+        }
+
+        if (scope.isStopRequested()) {
+            we.addError(new FailedExecution(node, "A stop has been requested"));
+            return CompletableFuture.completedFuture(ResultOrWorkflowError.error(we));
+        }
 
-                var fixedValue = WorkflowTypes.fixObject(argumentValue);
-                result.putArgument(output.getName(), fixedValue);
+        return executeNodeBody(scope, node, args, we, priority)
+            .thenApplyAsync(resultOpt -> checkOutputs(scope, node, args, resultOpt, we), ExecutionPools.get().getOrchestrationExecutor());
+    }
 
-                var argumentType = WorkflowTypes.fromObject(fixedValue);
-                //We check if we can convert the execution result to the type of the output connector
-                if (!output.getType().canBeConvertedFrom(argumentType)) {
-                    we.addError(new WrongType(argumentType, output));
-                    isErrored = true;
+    /**
+     * Gives the execution of the node to the {@link WorkflowTaskQueue}.
+     * The timeout of the node starts when the node starts executing (not when it is queued). The thread waiting for the result
+     * is not blocked, the timeout is handled by {@link CompletableFuture#orTimeout(long, TimeUnit)}.
+     * When the node times out, the thread executing it is interrupted so that a node blocked on I/O releases its thread
+     * (or its carrier thread when running on a {@link VirtualThreadExecutionPool}). Only the execution of the node on that thread is cancelled,
+     * the executions of the same node by the other runs continue.
+     * @param scope The execution of the workflow
+     * @param node The {@link Node} to execute
+     * @param args The inputs of the node
+     * @param we The errors to add the execution errors to
+     * @param priority The priority of the node in the {@link WorkflowTaskQueue}
+     * @return A future that completes with the outputs of the node or the errors of the execution
+     */
+    private CompletableFuture<ResultOrWorkflowError<NodeArguments>> executeNodeBody(@Nonnull ExecutionScope scope, @Nonnull Node node, @Nonnull NodeArguments args, @Nonnull WorkflowErrors we, long priority) {
+        var result = new CompletableFuture<ResultOrWorkflowError<NodeArguments>>();
+        //The thread currently executing the node (null if the node is not running)
+        var runner = new AtomicReference<Thread>(null);
+        Runnable stopListener = () -> {
+            synchronized (runner) {
+                var thread = runner.get();
+                if (thread != null) {
+                    node.cancel(thread);
                 }
             }
-            if (isErrored) {
-                return ResultOrWorkflowError.error(we);
-            } else {
-                if (node.isDeterministic()) {
-                    try {
-                        data.getCache().set(node, args, result);
-                    } catch (Exception e) {
-                        we.addError(new FailedExecution(node, e.getMessage()));
-                        return ResultOrWorkflowError.error(we);
+        };
+        try {
+            taskQueue.execute(() -> {
+                //If a stop has been requested while the node was waiting in the queue, we don't start it
+                if (scope.isStopRequested()) {
+                    we.addError(new FailedExecution(node, "A stop has been requested"));
+                    result.complete(ResultOrWorkflowError.error(we));
+                    return;
+                }
+                runner.set(Thread.currentThread());
+                result.orTimeout(node.getTimeout(), TimeUnit.MILLISECONDS);
+                scope.addStopListener(stopListener);
+                //The stop may have been requested between the first check and the registration of the listener
+                if (scope.isStopRequested()) {
+                    node.cancel(runner.get());
+                }
+                var execution = ResourceMonitor.INSTANCE.start(node);
+                //The parallel parts of the node are queued with the nodes of the workflow and are attributed to the node
+                //A part refused by the node executor is executed by the thread of the node
+                Executor partsExecutor = part -> taskQueue.execute(() -> execution.runPart(part), priority, e -> { });
+                try {
+                    var outputs = node.execute(args, scope::newLogLine, partsExecutor);
+                    var usage = execution.stop();
+                    scope.getStateFor(node).setResourceUsage(usage);
+                    //The durations are used to compute the priorities of the next executions (of the workflow and of the runs)
+                    getStateFor(node).recordDuration(usage.wallTimeMs());
+                    result.complete(ResultOrWorkflowError.result(outputs));
+                } catch (Exception e) {
+                    scope.getStateFor(node).setResourceUsage(execution.stop());
+                    //A node cancelled by the monitor fails because of the cancellation, the limit is reported instead
+                    var limitExceeded = e instanceof ResourceLimitException rle ? Optional.of(rle) : execution.getExceeded();
+                    if (limitExceeded.isPresent()) {
+                        we.addError(new ResourceLimitExceeded(node, limitExceeded.get().getResource(), limitExceeded.get().getLimit()));
+                    } else {
+                        we.addError(new FailedExecution(node, e.getMessage() == null ? "Unknown error" : e.getMessage()));
+                    }
+                    result.complete(ResultOrWorkflowError.error(we));
+                } catch (Throwable t) {
+                    execution.stop();
+                    result.completeExceptionally(t);
+                } finally {
+                    synchronized (runner) {
+                        runner.set(null);
+                        //Clears the interrupted flag, the thread can be reused by the pool for another node
+                        Thread.interrupted();
                     }
-                    ns.setHasBeenModified(false);
                 }
+            }, priority, result::completeExceptionally);
+        } catch (Exception e) {
+            result.completeExceptionally(e);
+        }
 
-                return ResultOrWorkflowError.result(result);
+        return result.handle((resultOpt, e) -> {
+            scope.removeStopListener(stopListener);
+            if (e == null) {
+                return resultOpt;
             }
-        }).thenApplyAsync(o -> {
-            var ns = getStateFor(node);
-            synchronized (ns) {
-                o.execute(value -> {
-                    changeNodeState(ns, State.FINISHED);
-                }, we -> {
-                    ns.setErrors(we);
-                    changeNodeState(ns, State.FAILED);
-                });
+            var cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            var otherErrors = new WorkflowErrors();
+            if (cause instanceof TimeoutException) {
+                otherErrors.addError(new ExecutionTimeout(node));
+            } else {
+                otherErrors.addError(new FailedExecution(node, cause.getMessage() == null ? "Unknown error" : cause.getMessage()));
             }
-            return o.getResult();
-        }).thenComposeAsync(o -> {
-            var toWait = new LinkedList<CompletableFuture<Void>>();
-
-            for (var output : node.getOutputs().values()) {
-                var res = o.map(
-                    value -> {
-                        var opt = value.getArgument(output.getName());
-                        if (opt.isPresent()) {
-                            return opt.get();
-                        }
-                        throw new RuntimeException("Should never happen! Already checked before");
-                    }
-                ).orElse(null);
-
-                for (var input : output.getConnectedTo()) {
-                    var other = input.getParent();
-                    var stateOther = getStateFor(other);
-                    synchronized (stateOther) {
-                        //Here we use fixObject again to obtain new instances for the map and the collection for example
-                        //If this wasn't done, all the nodes connected to the outputs would have the same instance and could lead to concurrent modification
-                        if (res != null) {
-                            res = WorkflowTypes.fixObject(res);
-                        }
-                        stateOther.setInputValue(input.getId(), res);
+            synchronized (runner) {
+                var thread = runner.get();
+                if (thread != null) {
+                    node.cancel(thread);
+                    thread.interrupt();
+                }
+            }
+            return ResultOrWorkflowError.error(otherErrors);
+        });
+    }
 
-                        if (stateOther.isReady()) {
-                            toWait.add(executeNode(other));
-                        }
-                    }
+    /**
+     * Checks that every output needed (non-optional) is present and of the correct type.
+     * Stores the outputs in the cache if the node is deterministic and if the execution writes to the cache.
+     * @param scope The execution of the workflow
+     * @param node The {@link Node} executed
+     * @param args The inputs of the node
+     * @param resultOpt The result of the execution
+     * @param we The errors to add the output errors to
+     * @return The outputs of the node or the errors
+     */
+    private ResultOrWorkflowError<NodeArguments> checkOutputs(@Nonnull ExecutionScope scope, @Nonnull Node node, @Nonnull NodeArguments args, @Nonnull ResultOrWorkflowError<NodeArguments> resultOpt, @Nonnull WorkflowErrors we) {
+        if (resultOpt.getErrorMessage().isPresent()) {
+            return ResultOrWorkflowError.error(resultOpt.getErrorMessage().get());
+        }
+        var result = resultOpt.getResult().get();
+
+        //Checking that every output needed (non-optional) is present and of the correct type
+        var isErrored = false;
+        for (var output : node.getOutputs().values()) {
+            var argument = result.getArgument(output.getName());
+            if (argument.isEmpty()) {
+                if (output.isOptional()) {
+                    //If there are no value for the output and that the output is optional, we put the default value for the output type
+                    result.putArgument(output.getName(), output.getType().defaultValue());
+                    continue;
                 }
+
+                we.addError(new MissingOutputValue(output));
+                isErrored = true;
+                continue;
             }
+            var argumentValue = argument.get();
 
-            //Clean the resources when the workflow execution is finished
-            node.cancel();
-            return CompletableFuture.allOf(toWait.toArray(CompletableFuture[]::new));
-        });
+            var fixedValue = WorkflowTypes.fixObject(argumentValue);
+            result.putArgument(output.getName(), fixedValue);
+
+            var argumentType = WorkflowTypes.fromObject(fixedValue);
+            //We check if we can convert the execution result to the type of the output connector
+            if (!output.getType().canBeConvertedFrom(argumentType)) {
+                we.addError(new WrongType(argumentType, output));
+                isErrored = true;
+            }
+        }
+        if (isErrored) {
+            return ResultOrWorkflowError.error(we);
+        }
+
+        if (node.isDeterministic() && scope.writesCache()) {
+            try {
+                data.getCache().set(node, args, result);
+            } catch (Exception e) {
+                we.addError(new FailedExecution(node, e.getMessage()));
+                return ResultOrWorkflowError.error(we);
+            }
+            getStateFor(node).setHasBeenModified(false);
+        }
+
+        return ResultOrWorkflowError.result(result);
     }
 
     /**
      * Checks if the current workflow is valid. Notifies that the state of the workflow has changed to the {@link WorkflowExecutionListener}.
      */
     public void checkForErrors() {
+        checkForErrors(false);
+    }
+
+    /**
+     * Checks if the current workflow is valid. Notifies that the state of the workflow has changed to the {@link WorkflowExecutionListener}.
+     * @param waitForChecks True to wait for the checks of the nodes running in the background (see {@link Workflow#validate()})
+     */
+    private void checkForErrors(boolean waitForChecks) {
         workflowValidityErrors.clear();
 
-        var errors = workflow.isValid();
+        var errors = waitForChecks ? workflow.validate() : workflow.isValid();
         errors.ifPresent(workflowValidityErrors::merge);
         //Notify because the workflowValidityErrors have changed
         listener.workflowStateChanged(this);
     }
 
+    /**
+     * Starts the execution of the dirty nodes of the plan
+     * @param scope The execution of the workflow
+     * @param plan The plan
+     * @param dirty For each node of the plan, true if it must be executed. The other nodes give the outputs of their last execution in the scope.
+     * @return A future that completes when all the nodes executed are finished
+     */
+    private CompletableFuture<Void> startExecution(@Nonnull ExecutionScope scope, @Nonnull ExecutionPlan plan, @Nonnull boolean[] dirty) {
+        //The starting nodes of our workflow are the nodes that have no input connected (we already know that all inputs
+        //that are not optional are connected to an output thanks to workflow.isValid())
+        var run = plan.newRun(getPriorities(plan));
+        var toWait = new LinkedList<CompletableFuture<Void>>();
+        //The outputs of the clean nodes are given directly to the dirty nodes depending on them
+        for (var i = 0; i < plan.size(); i++) {
+            if (dirty[i]) {
+                continue;
+            }
+            var outputs = scope.getStateFor(plan.getNode(i)).getLastOutputs().orElseThrow();
+            for (var edge : plan.getEdges(i)) {
+                if (!dirty[edge.target()]) {
+                    continue;
+                }
+                var res = outputs.getArgument(edge.outputName()).map(WorkflowTypes::fixObject).orElse(null);
+                scope.getStateFor(plan.getNode(edge.target())).setInputValue(edge.inputId(), res);
+                if (run.inputReceived(edge.target())) {
+                    toWait.add(executeNode(scope, run, edge.target()));
+                }
+            }
+        }
+        for (var root : plan.getRoots()) {
+            if (dirty[root]) {
+                toWait.add(executeNode(scope, run, root));
+            }
+        }
+        return CompletableFuture.allOf(toWait.toArray(CompletableFuture[]::new));
+    }
+
     /**
      * Executes the workflow
      * @return True if the execution has been correctly started, false otherwise
@@ -375,7 +670,7 @@ public class WorkflowExecutor {
 
         stopRequested.set(false);
 
-        checkForErrors();
+        checkForErrors(true);
         //If a validity error is present, we stop here
         if (!workflowValidityErrors.getErrors().isEmpty()) {
             state = State.IDLE;
@@ -383,30 +678,30 @@ public class WorkflowExecutor {
             return false;
         }
 
-        //Resets the state of the entire workflow
+        //Resets the state of the nodes to execute, the other nodes keep their outputs from the last execution
+        var plan = getExecutionPlan();
+        var dirty = findDirtyNodes(plan);
+        lastRunPlan = incremental ? plan : null;
         listener.clearLog();
         workflowExecutionErrors.clear();
-        workflow.getNodes().values().forEach(n -> {
-            var ns = getStateFor(n);
+        for (var i = 0; i < plan.size(); i++) {
+            if (!dirty[i]) {
+                continue;
+            }
+            var ns = getStateFor(plan.getNode(i));
             synchronized (ns) {
                 ns.getErrors().ifPresent(WorkflowErrors::clear);
                 ns.clearInputs();
-                changeNodeState(ns, State.IDLE);
+                ns.setLastOutputs(null);
+                changeNodeState(mainScope, ns, State.IDLE);
             }
-        });
+        }
 
         //Before starting the workflow, we save the current workflow.
         //Like this, if the cache changed, we will have the correct workflow when restarting the backend
         data.getSave().save();
 
-        //The starting nodes of our workflow are the nodes that have no input connected (we already know that all inputs
-        //that are not optional are connected to an output thanks to workflow.isValid())
-        var notConnectedNodes = workflow.getNodes().values().stream().filter(n -> n.getInputs().values().stream().noneMatch(i -> i.getConnectedTo().isPresent())).toList();
-        var toWait = new LinkedList<CompletableFuture<Void>>();
-        for (var node : notConnectedNodes) {
-            toWait.add(executeNode(node));
-        }
-        var toWaitFor = CompletableFuture.allOf(toWait.toArray(CompletableFuture[]::new));
+        var toWaitFor = startExecution(mainScope, plan, dirty);
         toWaitFor.thenAcceptAsync(v -> {
             var failed = states.values().stream().anyMatch(ns -> ns.getState() == State.FAILED);
 
@@ -426,7 +721,7 @@ public class WorkflowExecutor {
                 }
                 listener.workflowStateChanged(this);
             }
-        });
+        }, ExecutionPools.get().getOrchestrationExecutor());
         return true;
     }
 
@@ -445,6 +740,172 @@ public class WorkflowExecutor {
         return true;
     }
 
+    /**
+     * Submits a run of the workflow. The run waits in the queue of the runs until less than {@link WorkflowExecutor#getMaxConcurrentRuns()}
+     * runs are executing, it is executed with its own {@link NodeState} (see {@link WorkflowRun}).
+     * Throws an {@link IllegalArgumentException} if the workflow is not valid or if an override is not the value of a {@link PrimitiveNode} of the workflow.
+     * @param overrides The values given to the {@link PrimitiveNode} (by node id) instead of their value
+     * @return The run submitted
+     */
+    public WorkflowRun submitRun(@Nonnull Map<Integer, Object> overrides) {
+        Objects.requireNonNull(overrides);
+        if (workflow.validate().isPresent()) {
+            throw new IllegalArgumentException("The workflow is not valid");
+        }
+        for (var override : overrides.entrySet()) {
+            var node = workflow.getNode(override.getKey());
+            if (node.isEmpty() || !(node.get() instanceof PrimitiveNode primitiveNode)) {
+                throw new IllegalArgumentException("The node %d is not a primitive node of the workflow".formatted(override.getKey()));
+            }
+            try {
+                primitiveNode.checkValue(Objects.requireNonNull(override.getValue()));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid value for the node %d : %s".formatted(override.getKey(), e.getMessage()));
+            }
+        }
+
+        var run = new WorkflowRun(this, overrides);
+        runs.put(run.getId(), run);
+        synchronized (runsLock) {
+            pendingRuns.add(run);
+        }
+        listener.runStateChanged(run);
+        startPendingRuns();
+        return run;
+    }
+
+    /**
+     * Starts the runs waiting in the queue while less than {@link WorkflowExecutor#getMaxConcurrentRuns()} runs are executing
+     */
+    private void startPendingRuns() {
+        var toStart = new LinkedList<WorkflowRun>();
+        synchronized (runsLock) {
+            while (runningRuns < maxConcurrentRuns && !pendingRuns.isEmpty()) {
+                toStart.add(pendingRuns.poll());
+                runningRuns++;
+            }
+        }
+        toStart.forEach(this::executeRun);
+    }
+
+    /**
+     * Executes every node of the workflow in a run. The graph must not be modified while the run is executing.
+     * @param run The run
+     */
+    private void executeRun(@Nonnull WorkflowRun run) {
+        CompletableFuture<Void> toWaitFor;
+        //The graph may have changed while the run was waiting
+        var errors = workflow.validate();
+        if (errors.isPresent()) {
+            run.getErrors().merge(errors.get());
+            toWaitFor = CompletableFuture.failedFuture(new IllegalStateException("The workflow is not valid"));
+        } else {
+            run.setState(State.RUNNING);
+            listener.runStateChanged(run);
+            try {
+                var plan = getExecutionPlan();
+                var dirty = new boolean[plan.size()];
+                Arrays.fill(dirty, true);
+                toWaitFor = startExecution(run, plan, dirty);
+            } catch (Exception e) {
+                toWaitFor = CompletableFuture.failedFuture(e);
+            }
+        }
+
+        toWaitFor.whenCompleteAsync((v, e) -> {
+            var failed = e != null || run.getNodeStates().values().stream().anyMatch(ns -> ns.getState() == State.FAILED);
+            if (run.isStopRequested()) {
+                run.getErrors().addError(new WorkflowCancelled());
+                failed = true;
+            }
+            //The run is completed last, so its notification is sent and it is not active anymore when its completion is seen
+            var finalState = failed ? State.FAILED : State.FINISHED;
+            run.setState(finalState);
+            listener.runStateChanged(run);
+            synchronized (runsLock) {
+                runningRuns--;
+            }
+            run.finish(finalState);
+            startPendingRuns();
+        }, ExecutionPools.get().getOrchestrationExecutor());
+    }
+
+    /**
+     * Requests a stop of a run. A run waiting in the queue is not started.
+     * @param run The run
+     * @return False if the run is already done, true otherwise
+     */
+    public boolean stopRun(@Nonnull WorkflowRun run) {
+        Objects.requireNonNull(run);
+        boolean wasPending;
+        synchronized (runsLock) {
+            wasPending = pendingRuns.remove(run);
+        }
+        if (wasPending) {
+            run.getErrors().addError(new WorkflowCancelled());
+            run.setState(State.FAILED);
+            listener.runStateChanged(run);
+            run.finish(State.FAILED);
+            return true;
+        }
+        if (run.isDone()) {
+            return false;
+        }
+        run.requestStop();
+        return true;
+    }
+
+    public Optional<WorkflowRun> getRun(@Nonnull UUID id) {
+        Objects.requireNonNull(id);
+        return Optional.ofNullable(runs.get(id));
+    }
+
+    /**
+     * Returns the runs submitted and not removed, in the order they were submitted
+     * @return The runs
+     */
+    public List<WorkflowRun> getRuns() {
+        return runs.values().stream().sorted(Comparator.comparingLong(WorkflowRun::getSequence)).toList();
+    }
+
+    /**
+     * Removes a run that is done, with its node states and its outputs
+     * @param run The run
+     * @return False if the run is not done or was already removed, true otherwise
+     */
+    public boolean removeRun(@Nonnull WorkflowRun run) {
+        Objects.requireNonNull(run);
+        return run.isDone() && runs.remove(run.getId(), run);
+    }
+
+    /**
+     * Returns true if some runs are waiting or executing
+     * @return True if some runs are not done, false otherwise
+     */
+    public boolean hasActiveRuns() {
+        return runs.values().stream().anyMatch(run -> !run.isDone());
+    }
+
+    public int getMaxConcurrentRuns() {
+        synchronized (runsLock) {
+            return maxConcurrentRuns;
+        }
+    }
+
+    /**
+     * Sets the maximum number of runs executing at the same time. Throws an {@link IllegalArgumentException} if the maximum is smaller than 1
+     * @param maxConcurrentRuns The maximum number of runs
+     */
+    public void setMaxConcurrentRuns(int maxConcurrentRuns) {
+        if (maxConcurrentRuns < 1) {
+            throw new IllegalArgumentException("The maximum number of concurrent runs must be greater than 0");
+        }
+        synchronized (runsLock) {
+            this.maxConcurrentRuns = maxConcurrentRuns;
+        }
+        startPendingRuns();
+    }
+
     public void setNodePosition(@Nonnull Node node, @Nonnull Point.Double pos) {
         Objects.requireNonNull(node);
         Objects.requireNonNull(pos);
@@ -476,16 +937,34 @@ public class WorkflowExecutor {
     }
 
     /**
-     * Clears the cache for the workflow
+     * Clears the cache for the workflow. The next execution executes every node.
      */
     public void clearCache() {
+        lastRunPlan = null;
         data.getCache().clear();
     }
 
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /**
+     * Sets whether the executions are incremental : only the dirty nodes (modified, not deterministic or not successfully executed)
+     * and the nodes depending on them are executed, the other nodes give the outputs of their last execution kept in memory
+     * @param incremental True for incremental executions, false to execute every node
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+        if (!incremental) {
+            lastRunPlan = null;
+        }
+    }
+
     /**
-     * Deletes the data directory for the current workflow and removed the {@link NodeModifiedListener} from the workflow
+     * Stops the runs, deletes the data directory for the current workflow and removed the {@link NodeModifiedListener} from the workflow
      */
     public void delete() {
+        runs.values().forEach(this::stopRun);
         data.delete();
         workflow.removeNodeModifiedListener(nodeModifiedListener);
     }
@@ -493,4 +972,30 @@ public class WorkflowExecutor {
     public Map<Integer, NodeState> getNodeStates() {
         return Collections.unmodifiableMap(states);
     }
+
+    /**
+     * Returns the metrics of the queue of the nodes waiting to be executed for this workflow
+     * @return The metrics of the queue
+     */
+    public WorkflowTaskQueue.Metrics getTaskQueueMetrics() {
+        return taskQueue.getMetrics();
+    }
+
+    /**
+     * Sets the share of the workflow in the {@link WorkflowScheduler} shared by all the workflows
+     * @param weight The weight of the workflow, a workflow with a weight of 2 gets twice the slots of a workflow with a weight of 1
+     * @param quota The maximum number of nodes of the workflow running at the same time, 0 to only use {@link ExecutionPool#getMaxConcurrentNodesPerWorkflow()}
+     */
+    public void setSchedulingShare(double weight, int quota) {
+        taskQueue.setWeight(weight);
+        taskQueue.setQuota(quota);
+    }
+
+    public double getSchedulingWeight() {
+        return taskQueue.getWeight();
+    }
+
+    public int getSchedulingQuota() {
+        return taskQueue.getQuota();
+    }
 }
@@ -1,6 +1,7 @@
 package com.heig.entities.workflow.execution;
 
 import com.heig.entities.workflow.Workflow;
+import com.heig.entities.workflow.data.CacheStore;
 import com.heig.entities.workflow.data.Data;
 import io.smallrye.mutiny.tuples.Tuple2;
 import jakarta.annotation.Nonnull;
@@ -43,7 +44,9 @@ public class WorkflowManager {
         Objects.requireNonNull(supplier);
 
         if (Data.dataRootDirectory.exists()) {
-            var workflowsUUIDs = Data.dataRootDirectory.list((dir, name) -> new File(dir, name).isDirectory());
+            //The directory of the cache store is not a workflow
+            var storeDirectoryName = CacheStore.INSTANCE.getRootDirectory().getName();
+            var workflowsUUIDs = Data.dataRootDirectory.list((dir, name) -> new File(dir, name).isDirectory() && !name.equals(storeDirectoryName));
             if (workflowsUUIDs != null) {
                 for (var workflowUUID : workflowsUUIDs) {
                     var uuid = UUID.fromString(workflowUUID);
@@ -54,6 +57,7 @@ public class WorkflowManager {
                     tuple.getItem2().accept(we);
                 }
             }
+            CacheStore.INSTANCE.collectGarbage();
         }
     }
 
@@ -71,4 +75,22 @@ public class WorkflowManager {
     public static List<WorkflowExecutor> getWorkflowExecutors() {
         return workflowExecutors.values().stream().toList();
     }
+
+    /**
+     * Returns the metrics of the queue of each workflow (the number of nodes waiting and the time they waited)
+     * @return The metrics by workflow UUID
+     */
+    public static Map<UUID, WorkflowTaskQueue.Metrics> getTaskQueueMetrics() {
+        var metrics = new HashMap<UUID, WorkflowTaskQueue.Metrics>();
+        workflowExecutors.forEach((uuid, we) -> metrics.put(uuid, we.getTaskQueueMetrics()));
+        return Collections.unmodifiableMap(metrics);
+    }
+
+    /**
+     * Returns the number of nodes currently running for all the workflows
+     * @return The number of nodes running
+     */
+    public static int getRunningNodes() {
+        return WorkflowScheduler.INSTANCE.getRunning();
+    }
 }
@@ -0,0 +1,212 @@
+package com.heig.entities.workflow.execution;
+
+import com.heig.entities.workflow.errors.WorkflowErrors;
+import com.heig.entities.workflow.nodes.Node;
+import com.heig.entities.workflow.nodes.PrimitiveNode;
+import jakarta.annotation.Nonnull;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A parameterized execution of a workflow, submitted with {@link WorkflowExecutor#submitRun(Map)}.<br>
+ * A run has its own {@link NodeState} and log, the graph and the cache of the workflow are shared (read-only) with the other runs
+ * and with the main execution of the workflow, so many runs of the same workflow can be executed at the same time.
+ * The value of some {@link PrimitiveNode} can be overridden for the run, without modifying the workflow.
+ * The run is {@link State#IDLE} while it waits in the queue of the {@link WorkflowExecutor}.
+ */
+public class WorkflowRun implements ExecutionScope {
+    /**
+     * The number of runs created, used to order the runs
+     */
+    private static long runsCount = 0;
+
+    private final UUID id = UUID.randomUUID();
+
+    /**
+     * The order in which the run was submitted
+     */
+    private final long sequence;
+
+    /**
+     * The {@link WorkflowExecutor} executing the run
+     */
+    private final WorkflowExecutor workflowExecutor;
+
+    /**
+     * The values given to the {@link PrimitiveNode} instead of their value, by node id
+     */
+    private final Map<Integer, Object> overrides;
+
+    /**
+     * Stores the {@link NodeState} of the run for each {@link Node} (here represented by its id)
+     */
+    private final ConcurrentMap<Integer, NodeState> states = new ConcurrentHashMap<>();
+
+    /**
+     * The execution errors of the run
+     */
+    private final WorkflowErrors errors = new WorkflowErrors();
+
+    /**
+     * The standard output of the nodes of the run
+     */
+    private final StringBuilder log = new StringBuilder();
+
+    /**
+     * True if a stop has been requested, false otherwise
+     */
+    private final AtomicBoolean stopRequested = new AtomicBoolean(false);
+
+    /**
+     * List of all the {@link Runnable} to start if a stop has been requested
+     */
+    private final Set<Runnable> waitingForStop = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Completed with the final {@link State} of the run
+     */
+    private final CompletableFuture<State> completion = new CompletableFuture<>();
+
+    private volatile State state = State.IDLE;
+
+    WorkflowRun(@Nonnull WorkflowExecutor workflowExecutor, @Nonnull Map<Integer, Object> overrides) {
+        this.workflowExecutor = Objects.requireNonNull(workflowExecutor);
+        this.overrides = Collections.unmodifiableMap(new HashMap<>(Objects.requireNonNull(overrides)));
+        synchronized (WorkflowRun.class) {
+            sequence = runsCount++;
+        }
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    public WorkflowExecutor getWorkflowExecutor() {
+        return workflowExecutor;
+    }
+
+    /**
+     * Returns the values given to the {@link PrimitiveNode} instead of their value
+     * @return The values by node id
+     */
+    public Map<Integer, Object> getOverrides() {
+        return overrides;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    void setState(@Nonnull State state) {
+        this.state = Objects.requireNonNull(state);
+    }
+
+    /**
+     * Returns a future completed with the final {@link State} of the run ({@link State#FINISHED} or {@link State#FAILED})
+     * @return The future
+     */
+    public CompletableFuture<State> getCompletion() {
+        return completion.copy();
+    }
+
+    /**
+     * Sets the final {@link State} of the run
+     * @param finalState The final {@link State}
+     */
+    void finish(@Nonnull State finalState) {
+        state = Objects.requireNonNull(finalState);
+        completion.complete(finalState);
+    }
+
+    public boolean isDone() {
+        return completion.isDone();
+    }
+
+    public WorkflowErrors getErrors() {
+        return errors;
+    }
+
+    public synchronized String getLog() {
+        return log.toString();
+    }
+
+    /**
+     * Returns the outputs of a node in the run
+     * @param node The node
+     * @return The outputs or empty if the node was not successfully executed
+     */
+    public Optional<NodeArguments> getOutputs(@Nonnull Node node) {
+        Objects.requireNonNull(node);
+        var ns = states.get(node.getId());
+        return ns == null ? Optional.empty() : ns.getLastOutputs();
+    }
+
+    public Map<Integer, NodeState> getNodeStates() {
+        return Collections.unmodifiableMap(states);
+    }
+
+    /**
+     * Requests a stop of the run
+     */
+    void requestStop() {
+        stopRequested.set(true);
+        for (var listener : waitingForStop) {
+            listener.run();
+        }
+    }
+
+    @Override
+    public NodeState getStateFor(@Nonnull Node node) {
+        Objects.requireNonNull(node);
+        return states.computeIfAbsent(node.getId(), id -> new NodeState(node));
+    }
+
+    @Override
+    public void nodeStateChanged(@Nonnull NodeState ns) {
+        //The node states of a run are only read when the run is done
+    }
+
+    @Override
+    public synchronized void newLogLine(@Nonnull String line) {
+        log.append(line);
+    }
+
+    @Override
+    public boolean isStopRequested() {
+        return stopRequested.get();
+    }
+
+    @Override
+    public void addStopListener(@Nonnull Runnable stopListener) {
+        waitingForStop.add(stopListener);
+    }
+
+    @Override
+    public void removeStopListener(@Nonnull Runnable stopListener) {
+        waitingForStop.remove(stopListener);
+    }
+
+    @Override
+    public Optional<NodeArguments> getOverriddenOutputs(@Nonnull Node node) {
+        if (!overrides.containsKey(node.getId())) {
+            return Optional.empty();
+        }
+        var outputs = new NodeArguments();
+        outputs.putArgument(PrimitiveNode.OUTPUT_NAME, overrides.get(node.getId()));
+        return Optional.of(outputs);
+    }
+
+    @Override
+    public boolean writesCache() {
+        //The runs only read the cache, a parameter sweep does not evict the entries of the workflow
+        return false;
+    }
+}
@@ -0,0 +1,166 @@
+package com.heig.entities.workflow.execution;
+
+import jakarta.annotation.Nonnull;
+import org.eclipse.microprofile.config.ConfigProvider;
+
+import java.util.LinkedHashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Shares the node executor of the {@link ExecutionPool} between the {@link WorkflowTaskQueue} of the workflows, so a big workflow cannot starve the others.<br>
+ * At most "execution_max_in_flight" nodes run at the same time (from the quarkus config, 0 by default meaning only limited by
+ * {@link ExecutionPool#getMaxConcurrentNodes()}), the other nodes wait in the queue of their workflow. When a slot is free, the queue having waiting nodes
+ * with the smallest virtual time starts its next node (weighted fair queuing) : each node started adds 1 / weight to the virtual time of its queue,
+ * so a workflow with a weight of 2 gets twice the slots of a workflow with a weight of 1 when both have waiting nodes.
+ * A queue also never runs more nodes than its quota (see {@link WorkflowTaskQueue#setQuota(int)}).
+ */
+public class WorkflowScheduler {
+    /**
+     * The scheduler shared by the workflows of the {@link WorkflowManager}
+     */
+    static final WorkflowScheduler INSTANCE = new WorkflowScheduler(
+        ExecutionPools::get,
+        ConfigProvider.getConfig().getOptionalValue("execution_max_in_flight", Integer.class).orElse(0)
+    );
+
+    /**
+     * Returns the {@link ExecutionPool} to give the tasks to
+     */
+    private final Supplier<ExecutionPool> poolSupplier;
+
+    /**
+     * The maximum number of nodes running at the same time, 0 if only limited by the pool
+     */
+    private final int maxInFlight;
+
+    /**
+     * The queues having waiting tasks, in the order they became active
+     */
+    private final Set<WorkflowTaskQueue> active = new LinkedHashSet<>();
+
+    /**
+     * The number of tasks currently running
+     */
+    private int running = 0;
+
+    /**
+     * The virtual time of the last task started, a queue becoming active starts from it so it cannot use the time it was idle
+     */
+    private double virtualTime = 0;
+
+    /**
+     * Creates a scheduler. Throws an {@link IllegalArgumentException} if the maximum number of nodes is smaller than 0
+     * @param poolSupplier Returns the {@link ExecutionPool} to give the tasks to
+     * @param maxInFlight The maximum number of nodes running at the same time, 0 if only limited by the pool
+     */
+    public WorkflowScheduler(@Nonnull Supplier<ExecutionPool> poolSupplier, int maxInFlight) {
+        if (maxInFlight < 0) {
+            throw new IllegalArgumentException("The maximum number of nodes in flight must be greater or equals than 0");
+        }
+        this.poolSupplier = Objects.requireNonNull(poolSupplier);
+        this.maxInFlight = maxInFlight;
+    }
+
+    ExecutionPool getPool() {
+        return poolSupplier.get();
+    }
+
+    /**
+     * Called when a task was added to a queue
+     * @param queue The queue
+     */
+    void taskQueued(@Nonnull WorkflowTaskQueue queue) {
+        synchronized (this) {
+            if (active.add(queue)) {
+                queue.virtualTime = Math.max(queue.virtualTime, virtualTime);
+            }
+        }
+        dispatch();
+    }
+
+    /**
+     * Starts the tasks waiting in the queues while the maximum number of running tasks is not reached
+     */
+    private void dispatch() {
+        while (true) {
+            WorkflowTaskQueue queue;
+            WorkflowTaskQueue.QueuedTask task;
+            Executor executor;
+            synchronized (this) {
+                var pool = poolSupplier.get();
+                var limit = maxInFlight > 0 ? Math.min(maxInFlight, pool.getMaxConcurrentNodes()) : pool.getMaxConcurrentNodes();
+                if (running >= limit) {
+                    return;
+                }
+                //The queue with the smallest virtual time which can start a task
+                queue = null;
+                for (var candidate : active) {
+                    if (candidate.canStart(pool) && (queue == null || candidate.virtualTime < queue.virtualTime)) {
+                        queue = candidate;
+                    }
+                }
+                if (queue == null) {
+                    return;
+                }
+                task = queue.start();
+                if (!queue.hasWaiting()) {
+                    active.remove(queue);
+                }
+                virtualTime = Math.max(virtualTime, queue.virtualTime);
+                queue.virtualTime += 1.0 / queue.getWeight();
+                running++;
+                executor = pool.getNodeExecutor();
+            }
+
+            var finishedQueue = queue;
+            try {
+                executor.execute(() -> {
+                    try {
+                        task.task().run();
+                    } finally {
+                        taskFinished(finishedQueue);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                //The task was already removed from its queue, it fails instead of being lost.
+                //The exception is not propagated, the caller is the thread of an unrelated task
+                synchronized (this) {
+                    running--;
+                    queue.finished(false);
+                }
+                task.onRejected().accept(e);
+            }
+        }
+    }
+
+    /**
+     * Called when a task finishes. Starts the next tasks waiting if there are some.
+     * @param queue The queue of the task
+     */
+    private void taskFinished(@Nonnull WorkflowTaskQueue queue) {
+        synchronized (this) {
+            running--;
+            queue.finished(true);
+        }
+        dispatch();
+    }
+
+    /**
+     * Called when the weight or the quota of a queue changed, starts the tasks that can now be started
+     */
+    void sharesChanged() {
+        dispatch();
+    }
+
+    /**
+     * Returns the number of tasks currently running
+     * @return The number of tasks currently running
+     */
+    public synchronized int getRunning() {
+        return running;
+    }
+}
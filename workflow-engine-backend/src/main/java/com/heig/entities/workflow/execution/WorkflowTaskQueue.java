@@ -0,0 +1,225 @@
+package com.heig.entities.workflow.execution;
+
+import jakarta.annotation.Nonnull;
+import org.jboss.logging.Logger;
+
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Queue of the nodes to execute for a single {@link WorkflowExecutor}.
+ * The tasks are given to the node executor of the {@link ExecutionPool} by the {@link WorkflowScheduler} shared with the other workflows,
+ * while the number of tasks running for the workflow is smaller than {@link ExecutionPool#getMaxConcurrentNodesPerWorkflow()} and than its quota.
+ * The other tasks wait in the queue, the task with the highest priority is started first (in FIFO order for the same priority).
+ * A task refused by the node executor when it is started (see {@link RejectedExecutionException}) is not executed, its rejection handler is called instead.
+ */
+public class WorkflowTaskQueue implements Executor {
+    /**
+     * Snapshot of the metrics of a {@link WorkflowTaskQueue}
+     * @param queued The number of tasks waiting to be started
+     * @param running The number of tasks currently running
+     * @param completed The number of tasks completed
+     * @param averageWaitMs The average time (in ms) a task waited in the queue before being started
+     */
+    public record Metrics(int queued, int running, long completed, double averageWaitMs) { }
+
+    /**
+     * A task waiting in the queue
+     * @param task The task
+     * @param onRejected Called if the node executor refuses the task
+     * @param queuedAt The time (from {@link System#nanoTime()}) at which the task was queued
+     * @param priority The priority of the task
+     * @param sequence The order in which the task was queued
+     */
+    record QueuedTask(Runnable task, Consumer<RejectedExecutionException> onRejected, long queuedAt, long priority, long sequence) { }
+
+    private static final Logger LOG = Logger.getLogger(WorkflowTaskQueue.class);
+
+    /**
+     * The scheduler starting the tasks
+     */
+    private final WorkflowScheduler scheduler;
+
+    /**
+     * The weight of the queue in the scheduler
+     */
+    private double weight = 1;
+
+    /**
+     * The maximum number of tasks running at the same time, 0 to only use {@link ExecutionPool#getMaxConcurrentNodesPerWorkflow()}
+     */
+    private int quota = 0;
+
+    /**
+     * The virtual time of the queue, used and modified only by the {@link WorkflowScheduler} while it holds its lock
+     */
+    double virtualTime = 0;
+
+    /**
+     * The tasks waiting to be started
+     */
+    private final Queue<QueuedTask> waiting = new PriorityQueue<>(
+        Comparator.comparingLong(QueuedTask::priority).reversed().thenComparingLong(QueuedTask::sequence)
+    );
+
+    /**
+     * The number of tasks queued
+     */
+    private long sequence = 0;
+
+    /**
+     * The number of tasks currently running
+     */
+    private int running = 0;
+
+    /**
+     * The number of tasks completed
+     */
+    private long completed = 0;
+
+    /**
+     * The number of tasks started
+     */
+    private long started = 0;
+
+    /**
+     * The total time (in ns) the started tasks waited in the queue
+     */
+    private long totalWaitNanos = 0;
+
+    public WorkflowTaskQueue() {
+        this(WorkflowScheduler.INSTANCE);
+    }
+
+    /**
+     * Creates a queue with its own {@link WorkflowScheduler}, only limited by the pool
+     * @param poolSupplier Returns the {@link ExecutionPool} to give the tasks to
+     */
+    public WorkflowTaskQueue(@Nonnull Supplier<ExecutionPool> poolSupplier) {
+        this(new WorkflowScheduler(poolSupplier, 0));
+    }
+
+    public WorkflowTaskQueue(@Nonnull WorkflowScheduler scheduler) {
+        this.scheduler = Objects.requireNonNull(scheduler);
+    }
+
+    @Override
+    public void execute(@Nonnull Runnable task) {
+        execute(task, 0);
+    }
+
+    /**
+     * Queues a task with a priority. The task is dropped if the node executor refuses it (the rejection is logged).
+     * @param task The task
+     * @param priority The priority, the tasks with the highest priority are started first
+     */
+    public void execute(@Nonnull Runnable task, long priority) {
+        execute(task, priority, e -> LOG.warn("A task of the workflow was refused by the node executor", e));
+    }
+
+    /**
+     * Queues a task with a priority and a rejection handler
+     * @param task The task
+     * @param priority The priority, the tasks with the highest priority are started first
+     * @param onRejected Called instead of the task if the node executor refuses it
+     */
+    public void execute(@Nonnull Runnable task, long priority, @Nonnull Consumer<RejectedExecutionException> onRejected) {
+        Objects.requireNonNull(task);
+        Objects.requireNonNull(onRejected);
+        synchronized (this) {
+            waiting.add(new QueuedTask(task, onRejected, System.nanoTime(), priority, sequence++));
+        }
+        scheduler.taskQueued(this);
+    }
+
+    /**
+     * Returns true if the queue has a task waiting and can run one more task
+     * @param pool The current pool
+     * @return True if a task can be started
+     */
+    synchronized boolean canStart(@Nonnull ExecutionPool pool) {
+        var limit = quota > 0 ? Math.min(quota, pool.getMaxConcurrentNodesPerWorkflow()) : pool.getMaxConcurrentNodesPerWorkflow();
+        return !waiting.isEmpty() && running < limit;
+    }
+
+    synchronized boolean hasWaiting() {
+        return !waiting.isEmpty();
+    }
+
+    /**
+     * Removes the next task to start, called by the {@link WorkflowScheduler}
+     * @return The task
+     */
+    synchronized QueuedTask start() {
+        var next = waiting.poll();
+        if (next == null) {
+            throw new IllegalStateException("No task is waiting");
+        }
+        running++;
+        started++;
+        totalWaitNanos += System.nanoTime() - next.queuedAt();
+        return next;
+    }
+
+    /**
+     * Called by the {@link WorkflowScheduler} when a task is not running anymore
+     * @param isCompleted True if the task was executed, false if it could not be started
+     */
+    synchronized void finished(boolean isCompleted) {
+        running--;
+        if (isCompleted) {
+            completed++;
+        }
+    }
+
+    public synchronized double getWeight() {
+        return weight;
+    }
+
+    /**
+     * Sets the weight of the queue in the {@link WorkflowScheduler}. Throws an {@link IllegalArgumentException} if the weight is smaller or equals than 0
+     * @param weight The weight, a queue with a weight of 2 gets twice the slots of a queue with a weight of 1
+     */
+    public void setWeight(double weight) {
+        if (!(weight > 0) || Double.isInfinite(weight)) {
+            throw new IllegalArgumentException("The weight must be greater than 0");
+        }
+        synchronized (this) {
+            this.weight = weight;
+        }
+        scheduler.sharesChanged();
+    }
+
+    public synchronized int getQuota() {
+        return quota;
+    }
+
+    /**
+     * Sets the maximum number of tasks of the queue running at the same time. Throws an {@link IllegalArgumentException} if the quota is smaller than 0
+     * @param quota The quota, 0 to only use {@link ExecutionPool#getMaxConcurrentNodesPerWorkflow()}
+     */
+    public void setQuota(int quota) {
+        if (quota < 0) {
+            throw new IllegalArgumentException("The quota must be greater or equals than 0");
+        }
+        synchronized (this) {
+            this.quota = quota;
+        }
+        scheduler.sharesChanged();
+    }
+
+    /**
+     * Returns the current metrics of the queue
+     * @return The current metrics of the queue
+     */
+    public synchronized Metrics getMetrics() {
+        var averageWaitMs = started == 0 ? 0.0 : (totalWaitNanos / (double) started) / 1_000_000.0;
+        return new Metrics(waiting.size(), running, completed, averageWaitMs);
+    }
+}
@@ -1,6 +1,8 @@
 package com.heig.entities.workflow.file;
 
 import com.heig.entities.documentation.Document;
+import com.heig.entities.workflow.data.ContentDigest;
+import jakarta.annotation.Nonnull;
 import org.eclipse.microprofile.config.ConfigProvider;
 
 import java.io.*;
@@ -157,25 +159,30 @@ public class FileWrapper {
     }
 
     /**
-     * Returns the hash code for the specified file
-     * Returns
+     * Adds the content of the file to the digest. The content added is
      * <ul>
-     *     <li>0 if the file is null. Can only append if the {@link FileWrapper#NONE} is used</li>
-     *     <li>2 if the file does not exist</li>
-     *     <li>the hash obtained with the content of the file and the relative path of the file</li>
+     *     <li>a marker if the file is null. Can only append if the {@link FileWrapper#NONE} is used</li>
+     *     <li>a marker and the relative path of the file if the file does not exist</li>
+     *     <li>a marker, the relative path of the file and the bytes of the file (read by blocks, the file is never fully loaded in memory)</li>
      * </ul>
-     * @return The hash code representing the file
+     * @param digest The digest to update
      */
-    public int getContentHashCode() {
+    public void updateDigest(@Nonnull ContentDigest digest) {
+        Objects.requireNonNull(digest);
         if (isFileNull()) {
-            return 0;
+            digest.putByte((byte) 0);
+            return;
         }
         if (!exists()) {
-            return 2;
+            digest.putByte((byte) 1).putString(filePath);
+            return;
         }
 
-        try (var reader = reader()) {
-            return Objects.hash(reader.readAllText().hashCode(), filePath.hashCode());
+        digest.putByte((byte) 2).putString(filePath);
+        try (var stream = new FileInputStream(file)) {
+            digest.putStream(stream);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
         }
     }
 }
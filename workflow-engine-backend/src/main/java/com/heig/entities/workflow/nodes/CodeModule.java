@@ -0,0 +1,68 @@
+package com.heig.entities.workflow.nodes;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.heig.helpers.CustomJsonDeserializer;
+import com.heig.helpers.CustomJsonSerializer;
+import jakarta.annotation.Nonnull;
+
+import java.util.Objects;
+
+/**
+ * A module of a workflow : a code shared by the {@link CodeNode} of its language (a library of helpers for example).<br>
+ * The code is the body of a function returning the value of the module. The module is parsed once by the engine of its language
+ * and evaluated once per context (see {@link ContextPool.PooledContext#getModule(org.graalvm.polyglot.Source)}), then given to the nodes in the "modules" argument.
+ * The value of the module is shared by the executions using the same context, it must not be modified by the nodes
+ * (it is frozen in JS and Ruby).
+ * @param name The name of the module, used by the nodes to get it
+ * @param language The language of the module
+ * @param code The code of the module
+ */
+public record CodeModule(String name, CodeNode.Language language, String code) {
+    /**
+     * Used to serialize a {@link CodeModule}
+     */
+    public static class Serializer implements CustomJsonSerializer<CodeModule> {
+        @Override
+        public JsonElement serialize(CodeModule value) {
+            var obj = new JsonObject();
+            obj.addProperty("name", value.name());
+            obj.addProperty("language", value.language().name());
+            obj.addProperty("code", value.code());
+            return obj;
+        }
+    }
+
+    /**
+     * Used to deserialize a {@link CodeModule} from a json representation
+     */
+    public static class Deserializer implements CustomJsonDeserializer<CodeModule> {
+        @Override
+        public CodeModule deserialize(JsonElement value) throws JsonParseException {
+            var obj = value.getAsJsonObject();
+            return new CodeModule(
+                obj.get("name").getAsString(),
+                CodeNode.Language.valueOf(obj.get("language").getAsString()),
+                obj.get("code").getAsString()
+            );
+        }
+    }
+
+    public CodeModule {
+        Objects.requireNonNull(name);
+        Objects.requireNonNull(language);
+        Objects.requireNonNull(code);
+        if (name.isBlank()) {
+            throw new IllegalArgumentException("The name of a module cannot be empty");
+        }
+    }
+
+    /**
+     * Converts the module to a json representation
+     * @return The module as a json representation
+     */
+    public JsonObject toJson() {
+        return new Serializer().serialize(this).getAsJsonObject();
+    }
+}
@@ -3,17 +3,28 @@ package com.heig.entities.workflow.nodes;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
+import com.heig.entities.workflow.data.ContentDigest;
+import com.heig.entities.workflow.errors.CodeSyntaxError;
+import com.heig.entities.workflow.errors.ResourceLimitExceeded;
+import com.heig.entities.workflow.errors.WorkflowErrors;
+import com.heig.entities.workflow.execution.ExecutionPools;
 import com.heig.entities.workflow.execution.NodeArguments;
+import com.heig.entities.workflow.execution.ResourceLimitException;
 import com.heig.entities.workflow.Workflow;
+import com.heig.entities.workflow.types.WCollection;
+import com.heig.entities.workflow.types.WIterableType;
 import jakarta.annotation.Nonnull;
-import org.graalvm.polyglot.Context;
-import org.graalvm.polyglot.Engine;
-import org.graalvm.polyglot.HostAccess;
+import org.eclipse.microprofile.config.ConfigProvider;
+import org.graalvm.polyglot.PolyglotException;
+import org.graalvm.polyglot.Source;
+import org.graalvm.polyglot.Value;
 import org.wildfly.common.annotation.NotNull;
 
-import java.io.*;
-import java.util.Objects;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
 
 /**
  * The code node
@@ -38,19 +49,32 @@ public class CodeNode extends ModifiableNode {
 
             codeNode.code = code;
             codeNode.language = language;
+            codeNode.batchSize = obj.has("batchSize") ? obj.get("batchSize").getAsInt() : 0;
+            codeNode.warmup();
 
             return codeNode;
         }
     }
 
     /**
-     * Represents the language options
+     * Represents the language options. The languages other than JS must be installed (see the pom), a node using a language
+     * that is not installed fails when it is executed.
      */
     public enum Language {
         /**
          * Javascript
          */
-        JS("js", "function main(inputs, outputs){%s}");
+        JS("js", "(function main(inputs, outputs, modules){%s})", "Object.freeze((function(){%s})())", UnaryOperator.identity()),
+
+        /**
+         * Python (GraalPy), the code is the body of the main function
+         */
+        PYTHON("python", "def main(inputs, outputs, modules):\n    pass\n%smain", "def module():\n    pass\n%smodule()", code -> code.indent(4)),
+
+        /**
+         * Ruby (TruffleRuby), the code is the body of the main lambda
+         */
+        RUBY("ruby", "->(inputs, outputs, modules) {\n%s\n}", "->() {\n%s\n}.call.freeze", UnaryOperator.identity());
 
         /**
          * The language code used by GraalVM
@@ -58,27 +82,46 @@ public class CodeNode extends ModifiableNode {
         private final String graalLanguageCode;
 
         /**
-         * The template containing one %s to place the code written by the user
+         * The template containing one %s to place the code written by the user. The evaluation of the template must return the main function
+         * (without declaring a global), so the context can be reused for another code.
          */
         private final String mainCodeTemplate;
 
-        Language(@Nonnull String graalLanguageCode, @Nonnull String mainCodeTemplate) {
+        /**
+         * The template containing one %s to place the code of a {@link CodeModule}. The evaluation of the template must return the value of the module
+         * (without declaring a global).
+         */
+        private final String moduleCodeTemplate;
+
+        /**
+         * Transforms the code written by the user before placing it in the template (to indent it for example)
+         */
+        private final UnaryOperator<String> codeTransformer;
+
+        Language(@Nonnull String graalLanguageCode, @Nonnull String mainCodeTemplate, @Nonnull String moduleCodeTemplate, @Nonnull UnaryOperator<String> codeTransformer) {
             this.graalLanguageCode = Objects.requireNonNull(graalLanguageCode);
             this.mainCodeTemplate = Objects.requireNonNull(mainCodeTemplate);
+            this.moduleCodeTemplate = Objects.requireNonNull(moduleCodeTemplate);
+            this.codeTransformer = Objects.requireNonNull(codeTransformer);
+        }
+
+        public String getGraalLanguageCode() {
+            return graalLanguageCode;
         }
 
         public String completeMain(@NotNull String code) {
-            return mainCodeTemplate.formatted(Objects.requireNonNull(code));
+            return mainCodeTemplate.formatted(codeTransformer.apply(Objects.requireNonNull(code)));
+        }
+
+        public String completeModule(@NotNull String code) {
+            return moduleCodeTemplate.formatted(codeTransformer.apply(Objects.requireNonNull(code)));
         }
     }
 
-    private static final Engine engine = Engine.newBuilder()
-        .option("engine.WarnInterpreterOnly", "false")
-        .build();
-    private static final Context.Builder contextBuilder = Context
-        .newBuilder()
-        .engine(engine)
-        .allowHostAccess(HostAccess.ALL);
+    /**
+     * The maximum time to wait for the warmup of the code before the workflow is executed, from the quarkus config
+     */
+    private static final long WARMUP_WAIT_MS = ConfigProvider.getConfig().getOptionalValue("code_warmup_wait_ms", Long.class).orElse(2000L);
 
     /**
      * The code
@@ -91,9 +134,24 @@ public class CodeNode extends ModifiableNode {
     private Language language = Language.JS;
 
     /**
-     * The current context
+     * The source of the code (see {@link SourceCache}), null until the first execution after the code or the language changed
+     */
+    private volatile Source source = null;
+
+    /**
+     * The warmup of the current code, completed with its syntax error (see {@link ContextPool#parse(Language, Source)})
+     */
+    private volatile CompletableFuture<Optional<String>> warmup = CompletableFuture.completedFuture(Optional.empty());
+
+    /**
+     * The number of elements in a chunk in batch mode, 0 if the batch mode is disabled (see {@link CodeNode#getBatchSize()})
+     */
+    private int batchSize = 0;
+
+    /**
+     * The contexts of each execution in progress (one per chunk in batch mode), by thread which called {@link CodeNode#execute(NodeArguments, Consumer)}
      */
-    private Context context = null;
+    private final ConcurrentMap<Thread, Set<ContextPool.PooledContext>> executions = new ConcurrentHashMap<>();
 
     protected CodeNode(int id, @Nonnull Workflow workflow) {
         super(id, workflow);
@@ -101,41 +159,246 @@ public class CodeNode extends ModifiableNode {
 
     @Override
     public NodeArguments execute(@Nonnull NodeArguments inputs, @Nonnull Consumer<String> logLine) {
+        //Executed outside a workflow, the chunks are given directly to the node executor
+        return execute(inputs, logLine, ExecutionPools.get().getNodeExecutor());
+    }
+
+    @Override
+    public NodeArguments execute(@Nonnull NodeArguments inputs, @Nonnull Consumer<String> logLine, @Nonnull Executor executor) {
         Objects.requireNonNull(inputs);
+        Objects.requireNonNull(executor);
 
-        //Creates a new context that writes its standard output to the logLine Consumer
-        context = contextBuilder.out(new OutputStream() {
-            private String current = "";
-            @Override
-            public synchronized void write(int b) {
-                current += new String(new byte[] {(byte) b}, 0, 1);
-                if (current.endsWith("\n")) {
-                    logLine.accept(current);
-                    current = "";
+        //The node can be executed by several runs of the workflow at the same time, each execution has its own contexts
+        var pooledContexts = ConcurrentHashMap.<ContextPool.PooledContext>newKeySet();
+        executions.put(Thread.currentThread(), pooledContexts);
+        try {
+            if (batchSize > 0) {
+                return executeBatch(inputs, logLine, executor, pooledContexts);
+            }
+            //Executes the code, the collections and maps of the inputs are given without being copied
+            return executeCode(PolyglotBridge.toGuest(inputs), logLine, pooledContexts);
+        } finally {
+            executions.remove(Thread.currentThread());
+        }
+    }
+
+    /**
+     * Executes the code once per chunk of the collections of the inputs, in parallel, and concatenates the collections returned by the chunks.
+     * The chunks are given to the executor, the thread executing the node executes itself the chunks not started yet when it needs their outputs,
+     * so it never waits for a chunk waiting for a free thread (which could be the thread of the node)
+     * @param inputs The inputs of the node
+     * @param logLine The consumer of the standard output
+     * @param executor The executor of the chunks
+     * @param pooledContexts The contexts of the execution
+     * @return The outputs of the node
+     */
+    private NodeArguments executeBatch(@Nonnull NodeArguments inputs, @Nonnull Consumer<String> logLine, @Nonnull Executor executor, @Nonnull Set<ContextPool.PooledContext> pooledContexts) {
+        //The inputs of type collection are split, the others are given to every chunk
+        var collections = new HashMap<String, List<?>>();
+        var valueTypes = new HashMap<String, WIterableType>();
+        var size = -1;
+        for (var input : getInputs().values()) {
+            if (input.getType() instanceof WCollection wCollection) {
+                var value = inputs.getArgument(input.getName());
+                if (value.isEmpty()) {
+                    continue;
+                }
+                var collection = (Collection<?>) value.get();
+                if (size >= 0 && collection.size() != size) {
+                    throw new RuntimeException("In batch mode, the collections of the inputs must have the same size");
                 }
+                size = collection.size();
+                collections.put(input.getName(), collection instanceof List<?> list && list instanceof RandomAccess ? list : Arrays.asList(collection.toArray()));
+                valueTypes.put(input.getName(), wCollection.getValueType());
             }
-        }).build();
-        var bindings = context.getBindings(language.graalLanguageCode);
-        var outputs = new NodeArguments();
+        }
+        if (size < 0) {
+            throw new RuntimeException("In batch mode, at least one input must be a collection");
+        }
 
-        context.eval(language.graalLanguageCode, language.completeMain(code));
-        var mainFunc = bindings.getMember("main");
-        //Executes the code
-        mainFunc.execute(inputs, outputs);
+        var totalSize = size;
+        var chunksCount = Math.max(1, (totalSize + batchSize - 1) / batchSize);
+        var chunks = new ArrayList<CompletableFuture<NodeArguments>>(chunksCount);
+        var chunkTasks = new ArrayList<Runnable>(chunksCount);
+        //True once the execution does not need the chunks not started yet
+        var abandoned = new AtomicBoolean(false);
+        for (var i = 0; i < chunksCount; i++) {
+            var from = i * batchSize;
+            var to = Math.min(totalSize, from + batchSize);
+            var chunk = new CompletableFuture<NodeArguments>();
+            //The chunk is executed once, by the executor or by the thread of the node
+            var started = new AtomicBoolean(false);
+            Runnable chunkTask = () -> {
+                if (!abandoned.get() && started.compareAndSet(false, true)) {
+                    try {
+                        //The inputs of the chunk are only packed when it starts, so the chunks waiting do not hold a copy of the inputs
+                        var chunkInputs = new NodeArguments();
+                        inputs.getArguments().forEach((name, value) -> {
+                            var collection = collections.get(name);
+                            chunkInputs.putArgument(name, collection == null ?
+                                PolyglotBridge.toGuest(value) :
+                                PolyglotBridge.toPackedArray(collection.subList(from, to), valueTypes.get(name))
+                            );
+                        });
+                        chunk.complete(executeCode(chunkInputs, logLine, pooledContexts));
+                    } catch (Throwable t) {
+                        chunk.completeExceptionally(t);
+                    }
+                }
+            };
+            chunks.add(chunk);
+            chunkTasks.add(chunkTask);
+            try {
+                executor.execute(chunkTask);
+            } catch (RejectedExecutionException ignored) {
+                //The chunk is executed by the thread of the node
+            }
+        }
 
-        return outputs;
+        //Concatenates the outputs in the order of the chunks
+        var outputs = new HashMap<String, List<Object>>();
+        try {
+            for (var i = 0; i < chunksCount; i++) {
+                chunkTasks.get(i).run();
+                chunks.get(i).join().getArguments().forEach((name, value) ->
+                    outputs.computeIfAbsent(name, n -> new ArrayList<>(totalSize)).addAll(PolyglotBridge.unpack(name, value))
+                );
+            }
+        } catch (RuntimeException e) {
+            //Whatever failed (a chunk or the unpacking of its outputs), the chunks not finished are not needed anymore
+            abandoned.set(true);
+            pooledContexts.forEach(ContextPool.PooledContext::cancel);
+            if (e instanceof CompletionException && e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+        var fixedOutputs = new NodeArguments();
+        outputs.forEach(fixedOutputs::putArgument);
+        return fixedOutputs;
+    }
+
+    /**
+     * Executes the code in a context of the pool
+     * @param guestInputs The inputs given to the code (see {@link PolyglotBridge})
+     * @param logLine The consumer of the standard output
+     * @param pooledContexts The contexts of the execution, the context used is added while the code runs
+     * @return The outputs set by the code
+     */
+    private NodeArguments executeCode(@Nonnull NodeArguments guestInputs, @Nonnull Consumer<String> logLine, @Nonnull Set<ContextPool.PooledContext> pooledContexts) {
+        //Takes a context from the pool that writes its standard output to the logLine Consumer
+        var current = ContextPool.INSTANCE.acquire(language, getContextOwner());
+        current.setLogLine(logLine);
+        pooledContexts.add(current);
+        try {
+            var outputs = new NodeArguments();
+            var modules = getModules(current);
+            var mainFunc = current.getContext().eval(getSource());
+            mainFunc.execute(guestInputs, outputs, modules);
+
+            //The values created by the code are converted before the context is used by another execution
+            var fixedOutputs = PolyglotBridge.fromGuest(current.getContext(), outputs);
+            pooledContexts.remove(current);
+            ContextPool.INSTANCE.release(current);
+            return fixedOutputs;
+        } catch (RuntimeException e) {
+            pooledContexts.remove(current);
+            ContextPool.INSTANCE.discard(current);
+            if (current.isStatementLimitExceeded()) {
+                throw new ResourceLimitException(ResourceLimitExceeded.Resource.STATEMENTS, ContextPool.INSTANCE.getStatementLimit());
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the owner of the contexts used by the node in the {@link ContextPool}, so the state left by the code is only seen by the node
+     * @return The owner
+     */
+    private String getContextOwner() {
+        return getWorkflow().getUUID() + "_" + getId();
+    }
+
+    /**
+     * Returns the modules of the workflow having the language of the node, evaluated in a context
+     * @param current The context
+     * @return The values of the modules by name, read-only
+     */
+    private Map<String, Value> getModules(@Nonnull ContextPool.PooledContext current) {
+        var modules = new HashMap<String, Value>();
+        for (var module : getWorkflow().getModules().values()) {
+            if (module.language() == language) {
+                try {
+                    modules.put(module.name(), current.getModule(SourceCache.INSTANCE.getModule(module)));
+                } catch (PolyglotException e) {
+                    if (e.isCancelled() || e.isResourceExhausted()) {
+                        throw e;
+                    }
+                    throw new RuntimeException("Failed to load the module '%s' : %s".formatted(module.name(), e.getMessage()), e);
+                }
+            }
+        }
+        return Collections.unmodifiableMap(modules);
     }
 
     @Override
     public void cancel() {
         super.cancel();
-        if (context != null) {
-            try {
-                context.close(true);
-            } catch (Exception ignored) { }
+        executions.values().forEach(pooledContexts -> pooledContexts.forEach(ContextPool.PooledContext::cancel));
+    }
+
+    @Override
+    public void cancel(@Nonnull Thread thread) {
+        super.cancel(thread);
+        var pooledContexts = executions.get(thread);
+        if (pooledContexts != null) {
+            pooledContexts.forEach(ContextPool.PooledContext::cancel);
         }
     }
 
+    /**
+     * Prepares the execution of the current code in the background : the engine of the language is created and the code is parsed,
+     * so the first execution does not pay for them in its timeout
+     */
+    private void warmup() {
+        warmup = ContextPool.INSTANCE.parse(language, getSource());
+    }
+
+    @Override
+    public void addDefinitionErrors(@Nonnull WorkflowErrors errors) {
+        super.addDefinitionErrors(errors);
+        //The syntax error is only known once the warmup is done, the validation does not wait for it
+        var current = warmup;
+        if (current.isDone() && !current.isCompletedExceptionally()) {
+            current.join().ifPresent(message -> errors.addError(new CodeSyntaxError(this, message)));
+        }
+    }
+
+    @Override
+    public void awaitDefinitionChecks() {
+        //Waits for the warmup if the code was modified just before
+        try {
+            warmup.get(WARMUP_WAIT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException ignored) {
+            //The errors are then found by the execution
+        }
+    }
+
+    /**
+     * Returns the source of the code, from the {@link SourceCache} the first time
+     * @return The source
+     */
+    private Source getSource() {
+        var current = source;
+        if (current == null) {
+            current = SourceCache.INSTANCE.get(language, code);
+            source = current;
+        }
+        return current;
+    }
+
     public String getCode() {
         return code;
     }
@@ -143,6 +406,9 @@ public class CodeNode extends ModifiableNode {
     public void setCode(@Nonnull String code) {
         if (!Objects.equals(this.code, code)) {
             this.code = Objects.requireNonNull(code);
+            source = null;
+            ContextPool.INSTANCE.discardIdle(getContextOwner());
+            warmup();
             getWorkflow().nodeModified(this);
         }
     }
@@ -154,6 +420,34 @@ public class CodeNode extends ModifiableNode {
     public void setLanguage(@Nonnull Language language) {
         if (this.language != language) {
             this.language = Objects.requireNonNull(language);;
+            source = null;
+            ContextPool.INSTANCE.discardIdle(getContextOwner());
+            warmup();
+            getWorkflow().nodeModified(this);
+        }
+    }
+
+    /**
+     * Returns the number of elements in a chunk in batch mode, 0 if the batch mode is disabled.<br>
+     * In batch mode, the collections of the inputs (which must have the same size) are split in chunks executed in parallel, each chunk receives
+     * its part of the collections as packed arrays (an int[], long[], double[], boolean[] or String[] for the collections of these types) and the other inputs unchanged.
+     * Every output must be a collection or an array, the outputs of the chunks are concatenated in order.
+     * @return The number of elements in a chunk
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Sets the number of elements in a chunk in batch mode. Throws an {@link IllegalArgumentException} if the value is smaller than 0
+     * @param batchSize The number of elements in a chunk, 0 to disable the batch mode
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 0) {
+            throw new IllegalArgumentException("The batch size must be greater or equals than 0");
+        }
+        if (this.batchSize != batchSize) {
+            this.batchSize = batchSize;
             getWorkflow().nodeModified(this);
         }
     }
@@ -163,11 +457,23 @@ public class CodeNode extends ModifiableNode {
         return "Code" + super.toString();
     }
 
+    @Override
+    public void updateDefinitionDigest(@Nonnull ContentDigest digest) {
+        super.updateDefinitionDigest(digest);
+        digest.putString(language.name()).putString(code).putInt(batchSize);
+        //The modules used by the code are part of its definition
+        getWorkflow().getModules().values().stream()
+            .filter(module -> module.language() == language)
+            .sorted(Comparator.comparing(CodeModule::name))
+            .forEach(module -> digest.putString(module.name()).putString(module.code()));
+    }
+
     @Override
     public JsonObject toJson() {
         var obj = super.toJson();
         obj.addProperty("code", code);
         obj.addProperty("language", language.name());
+        obj.addProperty("batchSize", batchSize);
         return obj;
     }
 }
@@ -0,0 +1,549 @@
+package com.heig.entities.workflow.nodes;
+
+import jakarta.annotation.Nonnull;
+import org.eclipse.microprofile.config.ConfigProvider;
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.HostAccess;
+import org.graalvm.polyglot.PolyglotException;
+import org.graalvm.polyglot.ResourceLimits;
+import org.graalvm.polyglot.Source;
+import org.graalvm.polyglot.Value;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Pool of GraalVM contexts used to execute the {@link CodeNode}, so a node does not pay the creation of a context and of its globals on every execution.
+ * The contexts are kept per language and share the {@link Engine} of their language. An engine is only created when its language is first used,
+ * {@link ContextPool#prewarm(CodeNode.Language)} creates it in the background. A context is only used by one execution at a time.<br>
+ * A context belongs to the first owner (a node, see {@link CodeNode}) executing code in it and is only reused by this owner,
+ * so the built-in objects and the module state modified by the code (which are not reset) are never seen by the code of another node, workflow or user.
+ * Only the engine and the parsed sources (see {@link SourceCache}) are shared. The contexts without owner only parsed code and can be taken by any owner.<br>
+ * Between two executions, the globals created by the code are removed, the values of the modules (see {@link CodeModule}) are kept. A context is closed instead of being reused if the execution failed or was cancelled,
+ * if it was used "code_context_max_uses" times (1000 by default) or if it stayed idle more than "code_context_idle_timeout_ms" (60 seconds by default).
+ * At most "code_context_pool_size" idle contexts are kept per language (the number of processors by default), the least recently used is closed first.<br>
+ * Each execution can run at most "code_statement_limit" statements (0 by default, meaning no limit), the code can access the public members
+ * of the objects it receives but not the reflection.<br>
+ * The code runs in the Truffle interpreter unless "code_engine_mode" is "optimized" and the application is built with the "truffle-optimized" profile
+ * (see {@link EngineMode}).
+ */
+public class ContextPool {
+    /**
+     * How the engine runs the code
+     */
+    public enum EngineMode {
+        /**
+         * The code is only interpreted. The engine starts faster and uses less memory, suited for short nodes.
+         */
+        INTERPRETER,
+
+        /**
+         * The hot code is compiled to machine code by the optimizing Truffle runtime, suited for CPU-heavy nodes.
+         * The runtime must be on the classpath (maven profile "truffle-optimized") and the JVM must support it (GraalVM JDK or JVMCI enabled),
+         * otherwise the engine falls back to the interpreter.<br>
+         * The compilation can be tuned with "code_compilation_threshold" (the number of calls and loop iterations before a function is compiled)
+         * and "code_background_compilation" (true by default, false to compile in the executing thread).
+         */
+        OPTIMIZED
+    }
+
+    /**
+     * The statistics of the pool
+     * @param created The number of contexts created
+     * @param reused The number of executions using a context from the pool
+     * @param closed The number of contexts closed
+     * @param idle The number of contexts currently waiting in the pool
+     */
+    public record Stats(long created, long reused, long closed, int idle) { }
+
+    /**
+     * A context of the pool with its standard output
+     */
+    public static class PooledContext {
+        private final Context context;
+        private final CodeNode.Language language;
+        private final LogOutputStream out;
+
+        /**
+         * The owner which executed code in the context, null if no code was executed
+         */
+        private String owner = null;
+
+        /**
+         * The globals existing when the context was created
+         */
+        private final Set<String> initialGlobals;
+
+        private int uses = 0;
+        private long lastReleased = 0;
+
+        /**
+         * True while an execution uses the context, false while it is in the pool
+         */
+        private boolean inUse = false;
+
+        /**
+         * True if the execution using the context was cancelled
+         */
+        private boolean cancelled = false;
+
+        /**
+         * The values of the modules evaluated in the context, the least recently used first
+         */
+        private final Map<Source, Value> modules = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Source, Value> eldest) {
+                return size() > MAX_MODULES_PER_CONTEXT;
+            }
+        };
+
+        /**
+         * True if the current execution exceeded the statement limit (the context is then cancelled by GraalVM)
+         */
+        private final AtomicBoolean statementLimitExceeded;
+
+        private PooledContext(@Nonnull Context context, @Nonnull CodeNode.Language language, @Nonnull LogOutputStream out, @Nonnull AtomicBoolean statementLimitExceeded) {
+            this.context = Objects.requireNonNull(context);
+            this.language = Objects.requireNonNull(language);
+            this.out = Objects.requireNonNull(out);
+            this.statementLimitExceeded = Objects.requireNonNull(statementLimitExceeded);
+            initialGlobals = new HashSet<>(context.getBindings(language.getGraalLanguageCode()).getMemberKeys());
+        }
+
+        public Context getContext() {
+            return context;
+        }
+
+        /**
+         * Returns the value of a module, evaluating it the first time it is used in the context
+         * @param source The source of the module (see {@link SourceCache#getModule(CodeModule)})
+         * @return The value of the module
+         */
+        public Value getModule(@Nonnull Source source) {
+            Objects.requireNonNull(source);
+            var value = modules.get(source);
+            if (value == null) {
+                value = context.eval(source);
+                modules.put(source, value);
+            }
+            return value;
+        }
+
+        public boolean isStatementLimitExceeded() {
+            return statementLimitExceeded.get();
+        }
+
+        /**
+         * Sets where the lines written to the standard output of the context are sent
+         * @param logLine The consumer of the lines or null to ignore them
+         */
+        public void setLogLine(Consumer<String> logLine) {
+            out.setLogLine(logLine);
+        }
+
+        /**
+         * Cancels the execution using the context by closing it. Does nothing if the context is back in the pool.
+         */
+        public synchronized void cancel() {
+            if (inUse && !cancelled) {
+                cancelled = true;
+                try {
+                    context.close(true);
+                } catch (Exception ignored) { }
+            }
+        }
+
+        /**
+         * Marks the context as used or not by an execution
+         * @param inUse True if the context is used
+         * @return False if the context was cancelled (and must be closed), true otherwise
+         */
+        private synchronized boolean setInUse(boolean inUse) {
+            this.inUse = inUse;
+            return !cancelled;
+        }
+
+        /**
+         * Removes the globals created since the context was created
+         * @return True if the context is back to its initial globals, false if a global could not be removed
+         */
+        private boolean reset() {
+            var bindings = context.getBindings(language.getGraalLanguageCode());
+            var isReset = true;
+            for (var key : new HashSet<>(bindings.getMemberKeys())) {
+                if (!initialGlobals.contains(key) && !bindings.removeMember(key)) {
+                    isReset = false;
+                }
+            }
+            return isReset;
+        }
+    }
+
+    /**
+     * The pool used by every {@link CodeNode}
+     */
+    public static final ContextPool INSTANCE = new ContextPool(
+        EngineMode.valueOf(ConfigProvider.getConfig().getOptionalValue("code_engine_mode", String.class).orElse("interpreter").toUpperCase()),
+        ConfigProvider.getConfig().getOptionalValue("code_context_pool_size", Integer.class).orElse(Runtime.getRuntime().availableProcessors()),
+        ConfigProvider.getConfig().getOptionalValue("code_context_idle_timeout_ms", Long.class).orElse(60_000L),
+        ConfigProvider.getConfig().getOptionalValue("code_context_max_uses", Integer.class).orElse(1000),
+        ConfigProvider.getConfig().getOptionalValue("code_statement_limit", Long.class).orElse(0L)
+    );
+
+    /**
+     * The maximum number of module values kept by a context
+     */
+    private static final int MAX_MODULES_PER_CONTEXT = 64;
+
+    /**
+     * The access of the code to the host objects : every public member except the reflection
+     */
+    private static final HostAccess HOST_ACCESS = HostAccess.newBuilder(HostAccess.ALL)
+        .denyAccess(Class.class)
+        .denyAccess(ClassLoader.class)
+        .build();
+
+    /**
+     * Creates the engines and the first context of the languages prewarmed, shared by every pool
+     */
+    private static final ExecutorService prewarmer = Executors.newSingleThreadExecutor(r -> {
+        var thread = new Thread(r, "code-engine-prewarm");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final EngineMode engineMode;
+
+    /**
+     * The engine of each language used
+     */
+    private final Map<CodeNode.Language, Engine> engines = new ConcurrentHashMap<>();
+
+    /**
+     * The prewarming of each language requested
+     */
+    private final Map<CodeNode.Language, CompletableFuture<Void>> prewarmed = new ConcurrentHashMap<>();
+
+    private final int maxIdlePerLanguage;
+    private final long idleTimeoutMs;
+    private final int maxUses;
+    private final long statementLimit;
+
+    /**
+     * The idle contexts of each language, the most recently released last
+     */
+    private final Map<CodeNode.Language, Deque<PooledContext>> idle = new EnumMap<>(CodeNode.Language.class);
+
+    private long created = 0;
+    private long reused = 0;
+    private long closed = 0;
+
+    ContextPool(@Nonnull EngineMode engineMode, int maxIdlePerLanguage, long idleTimeoutMs, int maxUses, long statementLimit) {
+        if (maxIdlePerLanguage < 0 || idleTimeoutMs < 0 || maxUses <= 0 || statementLimit < 0) {
+            throw new IllegalArgumentException("Invalid context pool limits");
+        }
+        this.engineMode = Objects.requireNonNull(engineMode);
+        this.maxIdlePerLanguage = maxIdlePerLanguage;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.maxUses = maxUses;
+        this.statementLimit = statementLimit;
+        for (var language : CodeNode.Language.values()) {
+            idle.put(language, new ArrayDeque<>());
+        }
+    }
+
+    /**
+     * Creates the engine shared by the contexts of a language. Only this language is loaded by the engine.
+     * @param mode The requested mode
+     * @param language The language
+     * @return The engine, interpreting the code if the optimizing runtime is not available
+     */
+    static Engine createEngine(@Nonnull EngineMode mode, @Nonnull CodeNode.Language language) {
+        Objects.requireNonNull(mode);
+        Objects.requireNonNull(language);
+        var config = ConfigProvider.getConfig();
+        var builder = Engine.newBuilder(language.getGraalLanguageCode());
+        if (mode == EngineMode.OPTIMIZED) {
+            var threshold = config.getOptionalValue("code_compilation_threshold", Integer.class);
+            if (threshold.isPresent() && threshold.get() <= 0) {
+                throw new IllegalArgumentException("The compilation threshold must be greater than 0");
+            }
+            builder
+                .option("engine.Compilation", "true")
+                .option("engine.BackgroundCompilation", config.getOptionalValue("code_background_compilation", Boolean.class).orElse(true).toString());
+            //Without multi-tier compilation, only this threshold is used
+            threshold.ifPresent(t -> builder.option("engine.MultiTier", "false").option("engine.SingleTierCompilationThreshold", t.toString()));
+        } else {
+            builder.option("engine.Compilation", "false");
+        }
+        try {
+            return builder.build();
+        } catch (IllegalArgumentException ignored) {
+            //The compilation options only exist with the optimizing runtime, the code is interpreted
+            return Engine.newBuilder(language.getGraalLanguageCode())
+                .option("engine.WarnInterpreterOnly", "false")
+                .build();
+        }
+    }
+
+    /**
+     * Returns the engine of a language, creating it the first time
+     * @param language The language
+     * @return The engine
+     */
+    public Engine getEngine(@Nonnull CodeNode.Language language) {
+        return engines.computeIfAbsent(Objects.requireNonNull(language), l -> createEngine(engineMode, l));
+    }
+
+    /**
+     * Creates the engine and a first context of a language in the background, so the first node using the language does not wait for them.
+     * Does nothing if the language was already prewarmed.
+     * @param language The language
+     * @return A future completed when the language is ready (completed exceptionally if the language is not installed)
+     */
+    public CompletableFuture<Void> prewarm(@Nonnull CodeNode.Language language) {
+        Objects.requireNonNull(language);
+        return prewarmed.computeIfAbsent(language, l -> CompletableFuture.runAsync(() -> {
+            var pooledContext = acquire(l);
+            try {
+                //Initializes the language and its parser
+                pooledContext.getContext().eval(l.getGraalLanguageCode(), l.completeMain(""));
+            } catch (RuntimeException e) {
+                discard(pooledContext);
+                throw e;
+            }
+            release(pooledContext);
+        }, prewarmer));
+    }
+
+    public long getStatementLimit() {
+        return statementLimit;
+    }
+
+    /**
+     * Parses a source in the background (after prewarming its language), so the first execution using it does not parse it
+     * (the parsed source is kept by the engine, see {@link SourceCache})
+     * @param language The language of the source
+     * @param source The source
+     * @return A future completed with the syntax error of the source or empty if there is none
+     * (or if the source could not be parsed for another reason, the error is then reported by the execution)
+     */
+    public CompletableFuture<Optional<String>> parse(@Nonnull CodeNode.Language language, @Nonnull Source source) {
+        Objects.requireNonNull(language);
+        Objects.requireNonNull(source);
+        return prewarm(language).handleAsync((v, e) -> {
+            PooledContext pooledContext;
+            try {
+                pooledContext = acquire(language);
+            } catch (RuntimeException acquireException) {
+                return Optional.empty();
+            }
+            try {
+                pooledContext.getContext().parse(source);
+            } catch (PolyglotException pe) {
+                if (pe.isSyntaxError()) {
+                    release(pooledContext);
+                    return Optional.of(pe.getMessage() == null ? "Unknown syntax error" : pe.getMessage());
+                }
+                discard(pooledContext);
+                return Optional.empty();
+            } catch (RuntimeException parseException) {
+                discard(pooledContext);
+                return Optional.empty();
+            }
+            release(pooledContext);
+            return Optional.empty();
+        }, prewarmer);
+    }
+
+    /**
+     * Takes a context without owner from the pool or creates a new one, to execute code that does not modify the context (parsing for example)
+     * @param language The language of the context
+     * @return The context, to give back with {@link ContextPool#release(PooledContext)} or {@link ContextPool#discard(PooledContext)}
+     */
+    public PooledContext acquire(@Nonnull CodeNode.Language language) {
+        return acquire(language, null);
+    }
+
+    /**
+     * Takes a context of an owner from the pool, a context without owner if the owner has no idle context, or creates a new one if no context is idle.
+     * The context then belongs to the owner.
+     * @param language The language of the context
+     * @param owner The owner executing code in the context (see {@link CodeNode}) or null to get a context without owner
+     * @return The context, to give back with {@link ContextPool#release(PooledContext)} or {@link ContextPool#discard(PooledContext)}
+     */
+    public PooledContext acquire(@Nonnull CodeNode.Language language, String owner) {
+        Objects.requireNonNull(language);
+        var expired = new LinkedList<PooledContext>();
+        PooledContext pooledContext;
+        synchronized (this) {
+            //The contexts are released in order, so the expired ones are at the start
+            var languageIdle = idle.get(language);
+            var now = System.currentTimeMillis();
+            while (!languageIdle.isEmpty() && now - languageIdle.peekFirst().lastReleased > idleTimeoutMs) {
+                expired.add(languageIdle.pollFirst());
+            }
+            //The most recently used context is the most likely to have its code already compiled
+            pooledContext = pollIdle(languageIdle, owner);
+            if (pooledContext == null && owner != null) {
+                pooledContext = pollIdle(languageIdle, null);
+            }
+            if (pooledContext != null) {
+                reused++;
+            }
+        }
+        expired.forEach(this::close);
+
+        if (pooledContext == null) {
+            var out = new LogOutputStream();
+            var statementLimitExceeded = new AtomicBoolean(false);
+            var contextBuilder = Context
+                .newBuilder(language.getGraalLanguageCode())
+                .engine(getEngine(language))
+                .allowHostAccess(HOST_ACCESS)
+                .out(out);
+            if (statementLimit > 0) {
+                contextBuilder.resourceLimits(
+                    ResourceLimits.newBuilder()
+                        .statementLimit(statementLimit, null)
+                        .onLimit(event -> statementLimitExceeded.set(true))
+                        .build()
+                );
+            }
+            pooledContext = new PooledContext(contextBuilder.build(), language, out, statementLimitExceeded);
+            synchronized (this) {
+                created++;
+            }
+        } else if (statementLimit > 0) {
+            //Every execution can run up to the limit
+            pooledContext.context.resetLimits();
+        }
+        if (owner != null) {
+            pooledContext.owner = owner;
+        }
+        pooledContext.setInUse(true);
+        return pooledContext;
+    }
+
+    /**
+     * Removes the most recently released idle context of an owner
+     * @param languageIdle The idle contexts of a language
+     * @param owner The owner or null for a context without owner
+     * @return The context or null if the owner has no idle context
+     */
+    private static PooledContext pollIdle(@Nonnull Deque<PooledContext> languageIdle, String owner) {
+        for (var iterator = languageIdle.descendingIterator(); iterator.hasNext(); ) {
+            var pooledContext = iterator.next();
+            if (Objects.equals(pooledContext.owner, owner)) {
+                iterator.remove();
+                return pooledContext;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Closes the idle contexts of an owner, so its next execution starts from a new context (after its code changed for example)
+     * @param owner The owner
+     */
+    public void discardIdle(@Nonnull String owner) {
+        Objects.requireNonNull(owner);
+        var toClose = new LinkedList<PooledContext>();
+        synchronized (this) {
+            idle.values().forEach(languageIdle -> languageIdle.removeIf(pooledContext -> {
+                if (owner.equals(pooledContext.owner)) {
+                    toClose.add(pooledContext);
+                    return true;
+                }
+                return false;
+            }));
+        }
+        toClose.forEach(this::close);
+    }
+
+    /**
+     * Gives back a context after a successful execution. The context is reset and put back in the pool if it can be reused, closed otherwise.
+     * @param pooledContext The context
+     */
+    public void release(@Nonnull PooledContext pooledContext) {
+        Objects.requireNonNull(pooledContext);
+        pooledContext.setLogLine(null);
+        pooledContext.uses++;
+        //After this, a cancellation does not close the context anymore
+        var isReset = pooledContext.setInUse(false);
+        try {
+            isReset = isReset && pooledContext.reset();
+        } catch (RuntimeException e) {
+            isReset = false;
+        }
+        if (isReset && pooledContext.uses < maxUses && maxIdlePerLanguage > 0) {
+            PooledContext evicted = null;
+            synchronized (this) {
+                var languageIdle = idle.get(pooledContext.language);
+                //The least recently used context leaves the place to the context released
+                if (languageIdle.size() >= maxIdlePerLanguage) {
+                    evicted = languageIdle.pollFirst();
+                }
+                pooledContext.lastReleased = System.currentTimeMillis();
+                languageIdle.addLast(pooledContext);
+            }
+            if (evicted != null) {
+                close(evicted);
+            }
+            return;
+        }
+        close(pooledContext);
+    }
+
+    /**
+     * Closes a context that must not be reused (after a failed or cancelled execution)
+     * @param pooledContext The context
+     */
+    public void discard(@Nonnull PooledContext pooledContext) {
+        //The lines written before the failure are still sent
+        Objects.requireNonNull(pooledContext).setLogLine(null);
+        pooledContext.setInUse(false);
+        close(pooledContext);
+    }
+
+    /**
+     * Closes a context, cancelling its execution if there is one
+     * @param pooledContext The context
+     */
+    private void close(@Nonnull PooledContext pooledContext) {
+        try {
+            pooledContext.context.close(true);
+        } catch (Exception ignored) { }
+        synchronized (this) {
+            closed++;
+        }
+    }
+
+    /**
+     * Closes all the idle contexts
+     */
+    public void clear() {
+        var toClose = new LinkedList<PooledContext>();
+        synchronized (this) {
+            idle.values().forEach(languageIdle -> {
+                toClose.addAll(languageIdle);
+                languageIdle.clear();
+            });
+        }
+        toClose.forEach(this::close);
+    }
+
+    /**
+     * Returns the current statistics
+     * @return The current statistics
+     */
+    public synchronized Stats getStats() {
+        return new Stats(created, reused, closed, idle.values().stream().mapToInt(Deque::size).sum());
+    }
+}
@@ -0,0 +1,165 @@
+package com.heig.entities.workflow.nodes;
+
+import org.eclipse.microprofile.config.ConfigProvider;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * The standard output of a {@link CodeNode}. The bytes are buffered until the end of a line, then the line is decoded as UTF-8
+ * (a line break can never be inside a multibyte character, so no character is split).<br>
+ * The complete lines are batched and sent together to the consumer, at most once every "code_log_flush_interval_ms" milliseconds
+ * (100 by default, from the quarkus config, 0 to send every line directly), so a node printing in a loop does not notify the listeners for every line.
+ * The remaining lines are sent when the consumer is changed, at the end of the execution.
+ */
+class LogOutputStream extends OutputStream {
+    /**
+     * The maximum number of bytes in a line or characters in a batch. A longer line is split, a bigger batch is sent directly.
+     */
+    private static final int MAX_SIZE = 64 * 1024;
+
+    private static final long FLUSH_INTERVAL_MS = ConfigProvider.getConfig().getOptionalValue("code_log_flush_interval_ms", Long.class).orElse(100L);
+
+    /**
+     * Sends the batches waiting when their interval is elapsed, shared by every stream
+     */
+    private static final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        var thread = new Thread(r, "code-log-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Consumer<String> logLine = null;
+
+    /**
+     * The bytes of the current line
+     */
+    private byte[] line = new byte[256];
+    private int lineLength = 0;
+
+    /**
+     * Used to write a single byte without allocating an array
+     */
+    private final byte[] single = new byte[1];
+
+    /**
+     * The complete lines not sent yet
+     */
+    private final StringBuilder batch = new StringBuilder();
+    private long lastSent = 0;
+    private boolean flushScheduled = false;
+
+    /**
+     * Sets the consumer of the lines, after sending everything written so far (including an incomplete line) to the previous consumer
+     * @param logLine The consumer of the lines or null to ignore them
+     */
+    public synchronized void setLogLine(Consumer<String> logLine) {
+        if (lineLength > 0) {
+            endLine(lineLength);
+        }
+        sendBatch();
+        this.logLine = logLine;
+    }
+
+    @Override
+    public synchronized void write(int b) {
+        single[0] = (byte) b;
+        write(single, 0, 1);
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) {
+        Objects.checkFromIndexSize(off, len, b.length);
+        var end = off + len;
+        while (off < end) {
+            //Copies up to the next line break
+            var lineEnd = off;
+            while (lineEnd < end && b[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            var isComplete = lineEnd < end;
+            if (isComplete) {
+                lineEnd++;
+            }
+            append(b, off, lineEnd - off);
+            if (isComplete) {
+                endLine(lineLength);
+            }
+            off = lineEnd;
+        }
+
+        if (batch.isEmpty()) {
+            return;
+        }
+        var now = System.currentTimeMillis();
+        if (batch.length() >= MAX_SIZE || now - lastSent >= FLUSH_INTERVAL_MS) {
+            sendBatch();
+        } else if (!flushScheduled) {
+            //Sends the lines even if nothing else is written
+            flushScheduled = true;
+            flusher.schedule(this::flushScheduled, FLUSH_INTERVAL_MS - (now - lastSent), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Appends bytes to the current line, ending the line first if it would be too long
+     * @param b The bytes
+     * @param off The start of the bytes
+     * @param len The number of bytes
+     */
+    private void append(byte[] b, int off, int len) {
+        while (lineLength + len > MAX_SIZE) {
+            var count = MAX_SIZE - lineLength;
+            System.arraycopy(b, off, ensureCapacity(MAX_SIZE), lineLength, count);
+            lineLength = MAX_SIZE;
+            off += count;
+            len -= count;
+            //Splits before the first byte of the last character, which may not be complete
+            var split = lineLength;
+            while (split > 0 && (line[split - 1] & 0xC0) == 0x80) {
+                split--;
+            }
+            endLine(split > 0 && line[split - 1] < 0 ? split - 1 : lineLength);
+        }
+        System.arraycopy(b, off, ensureCapacity(lineLength + len), lineLength, len);
+        lineLength += len;
+    }
+
+    private byte[] ensureCapacity(int capacity) {
+        if (line.length < capacity) {
+            line = Arrays.copyOf(line, Math.min(Math.max(capacity, line.length * 2), MAX_SIZE));
+        }
+        return line;
+    }
+
+    /**
+     * Adds the start of the current line to the batch and keeps the rest in the current line
+     * @param length The number of bytes to add
+     */
+    private void endLine(int length) {
+        if (logLine != null) {
+            batch.append(new String(line, 0, length, StandardCharsets.UTF_8));
+        }
+        System.arraycopy(line, length, line, 0, lineLength - length);
+        lineLength -= length;
+    }
+
+    private synchronized void flushScheduled() {
+        flushScheduled = false;
+        sendBatch();
+    }
+
+    private void sendBatch() {
+        if (!batch.isEmpty()) {
+            logLine.accept(batch.toString());
+            batch.setLength(0);
+            lastSent = System.currentTimeMillis();
+        }
+    }
+}
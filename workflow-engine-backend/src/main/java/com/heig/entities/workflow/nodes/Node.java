@@ -5,11 +5,14 @@ import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
 import com.heig.entities.workflow.connectors.Connector;
+import com.heig.entities.workflow.data.ContentDigest;
+import com.heig.entities.workflow.errors.WorkflowErrors;
 import com.heig.entities.workflow.execution.NodeArguments;
 import com.heig.entities.workflow.Workflow;
 import com.heig.entities.workflow.connectors.InputConnector;
 import com.heig.entities.workflow.connectors.OutputConnector;
 import com.heig.entities.workflow.types.WPrimitive;
+import com.heig.entities.workflow.types.WorkflowTypes;
 import com.heig.helpers.CustomJsonDeserializer;
 import com.heig.helpers.CustomJsonSerializer;
 import com.heig.helpers.Utils;
@@ -18,6 +21,7 @@ import jakarta.annotation.Nonnull;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -296,6 +300,7 @@ public abstract class Node {
 
         var removeSuccess = inputs.remove(input.getId()) != null;
         if (removeSuccess) {
+            workflow.graphModified();
             workflow.nodeModified(this);
         }
         return removeSuccess;
@@ -318,6 +323,7 @@ public abstract class Node {
 
         var removeSuccess = outputs.remove(output.getId()) != null;
         if (removeSuccess) {
+            workflow.graphModified();
             workflow.nodeModified(this);
         }
         return removeSuccess;
@@ -334,6 +340,7 @@ public abstract class Node {
         Objects.requireNonNull(connectorSupplier);
         var connector = connectorSupplier.apply(currentId.incrementAndGet());
         inputs.put(connector.getId(), connector);
+        workflow.graphModified();
         workflow.nodeModified(this);
         return connector;
     }
@@ -349,18 +356,32 @@ public abstract class Node {
         Objects.requireNonNull(connectorSupplier);
         var connector = connectorSupplier.apply(currentId.incrementAndGet());
         outputs.put(connector.getId(), connector);
+        workflow.graphModified();
         workflow.nodeModified(this);
         return connector;
     }
 
     /**
      * Executes the node
-     * @param inputs The inputs
+     * @param inputs The inputs, the big lists read from the cache are read-only (see {@link com.heig.entities.workflow.data.MappedList})
      * @param logLine The function allowing to log
      * @return The outputs
      */
     public abstract NodeArguments execute(@Nonnull NodeArguments inputs, @Nonnull Consumer<String> logLine);
 
+    /**
+     * Executes the node, giving the parts of the execution that can run in parallel to an executor (the chunks of a {@link CodeNode} in batch mode for example).
+     * A part given to the executor may not be started before the node needs its result, the node must then execute it itself.
+     * By default, the node is executed with {@link Node#execute(NodeArguments, Consumer)}
+     * @param inputs The inputs, the big lists read from the cache are read-only (see {@link com.heig.entities.workflow.data.MappedList})
+     * @param logLine The function allowing to log
+     * @param executor The executor of the parts of the execution running in parallel
+     * @return The outputs
+     */
+    public NodeArguments execute(@Nonnull NodeArguments inputs, @Nonnull Consumer<String> logLine, @Nonnull Executor executor) {
+        return execute(inputs, logLine);
+    }
+
     protected Connector.Builder getConnectorBuilder() {
         return connectorBuilder;
     }
@@ -409,7 +430,50 @@ public abstract class Node {
     }
 
     /**
-     * Function executed when the execution is finished or cancelled
+     * Adds the definition of the node to the digest : the type of the node and the name and type of its connectors.
+     * Two nodes having the same definition give the same outputs for the same inputs, so they can share their cache entries (even across workflows).
+     * The id of the node and of the connectors are not part of the definition.
+     * @param digest The digest to update
+     */
+    public void updateDefinitionDigest(@Nonnull ContentDigest digest) {
+        Objects.requireNonNull(digest);
+        digest.putString(getClass().getSimpleName());
+        digest.putInt(inputs.size());
+        for (var inputConnector : inputs.values().stream().sorted(Comparator.comparing(InputConnector::getName)).toList()) {
+            digest.putString(inputConnector.getName())
+                .putString(WorkflowTypes.typeToString(inputConnector.getType()))
+                .putByte((byte) (inputConnector.isOptional() ? 1 : 0));
+        }
+        digest.putInt(outputs.size());
+        for (var outputConnector : outputs.values().stream().sorted(Comparator.comparing(OutputConnector::getName)).toList()) {
+            digest.putString(outputConnector.getName())
+                .putString(WorkflowTypes.typeToString(outputConnector.getType()));
+        }
+    }
+
+    /**
+     * Adds the errors found in the definition of the node before it is executed (the syntax errors of a code for example)
+     * @param errors The errors to add to
+     */
+    public void addDefinitionErrors(@Nonnull WorkflowErrors errors) {
+        Objects.requireNonNull(errors);
+    }
+
+    /**
+     * Waits for the checks of the definition running in the background (the warmup of the code nodes for example),
+     * so {@link Node#addDefinitionErrors(WorkflowErrors)} reports all the errors. Called before the workflow is executed.
+     */
+    public void awaitDefinitionChecks() { }
+
+    /**
+     * Cancels every execution of the node in progress
      */
     public void cancel() { }
+
+    /**
+     * Cancels the execution of the node in progress on a thread, the other executions of the node (from other runs of the workflow) continue.
+     * By default, the node has nothing to cancel.
+     * @param thread The thread which called {@link Node#execute(NodeArguments, Consumer)}
+     */
+    public void cancel(@Nonnull Thread thread) { }
 }
@@ -0,0 +1,436 @@
+package com.heig.entities.workflow.nodes;
+
+import com.heig.entities.workflow.execution.NodeArguments;
+import com.heig.entities.workflow.types.WIterableType;
+import com.heig.entities.workflow.types.WPrimitive;
+import com.heig.entities.workflow.types.WorkflowTypes;
+import jakarta.annotation.Nonnull;
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Value;
+import org.graalvm.polyglot.proxy.ProxyArray;
+import org.graalvm.polyglot.proxy.ProxyExecutable;
+import org.graalvm.polyglot.proxy.ProxyObject;
+
+import java.lang.reflect.Array;
+import java.util.*;
+
+/**
+ * Converts the arguments of a {@link CodeNode} between the Java values of the workflow and the values of the code.<br>
+ * The inputs are not copied: a collection is given as an array ({@link ProxyArray}) and a map as a view,
+ * their elements being converted when the code reads them. Only a collection without random access is copied once to an array,
+ * otherwise every access by index would go through the list.
+ * The collections also have the methods of a Java list (size, get, add...) and both can be modified by the code:
+ * the first modification copies the collection or the map, so the value given by the workflow (and seen by the other nodes) never changes.<br>
+ * The outputs are converted once, directly from the values of the code and while the context is still usable.
+ * An input given back as an output is returned without being copied (or its copy if the code modified it).
+ */
+class PolyglotBridge {
+    /**
+     * A collection seen as an array by the code, with the methods of a {@link List}
+     */
+    private static class ListProxy implements ProxyArray, ProxyObject {
+        /**
+         * The methods of a {@link List} available to the code
+         */
+        private static final List<String> MEMBERS = List.of("length", "size", "isEmpty", "get", "set", "add", "remove", "clear", "contains", "indexOf");
+
+        /**
+         * The collection given by the workflow
+         */
+        private final Collection<?> collection;
+
+        /**
+         * The elements of the collection with random access
+         */
+        private List<?> elements;
+
+        /**
+         * The elements modified by the code, null while the code did not modify the collection
+         */
+        private List<Object> modified = null;
+
+        private ListProxy(@Nonnull Collection<?> collection) {
+            this.collection = Objects.requireNonNull(collection);
+            elements = collection instanceof List<?> list && list instanceof RandomAccess ? list : Arrays.asList(collection.toArray());
+        }
+
+        /**
+         * Returns the collection to give back to the workflow
+         * @return The collection given by the workflow or its modified copy
+         */
+        private Collection<?> current() {
+            return modified == null ? collection : modified;
+        }
+
+        /**
+         * Returns the elements that can be modified, the first call copies the elements of the workflow
+         * @return The modified elements
+         */
+        private List<Object> modifiable() {
+            if (modified == null) {
+                modified = new ArrayList<>(elements);
+                elements = modified;
+            }
+            return modified;
+        }
+
+        private int checkIndex(long index, int size) {
+            if (index < 0 || index >= size) {
+                throw new ArrayIndexOutOfBoundsException("Invalid index " + index);
+            }
+            return (int) index;
+        }
+
+        @Override
+        public Object get(long index) {
+            return toGuest(elements.get(checkIndex(index, elements.size())));
+        }
+
+        @Override
+        public void set(long index, Value value) {
+            modifiable().set(checkIndex(index, elements.size()), fromGuest(value));
+        }
+
+        @Override
+        public boolean remove(long index) {
+            modifiable().remove(checkIndex(index, elements.size()));
+            return true;
+        }
+
+        @Override
+        public long getSize() {
+            return elements.size();
+        }
+
+        @Override
+        public Object getMember(String key) {
+            return switch (key) {
+                case "length" -> elements.size();
+                case "size" -> (ProxyExecutable) arguments -> elements.size();
+                case "isEmpty" -> (ProxyExecutable) arguments -> elements.isEmpty();
+                case "get" -> (ProxyExecutable) arguments -> get(argument(arguments, 0).asLong());
+                case "set" -> (ProxyExecutable) arguments -> {
+                    var index = checkIndex(argument(arguments, 0).asLong(), elements.size());
+                    return toGuest(modifiable().set(index, fromGuest(argument(arguments, 1))));
+                };
+                case "add" -> (ProxyExecutable) arguments -> {
+                    if (arguments.length > 1) {
+                        modifiable().add(checkIndex(arguments[0].asLong(), elements.size() + 1), fromGuest(arguments[1]));
+                    } else {
+                        modifiable().add(fromGuest(argument(arguments, 0)));
+                    }
+                    return true;
+                };
+                //As with a Java list, a number is an index and the other values are elements
+                case "remove" -> (ProxyExecutable) arguments -> {
+                    var argument = argument(arguments, 0);
+                    if (argument.isNumber() && argument.fitsInInt()) {
+                        return toGuest(modifiable().remove(checkIndex(argument.asInt(), elements.size())));
+                    }
+                    return modifiable().remove(fromGuest(argument));
+                };
+                case "clear" -> (ProxyExecutable) arguments -> {
+                    modifiable().clear();
+                    return null;
+                };
+                case "contains" -> (ProxyExecutable) arguments -> elements.contains(fromGuest(argument(arguments, 0)));
+                case "indexOf" -> (ProxyExecutable) arguments -> elements.indexOf(fromGuest(argument(arguments, 0)));
+                default -> null;
+            };
+        }
+
+        @Override
+        public Object getMemberKeys() {
+            return ProxyArray.fromList(new ArrayList<>(MEMBERS));
+        }
+
+        @Override
+        public boolean hasMember(String key) {
+            return MEMBERS.contains(key);
+        }
+
+        @Override
+        public void putMember(String key, Value value) {
+            throw new UnsupportedOperationException("The members of a collection cannot be modified");
+        }
+
+        private static Value argument(Value[] arguments, int index) {
+            if (index >= arguments.length) {
+                throw new IllegalArgumentException("Missing argument " + index);
+            }
+            return arguments[index];
+        }
+    }
+
+    /**
+     * A map seen as a map by the code
+     */
+    private static class MapView extends AbstractMap<Object, Object> {
+        /**
+         * The map given by the workflow
+         */
+        private final Map<?, ?> map;
+
+        /**
+         * The map modified by the code, null while the code did not modify the map
+         */
+        private Map<Object, Object> modified = null;
+
+        private MapView(@Nonnull Map<?, ?> map) {
+            this.map = Objects.requireNonNull(map);
+        }
+
+        /**
+         * Returns the map to give back to the workflow
+         * @return The map given by the workflow or its modified copy
+         */
+        private Map<?, ?> current() {
+            return modified == null ? map : modified;
+        }
+
+        /**
+         * Returns the map that can be modified, the first call copies the map of the workflow
+         * @return The modified map
+         */
+        private Map<Object, Object> modifiable() {
+            if (modified == null) {
+                modified = new HashMap<>(map);
+            }
+            return modified;
+        }
+
+        @Override
+        public Object get(Object key) {
+            var value = current().get(key);
+            return value == null ? null : toGuest(value);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return current().containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return current().size();
+        }
+
+        @Override
+        public Object put(Object key, Object value) {
+            var previous = modifiable().put(toHost(key), toHost(value));
+            return previous == null ? null : toGuest(previous);
+        }
+
+        @Override
+        public Object remove(Object key) {
+            var previous = modifiable().remove(key);
+            return previous == null ? null : toGuest(previous);
+        }
+
+        @Override
+        public void clear() {
+            modifiable().clear();
+        }
+
+        @Override
+        public Set<Entry<Object, Object>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<Object, Object>> iterator() {
+                    var iterator = current().entrySet().iterator();
+                    return new Iterator<>() {
+                        @Override
+                        public boolean hasNext() {
+                            return iterator.hasNext();
+                        }
+
+                        @Override
+                        public Entry<Object, Object> next() {
+                            var entry = iterator.next();
+                            return new SimpleImmutableEntry<>(entry.getKey(), toGuest(entry.getValue()));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return current().size();
+                }
+            };
+        }
+    }
+
+    private PolyglotBridge() { }
+
+    /**
+     * Returns the arguments given to the code
+     * @param inputs The inputs of the node
+     * @return The arguments with the collections and maps wrapped
+     */
+    public static NodeArguments toGuest(@Nonnull NodeArguments inputs) {
+        Objects.requireNonNull(inputs);
+        var guestInputs = new NodeArguments();
+        inputs.getArguments().forEach((name, value) -> guestInputs.putArgument(name, toGuest(value)));
+        return guestInputs;
+    }
+
+    /**
+     * Returns a value given to the code
+     * @param value The value
+     * @return The value with the collections and maps wrapped
+     */
+    static Object toGuest(@Nonnull Object value) {
+        if (value instanceof Collection<?> collection) {
+            return new ListProxy(collection);
+        }
+        if (value instanceof Map<?, ?> map) {
+            return new MapView(map);
+        }
+        return value;
+    }
+
+    /**
+     * Returns elements as a packed array given to the code (see {@link CodeNode#getBatchSize()}) : an int[], long[], double[], boolean[] or String[]
+     * for the collections of these types, an array of values wrapped by {@link PolyglotBridge#toGuest(Object)} otherwise
+     * @param elements The elements
+     * @param valueType The type of the elements
+     * @return The packed array
+     */
+    static Object toPackedArray(@Nonnull List<?> elements, @Nonnull WIterableType valueType) {
+        Objects.requireNonNull(elements);
+        Objects.requireNonNull(valueType);
+        var size = elements.size();
+        if (valueType instanceof WPrimitive primitive) {
+            switch (primitive) {
+                case Integer -> {
+                    var array = new int[size];
+                    for (var i = 0; i < size; i++) {
+                        array[i] = ((Number) elements.get(i)).intValue();
+                    }
+                    return array;
+                }
+                case Long -> {
+                    var array = new long[size];
+                    for (var i = 0; i < size; i++) {
+                        array[i] = ((Number) elements.get(i)).longValue();
+                    }
+                    return array;
+                }
+                case Double -> {
+                    var array = new double[size];
+                    for (var i = 0; i < size; i++) {
+                        array[i] = ((Number) elements.get(i)).doubleValue();
+                    }
+                    return array;
+                }
+                case Boolean -> {
+                    var array = new boolean[size];
+                    for (var i = 0; i < size; i++) {
+                        array[i] = (java.lang.Boolean) elements.get(i);
+                    }
+                    return array;
+                }
+                case String -> {
+                    return elements.toArray(new java.lang.String[0]);
+                }
+                default -> { }
+            }
+        }
+        var array = new Object[size];
+        for (var i = 0; i < size; i++) {
+            array[i] = toGuest(elements.get(i));
+        }
+        return array;
+    }
+
+    /**
+     * Returns the elements of an output returned by a chunk (see {@link CodeNode#getBatchSize()})
+     * @param name The name of the output
+     * @param value The value of the output, a collection or an array
+     * @return The elements
+     */
+    static List<?> unpack(@Nonnull String name, @Nonnull Object value) {
+        Objects.requireNonNull(name);
+        Objects.requireNonNull(value);
+        if (value instanceof List<?> list) {
+            return list;
+        }
+        if (value instanceof Collection<?> collection) {
+            return new ArrayList<>(collection);
+        }
+        //The code can return the packed array it received
+        if (value.getClass().isArray()) {
+            var length = Array.getLength(value);
+            var list = new ArrayList<>(length);
+            for (var i = 0; i < length; i++) {
+                list.add(Array.get(value, i));
+            }
+            return list;
+        }
+        throw new RuntimeException("In batch mode, the output '%s' must be a collection".formatted(name));
+    }
+
+    /**
+     * Returns the outputs of the code converted to workflow values. Must be called before the context is used by another execution.
+     * @param context The context of the code
+     * @param outputs The outputs set by the code
+     * @return The converted outputs
+     */
+    public static NodeArguments fromGuest(@Nonnull Context context, @Nonnull NodeArguments outputs) {
+        Objects.requireNonNull(context);
+        Objects.requireNonNull(outputs);
+        var hostOutputs = new NodeArguments();
+        outputs.getArguments().forEach((name, value) -> hostOutputs.putArgument(name, fromGuest(context.asValue(value))));
+        return hostOutputs;
+    }
+
+    /**
+     * Returns a value given by the code to a method of a {@link MapView}
+     * @param value The value
+     * @return The value converted to a workflow value
+     */
+    private static Object toHost(Object value) {
+        if (value instanceof ListProxy listProxy) {
+            return listProxy.current();
+        }
+        if (value instanceof MapView mapView) {
+            return mapView.current();
+        }
+        if (value instanceof Value guestValue) {
+            return fromGuest(guestValue);
+        }
+        return value == null ? null : WorkflowTypes.fixObject(value);
+    }
+
+    private static Object fromGuest(@Nonnull Value value) {
+        //The inputs given back are not copied
+        if (value.isProxyObject() && value.asProxyObject() instanceof ListProxy listProxy) {
+            return listProxy.current();
+        }
+        if (value.isHostObject()) {
+            return toHost(value.asHostObject());
+        }
+        if (value.hasArrayElements()) {
+            var size = value.getArraySize();
+            if (size > Integer.MAX_VALUE) {
+                throw new RuntimeException("The array is too big");
+            }
+            var list = new ArrayList<>((int) size);
+            for (var i = 0; i < size; i++) {
+                list.add(fromGuest(value.getArrayElement(i)));
+            }
+            return list;
+        }
+        if (value.hasHashEntries()) {
+            var map = new HashMap<>();
+            var entries = value.getHashEntriesIterator();
+            while (entries.hasIteratorNextElement()) {
+                var entry = entries.getIteratorNextElement();
+                map.put(fromGuest(entry.getArrayElement(0)), fromGuest(entry.getArrayElement(1)));
+            }
+            return map;
+        }
+        //The other values (numbers, strings, objects...) are converted as before
+        return WorkflowTypes.fixObject(value.as(Object.class));
+    }
+}
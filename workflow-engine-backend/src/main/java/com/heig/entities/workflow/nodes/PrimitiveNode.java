@@ -5,6 +5,7 @@ import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
 import com.heig.entities.workflow.Workflow;
 import com.heig.entities.workflow.connectors.OutputConnector;
+import com.heig.entities.workflow.data.ContentDigest;
 import com.heig.entities.workflow.execution.NodeArguments;
 import com.heig.entities.workflow.types.WPrimitive;
 import com.heig.entities.workflow.types.WorkflowTypes;
@@ -72,16 +73,25 @@ public class PrimitiveNode extends Node {
      * @param value The value
      */
     public void setValue(@Nonnull Object value) {
+        checkValue(value);
+        if (this.value != value) {
+            this.value = value;
+            getWorkflow().nodeModified(this);
+        }
+    }
+
+    /**
+     * Checks that a value can be the value of the primitive node, without changing the node (used to override the value for a single run).
+     * Throws a {@link RuntimeException} if the value cannot be converted to the expected type.
+     * @param value The value
+     */
+    public void checkValue(@Nonnull Object value) {
         var outputType = output.getType();
         var valueType = WorkflowTypes.fromObject(value);
 
         if (!outputType.canBeConvertedFrom(valueType)) {
             throw new RuntimeException("The value (of type %s) cannot be converted to %s".formatted(valueType, outputType));
         }
-        if (this.value != value) {
-            this.value = value;
-            getWorkflow().nodeModified(this);
-        }
     }
 
     public OutputConnector getOutputConnector() {
@@ -93,6 +103,12 @@ public class PrimitiveNode extends Node {
         return "Primitive" + super.toString();
     }
 
+    @Override
+    public void updateDefinitionDigest(@Nonnull ContentDigest digest) {
+        super.updateDefinitionDigest(digest);
+        output.getType().updateDigest(digest, value);
+    }
+
     @Override
     public JsonObject toJson() {
         var obj = super.toJson();
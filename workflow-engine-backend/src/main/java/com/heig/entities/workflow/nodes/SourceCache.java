@@ -0,0 +1,122 @@
+package com.heig.entities.workflow.nodes;
+
+import com.heig.entities.workflow.data.ContentDigest;
+import jakarta.annotation.Nonnull;
+import org.eclipse.microprofile.config.ConfigProvider;
+import org.graalvm.polyglot.Source;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Cache of the {@link Source} executed by the {@link CodeNode} and of the {@link CodeModule}, identified by the language and the digest of the code.
+ * The sources are marked as cached, so the {@link org.graalvm.polyglot.Engine} shared by the contexts (see {@link ContextPool}) parses them only once
+ * and reuses their compiled code in every context, even for different nodes having the same code.
+ * At most "code_source_cache_size" sources are kept (256 by default, from the quarkus config), the least recently used is removed first.
+ */
+public class SourceCache {
+    /**
+     * The statistics of the cache
+     * @param hits The number of sources found in the cache
+     * @param misses The number of sources created
+     * @param entries The number of sources in the cache
+     */
+    public record Stats(long hits, long misses, int entries) { }
+
+    /**
+     * The key of a source
+     * @param language The language
+     * @param isModule True for the code of a module, false for the code of a node
+     * @param codeDigest The digest of the code written by the user
+     */
+    private record Key(CodeNode.Language language, boolean isModule, String codeDigest) { }
+
+    /**
+     * The cache used by every {@link CodeNode}
+     */
+    public static final SourceCache INSTANCE = new SourceCache(
+        ConfigProvider.getConfig().getOptionalValue("code_source_cache_size", Integer.class).orElse(256)
+    );
+
+    private final Map<Key, Source> sources;
+    private long hits = 0;
+    private long misses = 0;
+
+    SourceCache(int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("The size of the source cache must be greater than 0");
+        }
+        //Ordered by access, so the eldest entry is the least recently used
+        sources = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Source> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the source of a code, creating it if it is not in the cache
+     * @param language The language of the code
+     * @param code The code written by the user (see {@link CodeNode.Language#completeMain(String)})
+     * @return The source
+     */
+    public Source get(@Nonnull CodeNode.Language language, @Nonnull String code) {
+        return get(language, false, code);
+    }
+
+    /**
+     * Returns the source of a module, creating it if it is not in the cache
+     * @param module The module
+     * @return The source
+     */
+    public Source getModule(@Nonnull CodeModule module) {
+        Objects.requireNonNull(module);
+        return get(module.language(), true, module.code());
+    }
+
+    private Source get(@Nonnull CodeNode.Language language, boolean isModule, @Nonnull String code) {
+        Objects.requireNonNull(language);
+        Objects.requireNonNull(code);
+        var codeDigest = new ContentDigest().putString(code).toHexString();
+        var key = new Key(language, isModule, codeDigest);
+        synchronized (this) {
+            var source = sources.get(key);
+            if (source != null) {
+                hits++;
+                return source;
+            }
+        }
+
+        //Built outside the lock, two threads can build the same source but only one is kept
+        var source = Source
+            .newBuilder(
+                language.getGraalLanguageCode(),
+                isModule ? language.completeModule(code) : language.completeMain(code),
+                language.name().toLowerCase() + (isModule ? "-module-" : "-") + codeDigest.substring(0, 8)
+            )
+            .cached(true)
+            .buildLiteral();
+        synchronized (this) {
+            misses++;
+            var existing = sources.putIfAbsent(key, source);
+            return existing == null ? source : existing;
+        }
+    }
+
+    /**
+     * Removes all the sources
+     */
+    public synchronized void clear() {
+        sources.clear();
+    }
+
+    /**
+     * Returns the current statistics
+     * @return The current statistics
+     */
+    public synchronized Stats getStats() {
+        return new Stats(hits, misses, sources.size());
+    }
+}
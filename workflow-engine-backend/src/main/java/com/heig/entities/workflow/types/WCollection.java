@@ -1,7 +1,12 @@
 package com.heig.entities.workflow.types;
 
+import com.heig.entities.workflow.data.BinaryCodec;
+import com.heig.entities.workflow.data.ContentDigest;
 import jakarta.annotation.Nonnull;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -49,16 +54,56 @@ public class WCollection implements WIterableType {
     }
 
     @Override
-    public int getHashCode(@Nonnull Object value) {
-        if (value instanceof List<?> collection) {
-            return Arrays.hashCode(
-                collection
-                    .stream()
-                    .map(valueType::getHashCode)
-                    .toArray()
-            );
+    public void updateDigest(@Nonnull ContentDigest digest, @Nonnull Object value) {
+        Objects.requireNonNull(digest);
+        if (value instanceof Set<?> set) {
+            //The iteration order of a set is not defined, so the digests of the values are sorted before being added
+            digest.putString("Set").putInt(set.size());
+            set
+                .stream()
+                .map(v -> {
+                    var valueDigest = new ContentDigest();
+                    valueType.updateDigest(valueDigest, v);
+                    return valueDigest.toHexString();
+                })
+                .sorted()
+                .forEach(digest::putString);
+            return;
         }
-        throw new RuntimeException("WCollection should always be an instance of List");
+        if (value instanceof Collection<?> collection) {
+            digest.putString("List").putInt(collection.size());
+            for (var v : collection) {
+                valueType.updateDigest(digest, v);
+            }
+            return;
+        }
+        throw new RuntimeException("WCollection should always be an instance of Collection");
+    }
+
+    @Override
+    public void write(@Nonnull DataOutput output, @Nonnull Object value) throws IOException {
+        Objects.requireNonNull(output);
+        if (!(value instanceof Collection<?> collection)) {
+            throw new RuntimeException("WCollection should always be an instance of Collection");
+        }
+        //The kind of collection is kept so that a set is still a set when read from the cache
+        output.writeBoolean(value instanceof Set<?>);
+        BinaryCodec.writeVarInt(output, collection.size());
+        for (var v : collection) {
+            valueType.write(output, v);
+        }
+    }
+
+    @Override
+    public Object read(@Nonnull DataInput input) throws IOException {
+        Objects.requireNonNull(input);
+        var isSet = input.readBoolean();
+        var size = BinaryCodec.readVarInt(input);
+        Collection<Object> collection = isSet ? new HashSet<>() : new LinkedList<>();
+        for (var i = 0; i < size; i++) {
+            collection.add(valueType.read(input));
+        }
+        return collection;
     }
 
     @Override
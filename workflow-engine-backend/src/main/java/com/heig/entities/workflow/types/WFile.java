@@ -1,12 +1,12 @@
 package com.heig.entities.workflow.types;
 
+import com.heig.entities.workflow.data.BinaryCodec;
+import com.heig.entities.workflow.data.ContentDigest;
 import com.heig.entities.workflow.file.FileWrapper;
-import com.heig.helpers.Utils;
 import jakarta.annotation.Nonnull;
 
 import java.io.*;
 import java.util.Objects;
-import java.util.Optional;
 
 /**
  * Type representing a file
@@ -31,93 +31,92 @@ public class WFile implements WType {
     }
 
     /**
-     * Returns the directory from a file
-     * Example : <br>
-     * A file name "dir/test.jpg" will give "dir/test"
-     * @param file The file
-     * @return The directory obtained from the file path
+     * Markers written before the file
      */
-    private static File getDirForFile(@Nonnull File file) {
-        Objects.requireNonNull(file);
-
-        var nodeCacheDir = file.getParentFile();
-        var fileNameWithExt = file.getName();
-        var indexOf = fileNameWithExt.lastIndexOf(".");
-        var dirName = fileNameWithExt.substring(0, indexOf);
-        return new File(nodeCacheDir, dirName);
-    }
+    private static final byte NULL_FILE = 0, MISSING_FILE = 1, EXISTING_FILE = 2;
+
+    /**
+     * The size of the buffer used to copy the content of the files
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
 
     @Override
-    public void toFile(@Nonnull File output, @Nonnull Object value) {
+    public void write(@Nonnull DataOutput output, @Nonnull Object value) throws IOException {
+        Objects.requireNonNull(output);
         if (!(value instanceof FileWrapper fw)) {
             throw new RuntimeException("Value is not a FileWrapper");
         }
 
-        //Creates the cache directory named after the output file name
-        var dirForFile = getDirForFile(output);
-        if (dirForFile.exists()) {
-            Utils.deleteCompleteDirectory(dirForFile);
-        }
-        if (!dirForFile.mkdirs()) {
-            throw new RuntimeException("Could not create directory to cache the file");
-        }
-
-        //If the file is null we stop here
         if (fw.isFileNull()) {
+            output.writeByte(NULL_FILE);
+            return;
+        }
+        if (!fw.exists()) {
+            output.writeByte(MISSING_FILE);
+            BinaryCodec.writeString(output, fw.getFilePath());
             return;
         }
 
-        //We write the file relative path to the cache
-        WType.super.toFile(new File(dirForFile, "file.path"), fw.getFilePath());
-
-        //If the file exists, we save it's content to the cache
-        if (fw.exists()) {
-            try (var reader = fw.reader()) {
-                WType.super.toFile(new File(dirForFile, "file.obj"), reader.readAllText());
+        //The content of the file is copied by blocks, the file is never fully loaded in memory
+        var file = new File(FileWrapper.filesRootDirectory, fw.getFilePath());
+        var length = file.length();
+        output.writeByte(EXISTING_FILE);
+        BinaryCodec.writeString(output, fw.getFilePath());
+        BinaryCodec.writeVarLong(output, length);
+        try (var fis = new FileInputStream(file)) {
+            var buffer = new byte[BUFFER_SIZE];
+            var remaining = length;
+            while (remaining > 0) {
+                var read = fis.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read == -1) {
+                    throw new IOException("The file %s was modified while being written to the cache".formatted(fw.getFilePath()));
+                }
+                output.write(buffer, 0, read);
+                remaining -= read;
             }
         }
     }
 
     @Override
-    public Optional<Object> fromFile(@Nonnull File input) {
-        var dirForFile = getDirForFile(input);
-        if (!dirForFile.exists()) {
-            return Optional.empty();
+    public Object read(@Nonnull DataInput input) throws IOException {
+        Objects.requireNonNull(input);
+        var marker = input.readByte();
+        if (marker == NULL_FILE) {
+            return FileWrapper.NONE;
         }
 
-        var pathOpt = WType.super.fromFile(new File(dirForFile, "file.path"));
-        var dataOpt = WType.super.fromFile(new File(dirForFile, "file.obj"));
-
-        //If the file containing the cache doest not exist, it means that the file was null
-        if (pathOpt.isEmpty() || !(pathOpt.get() instanceof String path)) {
-            return Optional.of(FileWrapper.NONE);
+        var fileWrapper = new FileWrapper(BinaryCodec.readString(input));
+        if (marker == MISSING_FILE) {
+            //The file path was specified but the file didn't exist, we remove the file if it exists
+            if (fileWrapper.exists() && !fileWrapper.delete()) {
+                throw new RuntimeException("Could not delete file when loading from cache");
+            }
+            return fileWrapper;
         }
 
-        var fileWrapper = new FileWrapper(path);
-        if (dataOpt.isPresent() && dataOpt.get() instanceof String data) {
-            //If the "file.obj" file exists, get replace the file if it already exists and write the content that was saved in the cache
-            if (!fileWrapper.createOrReplace()) {
-                throw new RuntimeException("Failed to create or replace existing file");
-            }
-            try (var writer = fileWrapper.writer()) {
-                writer.write(data);
-            }
-        } else {
-            //If the "file.obj" file doesn't exist, that means that the file path was specified but the file didn't exist
-            //We remove the file if it exists
-            if (fileWrapper.exists()) {
-                if (!fileWrapper.delete()) {
-                    throw new RuntimeException("Could not delete file when loading from cache");
-                }
+        //Replaces the file if it already exists and writes the content that was saved in the cache
+        if (!fileWrapper.createOrReplace()) {
+            throw new RuntimeException("Failed to create or replace existing file");
+        }
+        var remaining = BinaryCodec.readVarLong(input);
+        try (var fos = new FileOutputStream(new File(FileWrapper.filesRootDirectory, fileWrapper.getFilePath()))) {
+            var buffer = new byte[BUFFER_SIZE];
+            while (remaining > 0) {
+                var length = (int) Math.min(buffer.length, remaining);
+                input.readFully(buffer, 0, length);
+                fos.write(buffer, 0, length);
+                remaining -= length;
             }
         }
-        return Optional.of(fileWrapper);
+        return fileWrapper;
     }
 
     @Override
-    public int getHashCode(@Nonnull Object value) {
+    public void updateDigest(@Nonnull ContentDigest digest, @Nonnull Object value) {
+        Objects.requireNonNull(digest);
         if (value instanceof FileWrapper fw) {
-            return fw.getContentHashCode();
+            fw.updateDigest(digest);
+            return;
         }
         throw new RuntimeException("WFile value should always be FileWrapper");
     }
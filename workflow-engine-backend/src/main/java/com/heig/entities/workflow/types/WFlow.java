@@ -1,10 +1,11 @@
 package com.heig.entities.workflow.types;
 
+import com.heig.entities.workflow.data.ContentDigest;
 import jakarta.annotation.Nonnull;
 
-import java.io.File;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.util.Objects;
-import java.util.Optional;
 
 /**
  * Type representing an operation flow
@@ -34,19 +35,18 @@ public class WFlow implements WType {
     }
 
     @Override
-    public void toFile(@Nonnull File output, @Nonnull Object value) {
-        //No need to save the input to a file as there are no data to save for a flow connector
+    public void write(@Nonnull DataOutput output, @Nonnull Object value) {
+        //No need to write anything as there are no data to save for a flow connector
     }
 
     @Override
-    public Optional<Object> fromFile(@Nonnull File input) {
-        return Optional.of(instance);
+    public Object read(@Nonnull DataInput input) {
+        return instance;
     }
 
     @Override
-    public int getHashCode(@Nonnull Object value) {
-        //Here value will always be the instance of WFlow, and we need to always have the same hashcode to use for the cache
-        //I don't want to modify the hashCode method of WFlow
-        return 1;
+    public void updateDigest(@Nonnull ContentDigest digest, @Nonnull Object value) {
+        //Here value will always be the instance of WFlow, and we need to always have the same digest to use for the cache
+        Objects.requireNonNull(digest).putString(toString());
     }
 }
@@ -1,8 +1,13 @@
 package com.heig.entities.workflow.types;
 
+import com.heig.entities.workflow.data.BinaryCodec;
+import com.heig.entities.workflow.data.ContentDigest;
 import io.smallrye.mutiny.tuples.Tuple2;
 import jakarta.annotation.Nonnull;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -59,24 +64,52 @@ public class WMap implements WIterableType {
     }
 
     @Override
-    public int getHashCode(@Nonnull Object value) {
+    public void updateDigest(@Nonnull ContentDigest digest, @Nonnull Object value) {
+        Objects.requireNonNull(digest);
         if (value instanceof Map<?, ?> map) {
-            return Arrays.hashCode(
-                map
-                    .entrySet()
-                    .stream()
-                    .map(entry ->
-                        Objects.hash(
-                            keyType.getHashCode(entry.getKey()),
-                            valueType.getHashCode(entry.getValue())
-                        )
-                    )
-                    .toArray()
-            );
+            //The iteration order of a map is not defined, so the digests of the entries are sorted before being added
+            digest.putString("Map").putInt(map.size());
+            map
+                .entrySet()
+                .stream()
+                .map(entry -> {
+                    var entryDigest = new ContentDigest();
+                    keyType.updateDigest(entryDigest, entry.getKey());
+                    valueType.updateDigest(entryDigest, entry.getValue());
+                    return entryDigest.toHexString();
+                })
+                .sorted()
+                .forEach(digest::putString);
+            return;
         }
         throw new RuntimeException("WMap should always be an instance of Map");
     }
 
+    @Override
+    public void write(@Nonnull DataOutput output, @Nonnull Object value) throws IOException {
+        Objects.requireNonNull(output);
+        if (!(value instanceof Map<?, ?> map)) {
+            throw new RuntimeException("WMap should always be an instance of Map");
+        }
+        BinaryCodec.writeVarInt(output, map.size());
+        for (var entry : map.entrySet()) {
+            keyType.write(output, entry.getKey());
+            valueType.write(output, entry.getValue());
+        }
+    }
+
+    @Override
+    public Object read(@Nonnull DataInput input) throws IOException {
+        Objects.requireNonNull(input);
+        var size = BinaryCodec.readVarInt(input);
+        var map = new HashMap<>();
+        for (var i = 0; i < size; i++) {
+            var key = keyType.read(input);
+            map.put(key, valueType.read(input));
+        }
+        return map;
+    }
+
     @Override
     public Map<?, ?> defaultValue() {
         return Map.of();
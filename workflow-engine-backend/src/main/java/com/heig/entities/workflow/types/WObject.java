@@ -1,7 +1,12 @@
 package com.heig.entities.workflow.types;
 
+import com.heig.entities.workflow.data.BinaryCodec;
+import com.heig.entities.workflow.data.ContentDigest;
 import jakarta.annotation.Nonnull;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Objects;
 
 /**
@@ -31,4 +36,34 @@ public class WObject implements WIterableType {
     public Object defaultValue() {
         return new Object();
     }
+
+    @Override
+    public void write(@Nonnull DataOutput output, @Nonnull Object value) throws IOException {
+        Objects.requireNonNull(output);
+        //The value can be of any type, so the real type is written before the value
+        var realType = WorkflowTypes.fromObject(value);
+        if (realType instanceof WObject) {
+            throw new RuntimeException("The value %s of type %s cannot be stored".formatted(value, value.getClass().getName()));
+        }
+        BinaryCodec.writeString(output, WorkflowTypes.typeToString(realType));
+        realType.write(output, value);
+    }
+
+    @Override
+    public Object read(@Nonnull DataInput input) throws IOException {
+        Objects.requireNonNull(input);
+        return WorkflowTypes.typeFromString(BinaryCodec.readString(input)).read(input);
+    }
+
+    @Override
+    public void updateDigest(@Nonnull ContentDigest digest, @Nonnull Object value) {
+        Objects.requireNonNull(digest);
+        //The value can be of any type (a List<Object> can contain files, maps, ...), so we use the real type of the value
+        var realType = WorkflowTypes.fromObject(value);
+        if (realType instanceof WObject) {
+            WIterableType.super.updateDigest(digest, value);
+        } else {
+            realType.updateDigest(digest, value);
+        }
+    }
 }
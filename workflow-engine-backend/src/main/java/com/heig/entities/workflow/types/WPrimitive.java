@@ -1,9 +1,14 @@
 package com.heig.entities.workflow.types;
 
 import com.google.gson.JsonElement;
+import com.heig.entities.workflow.data.BinaryCodec;
+import com.heig.entities.workflow.data.ContentDigest;
 import com.google.gson.JsonPrimitive;
 import jakarta.annotation.Nonnull;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Objects;
 import java.util.function.Function;
 
@@ -60,6 +65,65 @@ public enum WPrimitive implements WIterableType {
         return defaultValue;
     }
 
+    @Override
+    public void updateDigest(@Nonnull ContentDigest digest, @Nonnull Object value) {
+        Objects.requireNonNull(digest);
+        Objects.requireNonNull(value);
+        //The name of the type is added so that 1 (Integer) and 1L (Long) have different digests
+        digest.putString(name());
+        if (value instanceof String s) {
+            digest.putString(s);
+        } else if (value instanceof Long l) {
+            digest.putLong(l);
+        } else if (value instanceof Double d) {
+            digest.putLong(java.lang.Double.doubleToLongBits(d));
+        } else if (value instanceof Float f) {
+            digest.putInt(java.lang.Float.floatToIntBits(f));
+        } else if (value instanceof Number n) {
+            //Integer, Short and Byte fit in an int
+            digest.putInt(n.intValue());
+        } else if (value instanceof Character c) {
+            digest.putInt(c);
+        } else if (value instanceof Boolean b) {
+            digest.putByte((byte) (b ? 1 : 0));
+        } else {
+            throw new RuntimeException("Cannot compute the digest of " + value + " as a primitive");
+        }
+    }
+
+    @Override
+    public void write(@Nonnull DataOutput output, @Nonnull Object value) throws IOException {
+        Objects.requireNonNull(output);
+        Objects.requireNonNull(value);
+        //The integers are written as variable length integers, small values only use one byte
+        switch (this) {
+            case Integer, Short -> BinaryCodec.writeSignedVarInt(output, ((Number) value).intValue());
+            case Long -> BinaryCodec.writeSignedVarLong(output, ((Number) value).longValue());
+            case Byte -> output.writeByte(((Number) value).byteValue());
+            case Float -> output.writeFloat(((Number) value).floatValue());
+            case Double -> output.writeDouble(((Number) value).doubleValue());
+            case Boolean -> output.writeBoolean(value.equals(true));
+            case Character -> BinaryCodec.writeVarInt(output, value.toString().charAt(0));
+            case String -> BinaryCodec.writeString(output, value.toString());
+        }
+    }
+
+    @Override
+    public Object read(@Nonnull DataInput input) throws IOException {
+        Objects.requireNonNull(input);
+        return switch (this) {
+            case Integer -> BinaryCodec.readSignedVarInt(input);
+            case Short -> (short) BinaryCodec.readSignedVarInt(input);
+            case Long -> BinaryCodec.readSignedVarLong(input);
+            case Byte -> input.readByte();
+            case Float -> input.readFloat();
+            case Double -> input.readDouble();
+            case Boolean -> input.readBoolean();
+            case Character -> (char) BinaryCodec.readVarInt(input);
+            case String -> BinaryCodec.readString(input);
+        };
+    }
+
     public Object fromJsonElement(@Nonnull JsonElement value) {
         Objects.requireNonNull(value);
         return converter.apply(value);
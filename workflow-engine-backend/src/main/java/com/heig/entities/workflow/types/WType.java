@@ -1,11 +1,13 @@
 package com.heig.entities.workflow.types;
 
-import com.heig.entities.workflow.data.Data;
+import com.heig.entities.workflow.data.BinaryCodec;
+import com.heig.entities.workflow.data.ContentDigest;
 import jakarta.annotation.Nonnull;
 
-import java.io.*;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Objects;
-import java.util.Optional;
 
 /**
  * All types are implementing this interface
@@ -25,40 +27,30 @@ public interface WType {
     Object defaultValue();
 
     /**
-     * The process to store the value to a cache file
-     * @param output The output file name
-     * @param value The value to store
+     * Writes the value with the binary format of the cache (see {@link BinaryCodec})
+     * @param output The output
+     * @param value The value to write
+     * @throws IOException If the output cannot be written
      */
-    default void toFile(@Nonnull File output, @Nonnull Object value) {
-        try {
-            if (!output.createNewFile()) {
-                throw new RuntimeException("Could not create cache file type");
-            }
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-        Data.toFile(output, value);
-    }
+    void write(@Nonnull DataOutput output, @Nonnull Object value) throws IOException;
 
     /**
-     * The process to retrieve a value from a cache file
-     * @param input The file to retrieve from
-     * @return The object retrieved or {@link Optional#empty()} if it fails
+     * Reads a value written by {@link WType#write(DataOutput, Object)}
+     * @param input The input
+     * @return The value read
+     * @throws IOException If the input cannot be read
      */
-    default Optional<Object> fromFile(@Nonnull File input) {
-        if (!input.exists()) {
-            return Optional.empty();
-        }
-        return Data.fromFile(input);
-    }
+    Object read(@Nonnull DataInput input) throws IOException;
 
     /**
-     * Returns the hash code of the value in parameter
-     * @param value The value to get hash code from
-     * @return The hash code of the value in parameter
+     * Adds the content of the value in parameter to the digest. Two values having the same content must add the same bytes to the digest.
+     * By default, the class and the hash code of the value are used.
+     * @param digest The digest to update
+     * @param value The value to add to the digest
      */
-    default int getHashCode(@Nonnull Object value) {
+    default void updateDigest(@Nonnull ContentDigest digest, @Nonnull Object value) {
+        Objects.requireNonNull(digest);
         Objects.requireNonNull(value);
-        return value.hashCode();
+        digest.putString(value.getClass().getName()).putInt(value.hashCode());
     }
 }
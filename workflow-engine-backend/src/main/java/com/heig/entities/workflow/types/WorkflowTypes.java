@@ -1,5 +1,6 @@
 package com.heig.entities.workflow.types;
 
+import com.heig.entities.workflow.data.MappedList;
 import com.heig.entities.workflow.file.FileWrapper;
 import jakarta.annotation.Nonnull;
 
@@ -68,17 +69,22 @@ public class WorkflowTypes {
      * Used to have the same type for every execution.
      * Example before the function was introduced: 1st exec: PolyglotMap / 2nd exec: HashMap
      * Example now : 1st exec: HashMap / 2nd exec: HashMap
-     * The PolyglotMap is transformed to a PolyglotMap before being stored in the cache or being transferred to another node
+     * The PolyglotMap is transformed to a PolyglotMap before being stored in the cache or being transferred to another node.
+     * The collections become an {@link ArrayList}, so they can be read by index (see {@link java.util.RandomAccess}) without being copied again
      * @param o The object to fix the type
      * @return The fixed object
      */
     public static Object fixObject(@Nonnull Object o) {
         Objects.requireNonNull(o);
+        //A mapped list cannot be modified, it can be shared without being decoded
+        if (o instanceof MappedList) {
+            return o;
+        }
         if (o instanceof Collection<?> collection) {
             return collection
                 .stream()
                 .map(WorkflowTypes::fixObject)
-                .collect(Collectors.toCollection(LinkedList::new));
+                .collect(Collectors.toCollection(ArrayList::new));
         }
         if (o instanceof Map<?, ?> map) {
             return map
@@ -107,6 +113,10 @@ public class WorkflowTypes {
      */
     public static WType fromObject(@Nonnull Object o) {
         Objects.requireNonNull(o);
+        //The type of a mapped list is stored with it, so the list does not need to be decoded
+        if (o instanceof MappedList mappedList) {
+            return mappedList.getType();
+        }
         if (o instanceof Collection<?> collection) {
             var wTypeStream = collection.stream().map(WorkflowTypes::fromObject);
             var valueType = determineCommonTypeOf(ensureAllAreIterableTypes(wTypeStream));
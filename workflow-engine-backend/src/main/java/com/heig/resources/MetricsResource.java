@@ -0,0 +1,37 @@
+package com.heig.resources;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.heig.entities.workflow.data.CacheWriter;
+import com.heig.entities.workflow.data.MemoryCache;
+import com.heig.entities.workflow.execution.ExecutionPools;
+import com.heig.entities.workflow.execution.WorkflowManager;
+import com.heig.entities.workflow.nodes.ContextPool;
+import com.heig.entities.workflow.nodes.SourceCache;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+
+/**
+ * Exposes the counters of the caches and of the pools (hits, misses, evictions, ...) to monitor the engine
+ */
+@Path("/metrics")
+public class MetricsResource {
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public String metrics() {
+        var gson = new Gson();
+        var obj = new JsonObject();
+        obj.add("memoryCache", gson.toJsonTree(MemoryCache.INSTANCE.getStats()));
+        obj.add("cacheWriter", gson.toJsonTree(CacheWriter.INSTANCE.getStats()));
+        obj.add("contextPool", gson.toJsonTree(ContextPool.INSTANCE.getStats()));
+        obj.add("sourceCache", gson.toJsonTree(SourceCache.INSTANCE.getStats()));
+        obj.add("executionPool", gson.toJsonTree(ExecutionPools.get().getMetrics()));
+
+        var queues = new JsonObject();
+        WorkflowManager.getTaskQueueMetrics().forEach((uuid, metrics) -> queues.add(uuid.toString(), gson.toJsonTree(metrics)));
+        obj.add("workflowQueues", queues);
+        return gson.toJson(obj);
+    }
+}
@@ -11,6 +11,7 @@ import com.heig.entities.workflow.nodes.CodeNode;
 import com.heig.entities.workflow.nodes.ModifiableNode;
 import com.heig.entities.workflow.nodes.Node;
 import com.heig.entities.workflow.nodes.PrimitiveNode;
+import com.heig.entities.workflow.types.WPrimitive;
 import com.heig.helpers.ResultOrStringError;
 import com.heig.services.WorkflowService;
 import io.smallrye.mutiny.tuples.Tuple2;
@@ -108,6 +109,11 @@ public class WorkflowSocket {
             notifyConcerned(nodeStateJson(state));
         }
 
+        @Override
+        public void runStateChanged(@Nonnull WorkflowRun run) {
+            notifyConcerned(runStateJson(run));
+        }
+
         /**
          * Notifies the {@link Session} concerned when a node was created
          * @param node The node created
@@ -184,6 +190,21 @@ public class WorkflowSocket {
                     service.getWorkflowExecutor(obj.get("uuid")).continueWith(we ->
                         service.executeWorkflow(we)
                     );
+                case "submitRun" ->
+                    service.getWorkflowExecutor(obj.get("uuid")).continueWith(we ->
+                        service.submitWorkflowRun(we, obj.get("overrides")).continueWith(run -> ResultOrStringError.result(null))
+                    );
+                case "stopRun" ->
+                    service.getWorkflowExecutor(obj.get("uuid")).continueWith(we ->
+                        service.stopWorkflowRun(we, obj.get("runId"))
+                    );
+                case "removeRun" ->
+                    service.getWorkflowExecutor(obj.get("uuid")).continueWith(we ->
+                        service.removeWorkflowRun(we, obj.get("runId")).continueWith(v -> {
+                            listeners.get(we.getWorkflow().getUUID()).notifyConcerned(runRemovedJson(obj.get("runId").getAsString()));
+                            return ResultOrStringError.result(null);
+                        })
+                    );
                 case "saveWorkflow" ->
                     service.getWorkflowExecutor(obj.get("uuid")).continueWith(we ->
                         service.saveWorkflowExecutor(we)
@@ -211,6 +232,8 @@ public class WorkflowSocket {
                         weOpt.ifPresent(we -> {
                             sendTo(session, logJson(listeners.get(we.getWorkflow().getUUID()).getLog()));
                             sendTo(session, workflowStateJson(we));
+                            sendTo(session, modulesJson(we.getWorkflow()));
+                            we.getRuns().forEach(run -> sendTo(session, runStateJson(run)));
                             we.getWorkflow().getNodes().values().forEach(n -> {
                                 sendTo(session, nodeModifiedJson(n));
                                 sendTo(session, nodeStateJson(we.getStateFor(n)));
@@ -298,10 +321,25 @@ public class WorkflowSocket {
                             switch (obj.get("subAction").getAsString()) {
                                 case "code" -> service.changeCodeNodeCode(n, obj.get("code"));
                                 case "language" -> service.changeCodeNodeLanguage(n, obj.get("language"));
+                                case "batchSize" -> service.changeCodeNodeBatchSize(n, obj.get("batchSize"));
                                 default -> ResultOrStringError.error("subAction not recognized");
                             }
                         )
                     );
+                case "setModule" ->
+                    service.getWorkflow(obj.get("uuid")).continueWith(w ->
+                        service.setWorkflowModule(w, obj.get("name"), obj.get("language"), obj.get("code")).continueWith(v -> {
+                            listeners.get(w.getUUID()).notifyConcerned(modulesJson(w));
+                            return ResultOrStringError.result(null);
+                        })
+                    );
+                case "removeModule" ->
+                    service.getWorkflow(obj.get("uuid")).continueWith(w ->
+                        service.removeWorkflowModule(w, obj.get("name")).continueWith(v -> {
+                            listeners.get(w.getUUID()).notifyConcerned(modulesJson(w));
+                            return ResultOrStringError.result(null);
+                        })
+                    );
                 case "connect" ->
                     service.getWorkflow(obj.get("uuid")).continueWith(w ->
                         service.getNode(w, obj.get("fromNodeId"), Node.class).continueWith(fromNode ->
@@ -505,6 +543,13 @@ public class WorkflowSocket {
             }
             ns.add("execErrors", errors);
         }
+        state.getResourceUsage().ifPresent(usage -> {
+            var resourceUsage = new JsonObject();
+            resourceUsage.addProperty("wallTimeMs", usage.wallTimeMs());
+            resourceUsage.addProperty("cpuTimeMs", usage.cpuTimeMs());
+            resourceUsage.addProperty("allocatedBytes", usage.allocatedBytes());
+            ns.add("resourceUsage", resourceUsage);
+        });
         toReturn.add("nodeState", ns);
         return toReturn.toString();
     }
@@ -532,6 +577,77 @@ public class WorkflowSocket {
         return toReturn.toString();
     }
 
+    /**
+     * Converts the {@link WorkflowRun} state to a json representation
+     * @param run The {@link WorkflowRun}
+     * @return The {@link WorkflowRun} state as a json representation
+     */
+    private String runStateJson(@Nonnull WorkflowRun run) {
+        Objects.requireNonNull(run);
+
+        var toReturn = returnJsonObjectBase("runState");
+        var rs = new JsonObject();
+        rs.addProperty("runId", run.getId().toString());
+        rs.addProperty("state", run.getState().toString());
+        var overrides = new JsonObject();
+        run.getOverrides().forEach((nodeId, value) ->
+            run.getWorkflowExecutor().getWorkflow().getNode(nodeId).ifPresent(node -> {
+                if (node instanceof PrimitiveNode primitiveNode && primitiveNode.getOutputConnector().getType() instanceof WPrimitive wPrimitive) {
+                    overrides.add(nodeId.toString(), wPrimitive.toJsonElement(value));
+                }
+            })
+        );
+        rs.add("overrides", overrides);
+        var errors = new JsonArray();
+        for (var error : run.getErrors().getErrors()) {
+            errors.add(error.toJson());
+        }
+        //The errors of the nodes of the run
+        for (var ns : run.getNodeStates().values()) {
+            if (ns.getState() == State.FAILED && ns.getErrors().isPresent()) {
+                for (var error : ns.getErrors().get().getErrors()) {
+                    errors.add(error.toJson());
+                }
+            }
+        }
+        if (!errors.isEmpty()) {
+            rs.add("errors", errors);
+        }
+        rs.addProperty("log", run.getLog());
+        toReturn.add("runState", rs);
+        return toReturn.toString();
+    }
+
+    /**
+     * Converts the removal of a {@link WorkflowRun} to a json representation
+     * @param runId The id of the {@link WorkflowRun}
+     * @return The removal of the {@link WorkflowRun} as a json representation
+     */
+    private String runRemovedJson(@Nonnull String runId) {
+        Objects.requireNonNull(runId);
+
+        var toReturn = returnJsonObjectBase("runRemoved");
+        toReturn.addProperty("runId", runId);
+        return toReturn.toString();
+    }
+
+    /**
+     * Converts the modules of the {@link Workflow} to a json representation
+     * @param workflow The {@link Workflow}
+     * @return The modules as a json representation
+     */
+    private String modulesJson(@Nonnull Workflow workflow) {
+        Objects.requireNonNull(workflow);
+
+        var toReturn = returnJsonObjectBase("modules");
+        var arr = new JsonArray();
+        for (var module : workflow.getModules().values()) {
+            arr.add(module.toJson());
+        }
+        toReturn.add("modules", arr);
+        return toReturn.toString();
+    }
+
     /**
      * Converts the switch to a new workflow to a json representation
      * @param workflowUUID The workflow UUID
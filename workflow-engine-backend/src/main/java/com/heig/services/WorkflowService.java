@@ -7,9 +7,11 @@ import com.heig.entities.workflow.execution.State;
 import com.heig.entities.workflow.execution.WorkflowExecutionListener;
 import com.heig.entities.workflow.execution.WorkflowExecutor;
 import com.heig.entities.workflow.execution.WorkflowManager;
+import com.heig.entities.workflow.execution.WorkflowRun;
 import com.heig.entities.workflow.connectors.Connector;
 import com.heig.entities.workflow.connectors.InputConnector;
 import com.heig.entities.workflow.connectors.OutputConnector;
+import com.heig.entities.workflow.nodes.CodeModule;
 import com.heig.entities.workflow.nodes.CodeNode;
 import com.heig.entities.workflow.nodes.ModifiableNode;
 import com.heig.entities.workflow.nodes.Node;
@@ -23,6 +25,8 @@ import jakarta.enterprise.context.ApplicationScoped;
 
 import java.awt.*;
 import java.awt.geom.Point2D;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
@@ -92,9 +96,20 @@ public class WorkflowService {
         if (workflowExecutor.getState() == State.RUNNING) {
             return ResultOrStringError.error("Workflow executor is currently running");
         }
+        //The runs share the graph of the workflow
+        if (workflowExecutor.hasActiveRuns()) {
+            return ResultOrStringError.error("Workflow executor has runs in progress");
+        }
         return ResultOrStringError.result(null);
     }
 
+    private ResultOrStringError<WorkflowRun> getWorkflowRun(@Nonnull WorkflowExecutor workflowExecutor, @Nonnull UUID runId) {
+        Objects.requireNonNull(workflowExecutor);
+        Objects.requireNonNull(runId);
+
+        return workflowExecutor.getRun(runId).map(ResultOrStringError::result).orElseGet(() -> ResultOrStringError.error("Run not found"));
+    }
+
     private <T> ResultOrStringError<T> ensureNotRunning(@Nonnull Workflow workflow) {
         return getWorkflowExecutor(workflow.getUUID()).continueWith(this::ensureNotRunning);
     }
@@ -124,6 +139,41 @@ public class WorkflowService {
         return ResultOrStringError.result(null);
     }
 
+    public synchronized ResultOrStringError<WorkflowRun> submitWorkflowRun(@Nonnull WorkflowExecutor workflowExecutor, @Nonnull Map<Integer, Object> overrides) {
+        Objects.requireNonNull(workflowExecutor);
+        Objects.requireNonNull(overrides);
+
+        try {
+            return ResultOrStringError.result(workflowExecutor.submitRun(overrides));
+        } catch (Exception e) {
+            return ResultOrStringError.error("Failed to submit the run : " + e.getMessage());
+        }
+    }
+
+    public synchronized ResultOrStringError<Void> stopWorkflowRun(@Nonnull WorkflowExecutor workflowExecutor, @Nonnull UUID runId) {
+        Objects.requireNonNull(workflowExecutor);
+        Objects.requireNonNull(runId);
+
+        return getWorkflowRun(workflowExecutor, runId).continueWith(run -> {
+            if (!workflowExecutor.stopRun(run)) {
+                return ResultOrStringError.error("The run is already done");
+            }
+            return ResultOrStringError.result(null);
+        });
+    }
+
+    public synchronized ResultOrStringError<Void> removeWorkflowRun(@Nonnull WorkflowExecutor workflowExecutor, @Nonnull UUID runId) {
+        Objects.requireNonNull(workflowExecutor);
+        Objects.requireNonNull(runId);
+
+        return getWorkflowRun(workflowExecutor, runId).continueWith(run -> {
+            if (!workflowExecutor.removeRun(run)) {
+                return ResultOrStringError.error("The run is not done");
+            }
+            return ResultOrStringError.result(null);
+        });
+    }
+
     public synchronized ResultOrStringError<Void> saveWorkflowExecutor(@Nonnull WorkflowExecutor workflowExecutor) {
         Objects.requireNonNull(workflowExecutor);
         return ensureNotRunning(workflowExecutor).continueWith(v -> {
@@ -330,6 +380,47 @@ public class WorkflowService {
         });
     }
 
+    public synchronized ResultOrStringError<Void> setWorkflowModule(@Nonnull Workflow workflow, @Nonnull String name, @Nonnull String language, @Nonnull String code) {
+        Objects.requireNonNull(workflow);
+        Objects.requireNonNull(name);
+        Objects.requireNonNull(language);
+        Objects.requireNonNull(code);
+
+        return ensureNotRunning(workflow).continueWith(v -> {
+            try {
+                workflow.setModule(new CodeModule(name, CodeNode.Language.valueOf(language), code));
+                return ResultOrStringError.result(null);
+            } catch (Exception e) {
+                return ResultOrStringError.error("Failed to set the module : " + e.getMessage());
+            }
+        });
+    }
+
+    public synchronized ResultOrStringError<Void> removeWorkflowModule(@Nonnull Workflow workflow, @Nonnull String name) {
+        Objects.requireNonNull(workflow);
+        Objects.requireNonNull(name);
+
+        return ensureNotRunning(workflow).continueWith(v -> {
+            if (!workflow.removeModule(name)) {
+                return ResultOrStringError.error("Module not found");
+            }
+            return ResultOrStringError.result(null);
+        });
+    }
+
+    public synchronized ResultOrStringError<Void> changeCodeNodeBatchSize(@Nonnull CodeNode node, int newBatchSize) {
+        Objects.requireNonNull(node);
+
+        return ensureNotRunning(node.getWorkflow()).continueWith(v -> {
+            try {
+                node.setBatchSize(newBatchSize);
+                return ResultOrStringError.result(null);
+            } catch (Exception e) {
+                return ResultOrStringError.error("Failed to change the batch size : " + e.getMessage());
+            }
+        });
+    }
+
     public synchronized ResultOrStringError<Void> changeCodeNodeLanguage(@Nonnull CodeNode node, @Nonnull String newLanguage) {
         Objects.requireNonNull(node);
         Objects.requireNonNull(newLanguage);
@@ -337,6 +428,8 @@ public class WorkflowService {
         return ensureNotRunning(node.getWorkflow()).continueWith(v -> {
             var language = switch (newLanguage) {
                 case "JS" -> CodeNode.Language.JS;
+                case "PYTHON" -> CodeNode.Language.PYTHON;
+                case "RUBY" -> CodeNode.Language.RUBY;
                 default -> null;
             };
             if (language == null) {
@@ -510,6 +603,68 @@ public class WorkflowService {
         return changeCodeNodeLanguage(node, newLanguage.getAsString());
     }
 
+    public synchronized ResultOrStringError<Void> setWorkflowModule(@Nonnull Workflow workflow, @Nonnull JsonElement name, @Nonnull JsonElement language, @Nonnull JsonElement code) {
+        Objects.requireNonNull(workflow);
+        Objects.requireNonNull(name);
+        Objects.requireNonNull(language);
+        Objects.requireNonNull(code);
+
+        return setWorkflowModule(workflow, name.getAsString(), language.getAsString(), code.getAsString());
+    }
+
+    public synchronized ResultOrStringError<Void> removeWorkflowModule(@Nonnull Workflow workflow, @Nonnull JsonElement name) {
+        Objects.requireNonNull(workflow);
+        Objects.requireNonNull(name);
+
+        return removeWorkflowModule(workflow, name.getAsString());
+    }
+
+    public synchronized ResultOrStringError<Void> changeCodeNodeBatchSize(@Nonnull CodeNode node, @Nonnull JsonElement newBatchSize) {
+        Objects.requireNonNull(node);
+        Objects.requireNonNull(newBatchSize);
+
+        return changeCodeNodeBatchSize(node, newBatchSize.getAsInt());
+    }
+
+    public synchronized ResultOrStringError<WorkflowRun> submitWorkflowRun(@Nonnull WorkflowExecutor workflowExecutor, @Nonnull JsonElement overridesJson) {
+        Objects.requireNonNull(workflowExecutor);
+        Objects.requireNonNull(overridesJson);
+
+        //The overrides are given as an object with the id of the primitive nodes as keys
+        ResultOrStringError<Map<Integer, Object>> overrides = ResultOrStringError.result(new HashMap<>());
+        for (var entry : overridesJson.getAsJsonObject().entrySet()) {
+            overrides = overrides.continueWith(map -> {
+                try {
+                    var nodeId = Integer.parseInt(entry.getKey());
+                    return getNode(workflowExecutor.getWorkflow(), nodeId, PrimitiveNode.class).continueWith(node -> {
+                        if (node.getOutputConnector().getType() instanceof WPrimitive wPrimitive) {
+                            map.put(nodeId, wPrimitive.fromJsonElement(entry.getValue()));
+                            return ResultOrStringError.result(map);
+                        }
+                        throw new RuntimeException("Should never happen ! The wType of a primitive node is always a WPrimitive");
+                    });
+                } catch (NumberFormatException e) {
+                    return ResultOrStringError.error("Invalid node id : " + entry.getKey());
+                }
+            });
+        }
+        return overrides.continueWith(map -> submitWorkflowRun(workflowExecutor, map));
+    }
+
+    public synchronized ResultOrStringError<Void> stopWorkflowRun(@Nonnull WorkflowExecutor workflowExecutor, @Nonnull JsonElement runId) {
+        Objects.requireNonNull(workflowExecutor);
+        Objects.requireNonNull(runId);
+
+        return getUUID(runId).continueWith(id -> stopWorkflowRun(workflowExecutor, id));
+    }
+
+    public synchronized ResultOrStringError<Void> removeWorkflowRun(@Nonnull WorkflowExecutor workflowExecutor, @Nonnull JsonElement runId) {
+        Objects.requireNonNull(workflowExecutor);
+        Objects.requireNonNull(runId);
+
+        return getUUID(runId).continueWith(id -> removeWorkflowRun(workflowExecutor, id));
+    }
+
     public synchronized ResultOrStringError<Void> setNodePosition(@Nonnull Node node, @Nonnull JsonElement posX, @Nonnull JsonElement posY) {
         Objects.requireNonNull(node);
         Objects.requireNonNull(posX);
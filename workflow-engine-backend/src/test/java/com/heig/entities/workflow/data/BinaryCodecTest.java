@@ -0,0 +1,116 @@
+package com.heig.entities.workflow.data;
+
+import com.heig.entities.workflow.types.WCollection;
+import com.heig.entities.workflow.types.WPrimitive;
+import com.heig.entities.workflow.types.WorkflowTypes;
+import io.quarkus.test.junit.QuarkusTest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.util.*;
+
+@QuarkusTest
+public class BinaryCodecTest {
+    private static byte[] encode(String name, Object value) throws IOException {
+        var baos = new ByteArrayOutputStream();
+        try (var dos = new DataOutputStream(baos)) {
+            BinaryCodec.encode(dos, name, value);
+        }
+        return baos.toByteArray();
+    }
+
+    private static BinaryCodec.NamedValue decode(byte[] bytes) throws IOException {
+        try (var dis = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            return BinaryCodec.decode(dis);
+        }
+    }
+
+    private static boolean roundTrip(Object value) throws IOException {
+        var decoded = decode(encode("value", value));
+        return decoded.name().equals("value") && decoded.type() == WorkflowTypes.fromObject(value) && decoded.value().equals(value);
+    }
+
+    @Test
+    public void primitives() throws IOException {
+        for (var value : List.of(0, 1, -1, Integer.MAX_VALUE, Integer.MIN_VALUE)) {
+            assert roundTrip(value);
+        }
+        for (var value : List.of(0L, -1L, Long.MAX_VALUE, Long.MIN_VALUE)) {
+            assert roundTrip(value);
+        }
+        assert roundTrip((short) -12);
+        assert roundTrip((byte) -128);
+        assert roundTrip(1.5f);
+        assert roundTrip(Double.NaN);
+        assert roundTrip(true);
+        assert roundTrip('é');
+        assert roundTrip("");
+        assert roundTrip("Test with unicode : ✓");
+
+        //Small integers only use one byte
+        assert encode("", 5).length == encode("", 0).length;
+    }
+
+    @Test
+    public void iterables() throws IOException {
+        assert roundTrip(new LinkedList<>(List.of(1, 2, 3)));
+        assert roundTrip(new LinkedList<>(List.of(1, "a", (byte) 0, new LinkedList<>(List.of(1.0)))));
+        assert roundTrip(new HashMap<>(Map.of(1, "test", 3, "test2")));
+        assert roundTrip(new HashMap<>(Map.of("a", new HashMap<>(Map.of('c', 2L)), 3, new LinkedList<>())));
+
+        //A set must still be a set after being decoded
+        var decoded = decode(encode("set", new HashSet<>(Set.of("test1", "test2")))).value();
+        assert decoded instanceof Set<?> set && set.size() == 2 && set.contains("test1");
+
+        //A list is read with the type of its values
+        decoded = decode(encode("list", List.of(1, 2))).value();
+        assert decoded instanceof List<?> lst && lst.get(0) instanceof Integer;
+        assert WorkflowTypes.fromObject(decoded) == WCollection.of(WPrimitive.Integer);
+    }
+
+    @Test
+    public void mappedList() throws IOException {
+        var list = new LinkedList<Object>();
+        for (var i = 0; i < 1000; i++) {
+            list.add("value " + i);
+        }
+        var file = File.createTempFile("codec", ".bin");
+        file.deleteOnExit();
+
+        //Under the minimum size, the list is decoded completely
+        BinaryCodec.toFile(file, "list", list, 1001);
+        assert BinaryCodec.fromFile(file).value() instanceof LinkedList<?> decoded && decoded.equals(list);
+
+        BinaryCodec.toFile(file, "list", list, 1000);
+        var namedValue = BinaryCodec.fromFile(file);
+        assert namedValue.name().equals("list");
+        assert namedValue.value() instanceof MappedList;
+        var mappedList = (MappedList) namedValue.value();
+        assert mappedList.size() == 1000;
+        assert mappedList.get(500).equals("value 500");
+        assert mappedList.equals(list);
+
+        //The type and the digest are known without decoding the list
+        assert WorkflowTypes.fromObject(mappedList) == WCollection.of(WPrimitive.String);
+        assert ContentDigest.of(mappedList).equals(ContentDigest.of(list));
+        assert WorkflowTypes.fixObject(mappedList) == mappedList;
+
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> mappedList.get(1000));
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> mappedList.add("test"));
+
+        //Without a mapped file, the list is read sequentially
+        try (var dis = new DataInputStream(new FileInputStream(file))) {
+            assert BinaryCodec.decode(dis).value() instanceof LinkedList<?> decoded && decoded.equals(list);
+        }
+    }
+
+    @Test
+    public void invalid() {
+        //Not encoded by the codec
+        Assertions.assertThrows(IOException.class, () -> decode(new byte[] { 1, 2, 3, 4 }));
+
+        //Objects without a workflow type cannot be encoded
+        Assertions.assertThrows(RuntimeException.class, () -> encode("obj", List.of(new Object())));
+    }
+}
@@ -3,7 +3,9 @@ package com.heig.entities.workflow.data;
 import com.google.common.collect.Sets;
 import com.heig.entities.workflow.Workflow;
 import com.heig.entities.workflow.execution.*;
+import com.heig.entities.workflow.nodes.CodeNode;
 import com.heig.entities.workflow.types.*;
+import com.heig.helpers.Utils;
 import com.heig.testHelpers.TestUtils;
 import groovy.lang.Tuple2;
 import io.quarkus.test.junit.QuarkusTest;
@@ -11,7 +13,13 @@ import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 import static com.heig.testHelpers.TestUtils.createWorkflowExecutor;
 
@@ -244,6 +252,311 @@ public class CacheTest {
         );
     }
 
+    @Test
+    public void memoryCache() {
+        var we = createWorkflowExecutor("test-w");
+        var w = we.getWorkflow();
+        var node = w.getNodeBuilder().buildCodeNode();
+        node.getConnectorBuilder().buildOutputConnector("out", WCollection.of(WPrimitive.Integer));
+
+        var cache = Data.getOrCreate(we).getCache();
+        var arguments = new NodeArguments();
+        arguments.putArgument("out", new LinkedList<>(List.of(1, 2, 3)));
+        cache.set(node, new NodeArguments(), arguments);
+
+        //The value was written through to the memory cache, the next retrieval is a hit
+        var hitsBefore = MemoryCache.INSTANCE.getStats().hits();
+        var resReturn = cache.get(node, new NodeArguments());
+        assert resReturn.isPresent();
+        assert MemoryCache.INSTANCE.getStats().hits() == hitsBefore + 1;
+
+        //Modifying the value returned must not modify the value in the cache
+        var lst = (List<Integer>) resReturn.get().getArgument("out").get();
+        lst.add(4);
+        var resReturn2 = cache.get(node, new NodeArguments());
+        assert resReturn2.isPresent() && resReturn2.get().getArgument("out").get() instanceof List<?> lst2 && lst2.size() == 3;
+
+        //After clearing the cache, the memory cache must not return the value anymore
+        cache.clear();
+        assert cache.get(node, new NodeArguments()).isEmpty();
+    }
+
+    @Test
+    public void memoryCacheEviction() {
+        var memoryCache = new MemoryCache(1000);
+        for (var i = 0; i < 10; i++) {
+            var args = new NodeArguments();
+            args.putArgument("out", "a".repeat(100));
+            memoryCache.put(String.valueOf(i), args);
+        }
+
+        //Each entry uses around 240 bytes, only the 4 most recently used can stay in the cache
+        var stats = memoryCache.getStats();
+        assert stats.sizeBytes() <= 1000;
+        assert stats.evictions() == 10 - stats.entries();
+        assert memoryCache.get("0").isEmpty();
+        assert memoryCache.get("9").isPresent();
+        assert memoryCache.getStats().misses() == 1;
+        assert memoryCache.getStats().hits() == 1;
+    }
+
+    @Test
+    public void sharedStore() {
+        var we1 = createWorkflowExecutor("test-w1");
+        var we2 = createWorkflowExecutor("test-w2");
+        var node1 = we1.getWorkflow().getNodeBuilder().buildCodeNode();
+        var node2 = we2.getWorkflow().getNodeBuilder().buildCodeNode();
+        for (var node : List.of(node1, node2)) {
+            node.getConnectorBuilder().buildInputConnector("in", WPrimitive.Integer);
+            node.getConnectorBuilder().buildOutputConnector("shared", WPrimitive.String);
+            node.setCode("outputs.put('shared', 'value');");
+        }
+
+        var inputs = new NodeArguments();
+        inputs.putArgument("in", 1);
+        var outputs = new NodeArguments();
+        outputs.putArgument("shared", "value");
+
+        var cache1 = Data.getOrCreate(we1).getCache();
+        var cache2 = Data.getOrCreate(we2).getCache();
+        cache1.set(node1, inputs, outputs);
+
+        //The second workflow has an identical node, it can use the entry stored by the first workflow
+        var resReturn = cache2.get(node2, inputs);
+        assert resReturn.isPresent() && resReturn.get().getArgument("shared").orElse("").equals("value");
+
+        //The entry is still used by the second workflow after the first workflow cleared its cache
+        cache1.clear();
+        MemoryCache.INSTANCE.clear();
+        assert cache2.get(node2, inputs).isPresent();
+
+        //Once nobody uses the entry, it is deleted
+        cache2.clear();
+        MemoryCache.INSTANCE.clear();
+        assert cache1.get(node1, inputs).isEmpty();
+
+        //A node with a different code does not use the same entry
+        cache1.set(node1, inputs, outputs);
+        node2.setCode("outputs.put('shared', 'other');");
+        assert cache2.get(node2, inputs).isEmpty();
+    }
+
+    @Test
+    public void multipleEntries() throws IOException {
+        var we = createWorkflowExecutor("test-w");
+        var node = we.getWorkflow().getNodeBuilder().buildCodeNode();
+        node.getConnectorBuilder().buildInputConnector("param", WPrimitive.Integer);
+        node.getConnectorBuilder().buildOutputConnector("paramResult", WPrimitive.Integer);
+        var cache = Data.getOrCreate(we).getCache();
+
+        Function<Integer, NodeArguments> argsOf = value -> {
+            var args = new NodeArguments();
+            args.putArgument("param", value);
+            return args;
+        };
+        Function<Integer, NodeArguments> resultOf = value -> {
+            var args = new NodeArguments();
+            args.putArgument("paramResult", value * 10);
+            return args;
+        };
+
+        //Switching between two values keeps both results in the cache
+        cache.set(node, argsOf.apply(1), resultOf.apply(1));
+        cache.set(node, argsOf.apply(2), resultOf.apply(2));
+        var res1 = cache.get(node, argsOf.apply(1));
+        assert res1.isPresent() && res1.get().getArgument("paramResult").orElse(0).equals(10);
+        var res2 = cache.get(node, argsOf.apply(2));
+        assert res2.isPresent() && res2.get().getArgument("paramResult").orElse(0).equals(20);
+
+        //A hit does not write the info file of the node, only a new entry does
+        var infoFile = new File(Data.dataRootDirectory, we.getWorkflow().getUUID() + "/cache/" + node.getId() + "/.info");
+        var info = Files.readAllLines(infoFile.toPath());
+        assert cache.get(node, argsOf.apply(1)).isPresent();
+        assert Files.readAllLines(infoFile.toPath()).equals(info);
+
+        //Filling the cache of the node evicts an entry
+        cache.get(node, argsOf.apply(1));
+        for (var i = 3; i <= Cache.getMaxEntriesPerNode() + 1; i++) {
+            cache.set(node, argsOf.apply(i), resultOf.apply(i));
+        }
+        if (Cache.getEvictionPolicy() == Cache.EvictionPolicy.LRU) {
+            //The value 2 is the least recently used
+            assert cache.get(node, argsOf.apply(2)).isEmpty();
+            assert cache.get(node, argsOf.apply(1)).isPresent();
+        } else {
+            assert cache.get(node, argsOf.apply(1)).isEmpty();
+            assert cache.get(node, argsOf.apply(2)).isPresent();
+        }
+        assert cache.get(node, argsOf.apply(Cache.getMaxEntriesPerNode() + 1)).isPresent();
+    }
+
+    @Test
+    public void peek() {
+        var we = createWorkflowExecutor("test-w");
+        var node = we.getWorkflow().getNodeBuilder().buildCodeNode();
+        node.getConnectorBuilder().buildInputConnector("param", WPrimitive.Integer);
+        node.getConnectorBuilder().buildOutputConnector("paramResult", WPrimitive.Integer);
+        //The entries are not shared with the nodes of the other tests
+        node.setCode("//peek");
+        var cache = Data.getOrCreate(we).getCache();
+
+        Function<Integer, NodeArguments> argsOf = value -> {
+            var args = new NodeArguments();
+            args.putArgument("param", value);
+            return args;
+        };
+        Function<Integer, NodeArguments> resultOf = value -> {
+            var args = new NodeArguments();
+            args.putArgument("paramResult", value * 10);
+            return args;
+        };
+
+        for (var i = 1; i <= Cache.getMaxEntriesPerNode(); i++) {
+            cache.set(node, argsOf.apply(i), resultOf.apply(i));
+        }
+        assert cache.peek(node, argsOf.apply(0)).isEmpty();
+
+        //The entries are also read from the disk, without being put in memory
+        CacheWriter.INSTANCE.flush();
+        MemoryCache.INSTANCE.clear();
+        var res = cache.peek(node, argsOf.apply(1));
+        assert res.isPresent() && res.get().getArgument("paramResult").orElse(0).equals(10);
+        assert MemoryCache.INSTANCE.getStats().entries() == 0;
+
+        //Peeking does not make the entry recently used, it is still the first one evicted
+        cache.set(node, argsOf.apply(Cache.getMaxEntriesPerNode() + 1), resultOf.apply(Cache.getMaxEntriesPerNode() + 1));
+        assert cache.peek(node, argsOf.apply(1)).isEmpty();
+        assert cache.peek(node, argsOf.apply(2)).isPresent();
+        cache.clear();
+    }
+
+    @Test
+    public void writeBehind() throws IOException {
+        var we = createWorkflowExecutor("test-w");
+        var node = we.getWorkflow().getNodeBuilder().buildCodeNode();
+        node.getConnectorBuilder().buildOutputConnector("out", WPrimitive.String);
+        var cache = Data.getOrCreate(we).getCache();
+        var arguments = new NodeArguments();
+        arguments.putArgument("out", "value");
+
+        //The outputs can be read even if the writer did not write them yet
+        cache.set(node, new NodeArguments(), arguments);
+        assert cache.get(node, new NodeArguments()).isPresent();
+
+        //Once written, the outputs are read from the store
+        CacheWriter.INSTANCE.flush();
+        assert CacheWriter.INSTANCE.getStats().pending() == 0;
+        MemoryCache.INSTANCE.clear();
+        var resReturn = cache.get(node, new NodeArguments());
+        assert resReturn.isPresent() && resReturn.get().getArgument("out").orElse("").equals("value");
+
+        //With a separate store, each durability writes the entries once they are flushed
+        for (var durability : CacheWriter.Durability.values()) {
+            var store = new CacheStore(Files.createTempDirectory("store").toFile());
+            var writer = new CacheWriter(store, durability, 1);
+            for (var i = 0; i < 10; i++) {
+                var digest = ContentDigest.of(durability.name() + i);
+                store.addReference(digest, "ref");
+                writer.write(digest, arguments);
+            }
+            writer.flush();
+            assert writer.getStats().pending() == 0;
+            for (var i = 0; i < 10; i++) {
+                assert store.contains(ContentDigest.of(durability.name() + i));
+            }
+            Utils.deleteCompleteDirectory(store.getRootDirectory());
+        }
+
+        //An entry that is not referenced anymore is not written
+        var store = new CacheStore(Files.createTempDirectory("store").toFile());
+        var writer = new CacheWriter(store, CacheWriter.Durability.ASYNC, 1);
+        writer.write(ContentDigest.of("unreferenced"), arguments);
+        writer.flush();
+        assert !store.contains(ContentDigest.of("unreferenced"));
+        Utils.deleteCompleteDirectory(store.getRootDirectory());
+    }
+
+    @Test
+    public void mappedListLifetime() throws IOException, InterruptedException {
+        var store = new CacheStore(Files.createTempDirectory("store").toFile());
+        var digest = ContentDigest.of("mapped");
+        var arguments = new NodeArguments();
+        arguments.putArgument("out", new ArrayList<>(Collections.nCopies(10000, "value")));
+        store.addReference(digest, "ref");
+        store.write(digest, arguments, false);
+
+        //The entry is not deleted while a list read from it is used
+        var list = store.get(digest, "ref").orElseThrow().getArgument("out").orElseThrow();
+        assert list instanceof MappedList;
+        store.removeReference(digest, "ref");
+        assert store.contains(digest);
+        assert ((List<?>) list).get(9999).equals("value");
+
+        //It is deleted once the list is collected
+        list = null;
+        for (var i = 0; i < 100 && store.contains(digest); i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assert !store.contains(digest);
+        Utils.deleteCompleteDirectory(store.getRootDirectory());
+    }
+
+    @Test
+    public void concurrentNodes() throws InterruptedException {
+        var we = createWorkflowExecutor("test-w");
+        var nodes = new ArrayList<CodeNode>();
+        for (var i = 0; i < 16; i++) {
+            var node = we.getWorkflow().getNodeBuilder().buildCodeNode();
+            node.getConnectorBuilder().buildInputConnector("param", WPrimitive.Integer);
+            node.getConnectorBuilder().buildOutputConnector("paramResult", WPrimitive.Integer);
+            //Each node has a different code, so the nodes do not share their entries
+            node.setCode("outputs.put('paramResult', " + i + ");");
+            nodes.add(node);
+        }
+        var cache = Data.getOrCreate(we).getCache();
+
+        //Every thread sets and gets the entries of all the nodes, starting with a different node
+        var threads = 8;
+        var errors = Collections.synchronizedList(new LinkedList<Throwable>());
+        var executor = Executors.newFixedThreadPool(threads);
+        for (var t = 0; t < threads; t++) {
+            var start = t;
+            executor.execute(() -> {
+                try {
+                    for (var i = 0; i < 200; i++) {
+                        var node = nodes.get((start + i) % nodes.size());
+                        var value = i % 4;
+                        var inputs = new NodeArguments();
+                        inputs.putArgument("param", value);
+                        var outputs = new NodeArguments();
+                        outputs.putArgument("paramResult", value * 10);
+                        cache.set(node, inputs, outputs);
+                        var res = cache.get(node, inputs);
+                        if (res.isEmpty() || !res.get().getArgument("paramResult").orElse(-1).equals(value * 10)) {
+                            throw new AssertionError("Wrong cache value for node " + node.getId());
+                        }
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            });
+        }
+        executor.shutdown();
+        assert executor.awaitTermination(1, TimeUnit.MINUTES);
+        assert errors.isEmpty();
+
+        //The entries are still readable from the disk
+        CacheWriter.INSTANCE.flush();
+        MemoryCache.INSTANCE.clear();
+        for (var node : nodes) {
+            var inputs = new NodeArguments();
+            inputs.putArgument("param", 3);
+            assert cache.get(node, inputs).isPresent();
+        }
+        cache.clear();
+    }
+
     @AfterAll
     public static void delete() {
         //Delete everything if there was still a data directory
@@ -34,6 +34,9 @@ public class SaveTest {
                 @Override
                 public void nodeStateChanged(@Nonnull NodeState state) { }
 
+                @Override
+                public void runStateChanged(@Nonnull WorkflowRun run) { }
+
                 @Override
                 public void newLogLine(@Nonnull String line) { }
 
@@ -81,6 +84,9 @@ public class SaveTest {
             @Override
             public void nodeStateChanged(@Nonnull NodeState state) { }
 
+            @Override
+            public void runStateChanged(@Nonnull WorkflowRun run) { }
+
             @Override
             public void newLogLine(@Nonnull String line) { }
 
@@ -107,6 +113,9 @@ public class SaveTest {
             @Override
             public void nodeStateChanged(@Nonnull NodeState state) { }
 
+            @Override
+            public void runStateChanged(@Nonnull WorkflowRun run) { }
+
             @Override
             public void newLogLine(@Nonnull String line) { }
 
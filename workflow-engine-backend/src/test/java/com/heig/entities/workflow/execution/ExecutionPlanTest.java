@@ -0,0 +1,74 @@
+package com.heig.entities.workflow.execution;
+
+import com.heig.testHelpers.TestScenario;
+import io.quarkus.test.junit.QuarkusTest;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+@QuarkusTest
+public class ExecutionPlanTest {
+    @Test
+    public void compile() {
+        var scenario = new TestScenario();
+        var plan = ExecutionPlan.compile(scenario.w);
+        assert plan.size() == scenario.w.getNodes().size();
+
+        //The primitive nodes are the roots
+        var roots = Arrays.stream(plan.getRoots()).mapToObj(plan::getNode).toList();
+        assert roots.size() == 3;
+        assert roots.containsAll(List.of(scenario.nodeNum1, scenario.nodeNum2, scenario.nodeStr));
+
+        var add = plan.indexOf(scenario.nodeAdd).orElseThrow();
+        var repeat = plan.indexOf(scenario.nodeStringRepeat).orElseThrow();
+        assert plan.getPendingInputs(add) == 2;
+        assert plan.getPendingInputs(repeat) == 2;
+        assert plan.getEdges(add).length == 1;
+        assert plan.getEdges(add)[0].target() == repeat;
+        assert plan.getEdges(add)[0].inputId() == scenario.timesInput.getId();
+
+        //The node is ready when its last input arrives, every run starts with all the inputs missing
+        var run = plan.newRun();
+        assert !run.inputReceived(add);
+        assert run.inputReceived(add);
+        assert !plan.newRun().inputReceived(add);
+
+        //The plan is compiled again when the graph changes
+        assert plan.isUpToDate(scenario.w);
+        scenario.nodeNum1.setValue(2);
+        assert plan.isUpToDate(scenario.w);
+        scenario.w.disconnect(scenario.num1Input);
+        assert !plan.isUpToDate(scenario.w);
+        assert ExecutionPlan.compile(scenario.w).getPendingInputs(add) == 1;
+    }
+
+    @Test
+    public void criticalPath() {
+        var scenario = new TestScenario();
+        var plan = ExecutionPlan.compile(scenario.w);
+        var add = plan.indexOf(scenario.nodeAdd).orElseThrow();
+        var repeat = plan.indexOf(scenario.nodeStringRepeat).orElseThrow();
+        var num1 = plan.indexOf(scenario.nodeNum1).orElseThrow();
+        var str = plan.indexOf(scenario.nodeStr).orElseThrow();
+
+        var durations = new long[plan.size()];
+        Arrays.fill(durations, 1);
+        durations[add] = 100;
+        var weights = plan.getCriticalPathWeights(durations);
+
+        //num1 -> add -> repeat -> log is longer than str -> repeat -> log
+        assert weights[repeat] == 2;
+        assert weights[add] == 102;
+        assert weights[num1] == 103;
+        assert weights[str] == 3;
+        assert weights[num1] > weights[str];
+
+        //The recent durations count more
+        var state = new NodeState(scenario.nodeAdd);
+        assert state.getAverageDurationMs().isEmpty();
+        state.recordDuration(100);
+        state.recordDuration(200);
+        assert state.getAverageDurationMs().get() == 150;
+    }
+}
@@ -0,0 +1,88 @@
+package com.heig.entities.workflow.execution;
+
+import com.heig.entities.workflow.Workflow;
+import com.heig.entities.workflow.errors.ResourceLimitExceeded;
+import io.quarkus.test.junit.QuarkusTest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+
+@QuarkusTest
+public class ResourceMonitorTest {
+    @Test
+    public void cpuTimeLimit() {
+        var monitor = new ResourceMonitor(50, 0, 5);
+        var node = new Workflow("resource-monitor").getNodeBuilder().buildCodeNode();
+        var execution = monitor.start(node);
+
+        //Uses the CPU until the monitor detects it (or 5 seconds if the CPU time is not supported)
+        var end = System.currentTimeMillis() + 5_000;
+        var value = 0.0;
+        while (execution.getExceeded().isEmpty() && System.currentTimeMillis() < end) {
+            value += Math.sqrt(value + 1);
+        }
+        var usage = execution.stop();
+        assert value > 0;
+        if (usage.cpuTimeMs() >= 0) {
+            assert execution.getExceeded().isPresent();
+            assert execution.getExceeded().get().getResource() == ResourceLimitExceeded.Resource.CPU_TIME;
+            assert usage.cpuTimeMs() >= 50;
+        }
+        assert usage.wallTimeMs() >= usage.cpuTimeMs();
+    }
+
+    @Test
+    public void allocationLimit() {
+        var monitor = new ResourceMonitor(0, 10_000_000, 5);
+        var node = new Workflow("resource-monitor").getNodeBuilder().buildCodeNode();
+        var execution = monitor.start(node);
+
+        var end = System.currentTimeMillis() + 5_000;
+        var kept = new ArrayList<byte[]>();
+        while (execution.getExceeded().isEmpty() && System.currentTimeMillis() < end) {
+            kept.add(new byte[1024]);
+            if (kept.size() > 1000) {
+                kept.clear();
+            }
+        }
+        var usage = execution.stop();
+        if (usage.allocatedBytes() >= 0) {
+            assert execution.getExceeded().isPresent();
+            assert execution.getExceeded().get().getResource() == ResourceLimitExceeded.Resource.ALLOCATED_MEMORY;
+            assert usage.allocatedBytes() > 10_000_000;
+        }
+    }
+
+    @Test
+    public void partsOnOtherThreads() throws InterruptedException {
+        var monitor = new ResourceMonitor(0, 10_000_000, 5);
+        var node = new Workflow("resource-monitor").getNodeBuilder().buildCodeNode();
+        var execution = monitor.start(node);
+
+        //A part of the execution allocates on another thread, the limit of the node is still exceeded
+        var part = new Thread(() -> execution.runPart(() -> {
+            var end = System.currentTimeMillis() + 5_000;
+            var kept = new ArrayList<byte[]>();
+            while (execution.getExceeded().isEmpty() && System.currentTimeMillis() < end) {
+                kept.add(new byte[1024]);
+                if (kept.size() > 1000) {
+                    kept.clear();
+                }
+            }
+        }));
+        part.start();
+        part.join();
+        var usage = execution.stop();
+        if (usage.allocatedBytes() >= 0) {
+            assert execution.getExceeded().isPresent();
+            assert usage.allocatedBytes() > 10_000_000;
+        }
+    }
+
+    @Test
+    public void invalidLimits() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new ResourceMonitor(-1, 0, 50));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new ResourceMonitor(0, 0, 0));
+    }
+}
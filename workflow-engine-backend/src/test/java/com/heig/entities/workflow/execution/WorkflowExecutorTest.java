@@ -1,13 +1,22 @@
 package com.heig.entities.workflow.execution;
 
+import com.heig.entities.workflow.Workflow;
 import com.heig.entities.workflow.data.Data;
+import com.heig.entities.workflow.nodes.PrimitiveNode;
+import com.heig.entities.workflow.types.WPrimitive;
 import com.heig.testHelpers.TestScenario;
+import com.heig.testHelpers.TestUtils;
 import io.quarkus.test.junit.QuarkusTest;
 import jakarta.annotation.Nonnull;
 import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 @QuarkusTest
@@ -35,6 +44,9 @@ public class WorkflowExecutorTest {
                     System.out.println(state.getNode().getId() + " -> " + state.getState());
                 }
 
+                @Override
+                public void runStateChanged(@Nonnull WorkflowRun run) { }
+
                 @Override
                 public void newLogLine(@Nonnull String line) { }
 
@@ -53,6 +65,126 @@ public class WorkflowExecutorTest {
         executor.clearCache();
     }
 
+    @Test
+    public void incremental() throws InterruptedException {
+        var w = new Workflow("incremental-test");
+        var node = TestUtils.createPrimitiveNode(w, WPrimitive.Integer).getV2();
+        node.setValue(1);
+        var currentState = new AtomicReference<State>();
+        var executions = new AtomicInteger(0);
+        var executor = new WorkflowExecutor(w,
+            new WorkflowExecutionListener() {
+                @Override
+                public void workflowStateChanged(@Nonnull WorkflowExecutor we) {
+                    currentState.set(we.getState());
+                }
+
+                @Override
+                public void nodeStateChanged(@Nonnull NodeState state) {
+                    if (state.getState() == State.RUNNING) {
+                        executions.incrementAndGet();
+                    }
+                }
+
+                @Override
+                public void runStateChanged(@Nonnull WorkflowRun run) { }
+
+                @Override
+                public void newLogLine(@Nonnull String line) { }
+
+                @Override
+                public void clearLog() { }
+            }
+        );
+        executor.setIncremental(true);
+
+        //The first execution executes every node
+        executeAndWait(executor, currentState);
+        assert executions.get() == 1;
+        assert executor.getStateFor(node).getLastOutputs().isPresent();
+
+        //The node is clean, its outputs are reused
+        executeAndWait(executor, currentState);
+        assert executions.get() == 1;
+
+        //The node is dirty after a modification
+        node.setValue(2);
+        executeAndWait(executor, currentState);
+        assert executions.get() == 2;
+
+        executor.clearCache();
+        executeAndWait(executor, currentState);
+        assert executions.get() == 3;
+        executor.delete();
+    }
+
+    @Test
+    public void runs() throws Exception {
+        var w = new Workflow("runs-test");
+        var node = TestUtils.createPrimitiveNode(w, WPrimitive.Integer).getV2();
+        node.setValue(1);
+        var runNotifications = new AtomicInteger(0);
+        var executor = new WorkflowExecutor(w,
+            new WorkflowExecutionListener() {
+                @Override
+                public void workflowStateChanged(@Nonnull WorkflowExecutor we) { }
+
+                @Override
+                public void nodeStateChanged(@Nonnull NodeState state) { }
+
+                @Override
+                public void runStateChanged(@Nonnull WorkflowRun run) {
+                    runNotifications.incrementAndGet();
+                }
+
+                @Override
+                public void newLogLine(@Nonnull String line) { }
+
+                @Override
+                public void clearLog() { }
+            }
+        );
+        executor.setMaxConcurrentRuns(2);
+
+        //Each run gives its own value to the primitive node
+        var runs = new ArrayList<WorkflowRun>();
+        for (var i = 0; i < 5; i++) {
+            runs.add(executor.submitRun(Map.of(node.getId(), i * 10)));
+        }
+        for (var i = 0; i < runs.size(); i++) {
+            var run = runs.get(i);
+            assert run.getCompletion().get(5, TimeUnit.SECONDS) == State.FINISHED;
+            assert run.getOutputs(node).orElseThrow().getArgument(PrimitiveNode.OUTPUT_NAME).orElseThrow().equals(i * 10);
+        }
+        //Submitted, started and done
+        assert runNotifications.get() == 15;
+        assert !executor.hasActiveRuns();
+        assert executor.getRuns().equals(runs);
+
+        //The workflow and its node states are not modified by the runs
+        assert executor.getStateFor(node).getState() == State.IDLE;
+        assert executor.getStateFor(node).getLastOutputs().isEmpty();
+        assert !executor.getStateFor(node).hasBeenModified();
+
+        //The overrides are checked when the run is submitted
+        Assertions.assertThrows(IllegalArgumentException.class, () -> executor.submitRun(Map.of(node.getId(), "text")));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> executor.submitRun(Map.of(-1, 1)));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> executor.setMaxConcurrentRuns(0));
+
+        assert executor.removeRun(runs.get(0));
+        assert executor.getRun(runs.get(0).getId()).isEmpty();
+        executor.delete();
+    }
+
+    private static void executeAndWait(WorkflowExecutor executor, AtomicReference<State> currentState) throws InterruptedException {
+        currentState.set(null);
+        assert executor.executeWorkflow();
+        while (currentState.get() != State.FINISHED && currentState.get() != State.FAILED) {
+            Thread.sleep(10);
+        }
+        assert currentState.get() == State.FINISHED;
+    }
+
     @AfterAll
     public static void delete() {
         //Delete everything if there was still a data directory
@@ -0,0 +1,212 @@
+package com.heig.entities.workflow.execution;
+
+import io.quarkus.test.junit.QuarkusTest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@QuarkusTest
+public class WorkflowTaskQueueTest {
+    @Test
+    public void maxConcurrentNodes() throws InterruptedException {
+        var pool = new ThreadPoolExecutionPool(1, 4, 2);
+        var queue = new WorkflowTaskQueue(() -> pool);
+
+        var running = new AtomicInteger(0);
+        var maxRunning = new AtomicInteger(0);
+        var nbTasks = 10;
+        var latch = new CountDownLatch(nbTasks);
+        for (var i = 0; i < nbTasks; i++) {
+            queue.execute(() -> {
+                var current = running.incrementAndGet();
+                maxRunning.accumulateAndGet(current, Math::max);
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException ignored) { }
+                running.decrementAndGet();
+                latch.countDown();
+            });
+        }
+
+        assert latch.await(5, TimeUnit.SECONDS);
+        //The pool has 4 threads, but the workflow can only execute 2 nodes at the same time
+        assert maxRunning.get() <= 2;
+
+        //Wait for the last task to be marked as finished
+        var metrics = queue.getMetrics();
+        for (var i = 0; i < 100 && metrics.completed() != nbTasks; i++) {
+            Thread.sleep(10);
+            metrics = queue.getMetrics();
+        }
+        assert metrics.completed() == nbTasks;
+        assert metrics.queued() == 0;
+        assert metrics.running() == 0;
+
+        pool.shutdown();
+    }
+
+    @Test
+    public void priority() throws InterruptedException {
+        var pool = new ThreadPoolExecutionPool(1, 1, 1);
+        var queue = new WorkflowTaskQueue(() -> pool);
+
+        //The first task blocks the queue while the others are queued
+        var release = new CountDownLatch(1);
+        queue.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException ignored) { }
+        });
+        var order = new ConcurrentLinkedQueue<Integer>();
+        var finished = new CountDownLatch(4);
+        for (var priority : List.of(1, 3, 2, 3)) {
+            queue.execute(() -> {
+                order.add(priority);
+                finished.countDown();
+            }, priority);
+        }
+        assert queue.getMetrics().queued() == 4;
+        release.countDown();
+
+        //The highest priorities first
+        assert finished.await(5, TimeUnit.SECONDS);
+        assert List.copyOf(order).equals(List.of(3, 3, 2, 1));
+
+        pool.shutdown();
+    }
+
+    @Test
+    public void fairShare() throws InterruptedException {
+        var pool = new ThreadPoolExecutionPool(1, 1, 1);
+        var scheduler = new WorkflowScheduler(() -> pool, 0);
+        var blocker = new WorkflowTaskQueue(scheduler);
+        var big = new WorkflowTaskQueue(scheduler);
+        var small = new WorkflowTaskQueue(scheduler);
+        big.setWeight(2);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> small.setWeight(0));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> small.setQuota(-1));
+
+        //The first task blocks the pool while the others are queued
+        var release = new CountDownLatch(1);
+        blocker.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException ignored) { }
+        });
+        var order = new ConcurrentLinkedQueue<String>();
+        var finished = new CountDownLatch(12);
+        for (var i = 0; i < 6; i++) {
+            big.execute(() -> {
+                order.add("big");
+                finished.countDown();
+            });
+        }
+        for (var i = 0; i < 6; i++) {
+            small.execute(() -> {
+                order.add("small");
+                finished.countDown();
+            });
+        }
+        assert big.getMetrics().queued() == 6;
+        assert small.getMetrics().queued() == 6;
+        release.countDown();
+
+        //The big workflow gets twice the slots while both are waiting, the small one is not starved
+        assert finished.await(5, TimeUnit.SECONDS);
+        var firstNine = List.copyOf(order).subList(0, 9);
+        assert firstNine.stream().filter("big"::equals).count() == 6;
+        assert firstNine.stream().filter("small"::equals).count() == 3;
+
+        pool.shutdown();
+    }
+
+    @Test
+    public void quota() throws InterruptedException {
+        var pool = new ThreadPoolExecutionPool(1, 4, 4);
+        var queue = new WorkflowTaskQueue(() -> pool);
+        queue.setQuota(1);
+
+        var running = new AtomicInteger(0);
+        var maxRunning = new AtomicInteger(0);
+        var nbTasks = 6;
+        var latch = new CountDownLatch(nbTasks);
+        for (var i = 0; i < nbTasks; i++) {
+            queue.execute(() -> {
+                var current = running.incrementAndGet();
+                maxRunning.accumulateAndGet(current, Math::max);
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException ignored) { }
+                running.decrementAndGet();
+                latch.countDown();
+            });
+        }
+
+        assert latch.await(5, TimeUnit.SECONDS);
+        //The pool allows 4 nodes per workflow, but the quota is 1
+        assert maxRunning.get() == 1;
+
+        pool.shutdown();
+    }
+
+    @Test
+    public void rejected() throws InterruptedException {
+        //A pool shut down refuses the tasks
+        var pool = new ThreadPoolExecutionPool(1, 2, 2);
+        pool.shutdown();
+        var queue = new WorkflowTaskQueue(() -> pool);
+
+        //The rejection is given to the handler of the task, it is not thrown to the caller
+        var executed = new AtomicInteger(0);
+        var rejected = new CompletableFuture<Void>();
+        queue.execute(executed::incrementAndGet, 0, rejected::completeExceptionally);
+        Assertions.assertThrows(ExecutionException.class, () -> rejected.get(5, TimeUnit.SECONDS));
+        queue.execute(executed::incrementAndGet);
+        assert executed.get() == 0;
+
+        //The rejected tasks do not keep their slots
+        var metrics = queue.getMetrics();
+        assert metrics.running() == 0;
+        assert metrics.queued() == 0;
+        assert metrics.completed() == 0;
+    }
+
+    @Test
+    public void virtualThreads() throws InterruptedException {
+        //Virtual threads are only available from Java 21
+        if (!VirtualThreadExecutionPool.isSupported()) {
+            return;
+        }
+        var pool = new VirtualThreadExecutionPool(1, 10_000);
+        var queue = new WorkflowTaskQueue(() -> pool);
+
+        //Every task is blocked at the same time, this would need 1000 platform threads
+        var nbTasks = 1000;
+        var started = new CountDownLatch(nbTasks);
+        var release = new CountDownLatch(1);
+        var finished = new CountDownLatch(nbTasks);
+        for (var i = 0; i < nbTasks; i++) {
+            queue.execute(() -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ignored) { }
+                finished.countDown();
+            });
+        }
+
+        assert started.await(5, TimeUnit.SECONDS);
+        assert pool.getMetrics().nodeActiveThreads() == nbTasks;
+        release.countDown();
+        assert finished.await(5, TimeUnit.SECONDS);
+
+        pool.shutdown();
+    }
+}
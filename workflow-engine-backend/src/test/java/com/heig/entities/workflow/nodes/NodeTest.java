@@ -1,12 +1,25 @@
 package com.heig.entities.workflow.nodes;
 
 import com.heig.entities.workflow.Workflow;
+import com.heig.entities.workflow.data.ContentDigest;
+import com.heig.entities.workflow.errors.CodeSyntaxError;
+import com.heig.entities.workflow.errors.WorkflowErrors;
+import com.heig.entities.workflow.execution.NodeArguments;
+import com.heig.entities.workflow.types.WCollection;
 import com.heig.entities.workflow.types.WPrimitive;
+import com.heig.entities.workflow.types.WorkflowTypes;
 import com.heig.testHelpers.TestScenario;
 import io.quarkus.test.junit.QuarkusTest;
+import org.graalvm.polyglot.proxy.ProxyArray;
+import org.graalvm.polyglot.proxy.ProxyExecutable;
+import org.graalvm.polyglot.proxy.ProxyObject;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
 @QuarkusTest
 public class NodeTest {
 
@@ -154,4 +167,281 @@ public class NodeTest {
         assert outputConn.isPresent();
         assert outputConn.get().isOptional();
     }
+
+    @Test
+    public void codeNodeContextPool() {
+        var w = new Workflow("context-pool");
+        var n = w.getNodeBuilder().buildCodeNode();
+        n.getConnectorBuilder().buildOutputConnector("out", WPrimitive.Integer);
+        //The code creates a global, it must not be visible in the next execution
+        n.setCode("outputs.put('out', typeof leaked === 'undefined' ? 1 : 2); leaked = true;");
+
+        var createdBefore = ContextPool.INSTANCE.getStats().created();
+        for (var i = 0; i < 5; i++) {
+            var outputs = n.execute(new NodeArguments(), line -> { });
+            assert outputs.getArgument("out").orElse(0).equals(1);
+        }
+        //The context is reused between the executions
+        assert ContextPool.INSTANCE.getStats().created() - createdBefore <= 1;
+        assert ContextPool.INSTANCE.getStats().reused() >= 4;
+
+        //The built-in objects modified by a node are not seen by the nodes of another workflow
+        n.setCode("outputs.put('out', Array.prototype.leaked === undefined ? 1 : 2); Array.prototype.leaked = true;");
+        assert n.execute(new NodeArguments(), line -> { }).getArgument("out").orElse(0).equals(1);
+        var other = new Workflow("context-pool-other").getNodeBuilder().buildCodeNode();
+        other.getConnectorBuilder().buildOutputConnector("out", WPrimitive.Integer);
+        other.setCode("outputs.put('out', Array.prototype.leaked === undefined ? 1 : 2);");
+        for (var i = 0; i < 5; i++) {
+            assert other.execute(new NodeArguments(), line -> { }).getArgument("out").orElse(0).equals(1);
+        }
+
+        //A failed execution does not give its context back
+        n.setCode("throw new Error('failure');");
+        var closedBefore = ContextPool.INSTANCE.getStats().closed();
+        Assertions.assertThrows(RuntimeException.class, () -> n.execute(new NodeArguments(), line -> { }));
+        assert ContextPool.INSTANCE.getStats().closed() == closedBefore + 1;
+    }
+
+    @Test
+    public void codeNodeSourceCache() {
+        var sourceCache = new SourceCache(2);
+        var source = sourceCache.get(CodeNode.Language.JS, "outputs.put('out', 1);");
+        //The same code uses the same source
+        assert sourceCache.get(CodeNode.Language.JS, "outputs.put('out', 1);") == source;
+        assert sourceCache.getStats().hits() == 1;
+        assert sourceCache.getStats().misses() == 1;
+
+        //The least recently used source is removed
+        sourceCache.get(CodeNode.Language.JS, "outputs.put('out', 2);");
+        sourceCache.get(CodeNode.Language.JS, "outputs.put('out', 3);");
+        assert sourceCache.getStats().entries() == 2;
+        assert sourceCache.get(CodeNode.Language.JS, "outputs.put('out', 1);") != source;
+        assert sourceCache.getStats().misses() == 4;
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new SourceCache(0));
+    }
+
+    @Test
+    public void codeNodeLogOutput() throws Exception {
+        var out = new LogOutputStream();
+        var received = new StringBuilder();
+        var calls = new AtomicInteger(0);
+        out.setLogLine(text -> {
+            synchronized (received) {
+                received.append(text);
+                calls.incrementAndGet();
+            }
+        });
+
+        //The multibyte characters are written byte by byte
+        for (var b : "h\u00e9llo \u2713\n".getBytes(StandardCharsets.UTF_8)) {
+            out.write(b);
+        }
+        //The lines written in a loop are batched
+        for (var i = 0; i < 1000; i++) {
+            out.write(("line " + i + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        out.write("incomplete".getBytes(StandardCharsets.UTF_8));
+        out.setLogLine(null);
+
+        var expected = new StringBuilder("h\u00e9llo \u2713\n");
+        for (var i = 0; i < 1000; i++) {
+            expected.append("line ").append(i).append("\n");
+        }
+        expected.append("incomplete");
+        synchronized (received) {
+            assert received.toString().equals(expected.toString());
+            assert calls.get() < 100;
+        }
+
+        //Nothing is sent once the consumer is removed
+        out.write("ignored\n".getBytes(StandardCharsets.UTF_8));
+        Thread.sleep(200);
+        synchronized (received) {
+            assert received.toString().equals(expected.toString());
+        }
+    }
+
+    @Test
+    public void codeNodeInputsBridge() {
+        var inputs = new NodeArguments();
+        var upstreamList = new LinkedList<>(List.of(1, 2, 3));
+        var upstreamMap = Map.of("a", List.of(4));
+        inputs.putArgument("list", upstreamList);
+        inputs.putArgument("map", upstreamMap);
+        inputs.putArgument("value", 5);
+        var guestInputs = PolyglotBridge.toGuest(inputs);
+
+        //The collections are seen as arrays
+        var list = (ProxyArray) guestInputs.get("list");
+        assert list.getSize() == 3;
+        assert list.get(2).equals(3);
+        Assertions.assertThrows(ArrayIndexOutOfBoundsException.class, () -> list.get(3));
+
+        //They keep the methods of a Java list
+        var listObject = (ProxyObject) list;
+        assert listObject.hasMember("size") && listObject.hasMember("get") && listObject.hasMember("add");
+        assert ((ProxyExecutable) listObject.getMember("size")).execute().equals(3);
+        assert listObject.getMember("length").equals(3);
+
+        //A modification copies the collection, the value of the workflow does not change
+        assert list.remove(0);
+        assert list.getSize() == 2;
+        assert list.get(0).equals(2);
+        assert upstreamList.equals(List.of(1, 2, 3));
+
+        //The values of the maps are converted when they are read
+        var map = (Map<?, ?>) guestInputs.get("map");
+        assert map.size() == 1;
+        assert map.get("a") instanceof ProxyArray;
+        map.remove("a");
+        assert map.isEmpty();
+        assert upstreamMap.size() == 1;
+
+        assert guestInputs.get("value").equals(5);
+    }
+
+    @Test
+    public void codeNodeInputsModified() {
+        var w = new Workflow("inputs-modified");
+        var n = w.getNodeBuilder().buildCodeNode();
+        n.getConnectorBuilder().buildInputConnector("list", WCollection.of(WPrimitive.Integer));
+        n.getConnectorBuilder().buildOutputConnector("out", WCollection.of(WPrimitive.Integer));
+        n.setCode("""
+            const list = inputs.get('list');
+            if (list.size() === 3 && list.get(0) === 1) {
+                list.add(4);
+            }
+            outputs.put('out', list);
+            """);
+        var upstream = new ArrayList<>(List.of(1, 2, 3));
+        var inputs = new NodeArguments();
+        inputs.putArgument("list", upstream);
+
+        //The code receives a copy once it modifies the list
+        var out = n.execute(inputs, line -> { }).getArgument("out").orElseThrow();
+        assert out.equals(List.of(1, 2, 3, 4));
+        assert upstream.equals(List.of(1, 2, 3));
+    }
+
+    @Test
+    public void fixObjectRandomAccess() {
+        //The collections fixed by the workflow are not copied again by the bridge
+        var fixed = WorkflowTypes.fixObject(new LinkedList<>(List.of(1, 2, 3)));
+        assert fixed instanceof List<?> && fixed instanceof RandomAccess;
+        var inputs = new NodeArguments();
+        inputs.putArgument("list", fixed);
+        var list = (ProxyArray) PolyglotBridge.toGuest(inputs).get("list");
+        assert list.get(1).equals(2);
+    }
+
+    @Test
+    public void codeNodeBatch() {
+        //The collections of primitives are packed
+        assert PolyglotBridge.toPackedArray(List.of(1, 2, 3), WPrimitive.Integer) instanceof int[] ints && ints[2] == 3;
+        assert PolyglotBridge.toPackedArray(List.of(1.5, 2.5), WPrimitive.Double) instanceof double[] doubles && doubles[1] == 2.5;
+        assert PolyglotBridge.toPackedArray(List.of("a", "b"), WPrimitive.String) instanceof String[] strings && strings[0].equals("a");
+        assert PolyglotBridge.toPackedArray(List.of(List.of(1)), WCollection.of(WPrimitive.Integer)) instanceof Object[] objects && objects[0] instanceof ProxyArray;
+
+        //The outputs of the chunks can be collections or arrays
+        assert PolyglotBridge.unpack("out", new double[] { 1.0, 2.0 }).equals(List.of(1.0, 2.0));
+        assert PolyglotBridge.unpack("out", List.of(1, 2)).equals(List.of(1, 2));
+        Assertions.assertThrows(RuntimeException.class, () -> PolyglotBridge.unpack("out", 1));
+
+        var w = new Workflow("batch");
+        var n = w.getNodeBuilder().buildCodeNode();
+        assert n.getBatchSize() == 0;
+        n.setBatchSize(1000);
+        assert n.getBatchSize() == 1000;
+        assert n.toJson().get("batchSize").getAsInt() == 1000;
+        Assertions.assertThrows(IllegalArgumentException.class, () -> n.setBatchSize(-1));
+
+        //The chunks not started by the executor are executed by the thread of the node
+        n.getConnectorBuilder().buildInputConnector("list", WCollection.of(WPrimitive.Integer));
+        n.getConnectorBuilder().buildOutputConnector("out", WCollection.of(WPrimitive.Integer));
+        n.setCode("outputs.put('out', inputs.get('list'));");
+        n.setBatchSize(2);
+        var inputs = new NodeArguments();
+        inputs.putArgument("list", List.of(1, 2, 3, 4, 5));
+        var submitted = new AtomicInteger();
+        var outputs = n.execute(inputs, line -> { }, task -> submitted.incrementAndGet());
+        assert outputs.getArgument("out").orElseThrow().equals(List.of(1, 2, 3, 4, 5));
+        assert submitted.get() == 3;
+    }
+
+    @Test
+    public void codeNodeLanguages() {
+        //The python code is indented to be the body of the main function
+        assert CodeNode.Language.PYTHON.completeMain("x = 1\noutputs.put('out', x)").equals(
+            "def main(inputs, outputs, modules):\n    pass\n    x = 1\n    outputs.put('out', x)\nmain"
+        );
+        assert CodeNode.Language.PYTHON.completeMain("").equals("def main(inputs, outputs, modules):\n    pass\nmain");
+        assert CodeNode.Language.JS.completeMain("return;").equals("(function main(inputs, outputs, modules){return;})");
+
+        var w = new Workflow("languages");
+        var n = w.getNodeBuilder().buildCodeNode();
+        n.setLanguage(CodeNode.Language.PYTHON);
+        assert n.getLanguage() == CodeNode.Language.PYTHON;
+        Assertions.assertThrows(NullPointerException.class, () -> ContextPool.INSTANCE.prewarm(null));
+    }
+
+    @Test
+    public void codeNodeModules() {
+        assert CodeNode.Language.JS.completeModule("return {};").equals("Object.freeze((function(){return {};})())");
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new CodeModule(" ", CodeNode.Language.JS, ""));
+
+        var w = new Workflow("modules");
+        var n = w.getNodeBuilder().buildCodeNode();
+        var modified = new AtomicInteger(0);
+        w.addNodeModifiedListener(node -> modified.incrementAndGet());
+
+        //The code nodes of the language of the module are modified
+        var digest = new ContentDigest();
+        n.updateDefinitionDigest(digest);
+        w.setModule(new CodeModule("utils", CodeNode.Language.JS, "return { twice: x => x * 2 };"));
+        assert modified.get() == 1;
+        var digestWithModule = new ContentDigest();
+        n.updateDefinitionDigest(digestWithModule);
+        assert !digest.toHexString().equals(digestWithModule.toHexString());
+        w.setModule(new CodeModule("other", CodeNode.Language.PYTHON, "return 1"));
+        assert modified.get() == 1;
+
+        //The sources of the modules are cached apart from the code of the nodes
+        var module = w.getModules().get("utils");
+        assert SourceCache.INSTANCE.getModule(module) == SourceCache.INSTANCE.getModule(module);
+        assert SourceCache.INSTANCE.getModule(module) != SourceCache.INSTANCE.get(CodeNode.Language.JS, module.code());
+
+        //The modules are saved with the workflow
+        var copy = new Workflow.Deserializer().deserialize(new Workflow.Serializer().serialize(w));
+        assert copy.getModules().equals(w.getModules());
+
+        assert w.removeModule("utils");
+        assert !w.removeModule("utils");
+        assert modified.get() == 2;
+    }
+
+    @Test
+    public void codeNodeWarmup() {
+        var w = new Workflow("warmup");
+        var n = w.getNodeBuilder().buildCodeNode();
+        n.getConnectorBuilder().buildOutputConnector("out", WPrimitive.Integer);
+
+        //The syntax error is found before the execution, once the warmup is done
+        n.setCode("outputs.put('out', );");
+        n.awaitDefinitionChecks();
+        var errors = new WorkflowErrors();
+        n.addDefinitionErrors(errors);
+        assert errors.getErrors().size() == 1;
+        assert errors.getErrors().stream().allMatch(e -> e instanceof CodeSyntaxError);
+
+        n.setCode("outputs.put('out', 1);");
+        n.awaitDefinitionChecks();
+        errors = new WorkflowErrors();
+        n.addDefinitionErrors(errors);
+        assert errors.getErrors().isEmpty();
+
+        //The validation before the execution waits for the warmup
+        n.setCode("outputs.put('out', );");
+        assert w.validate().orElseThrow().getErrors().stream().anyMatch(e -> e instanceof CodeSyntaxError);
+    }
 }
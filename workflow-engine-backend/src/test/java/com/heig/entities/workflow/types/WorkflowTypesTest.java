@@ -1,14 +1,13 @@
 package com.heig.entities.workflow.types;
 
+import com.heig.entities.workflow.data.ContentDigest;
 import com.heig.entities.workflow.file.FileWrapper;
 import com.heig.testHelpers.TestUtils;
 import io.quarkus.test.junit.QuarkusTest;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
 
 @QuarkusTest
 public class WorkflowTypesTest {
@@ -124,13 +123,13 @@ public class WorkflowTypesTest {
         var lstFiles = List.of(fwNotExists, fwEmpty, fwContent1, fwContent2);
 
         for (int i = 0; i < lstFiles.size(); i++) {
-            var hcI = WFile.of().getHashCode(lstFiles.get(i));
+            var hcI = ContentDigest.of(lstFiles.get(i));
             for (int j = 0; j < lstFiles.size(); j++) {
                 if (i == j) {
                     continue;
                 }
-                var hcJ = WFile.of().getHashCode(lstFiles.get(j));
-                assert hcI != hcJ;
+                var hcJ = ContentDigest.of(lstFiles.get(j));
+                assert !hcI.equals(hcJ);
             }
         }
 
@@ -141,4 +140,27 @@ public class WorkflowTypesTest {
             return true;
         });
     }
+
+    @Test
+    public void digestTest() {
+        //Values with the same hash code but a different content must have different digests
+        assert !ContentDigest.of("Aa").equals(ContentDigest.of("BB"));
+        assert !ContentDigest.of(1).equals(ContentDigest.of((long) 1));
+        assert !ContentDigest.of(List.of(1, 2)).equals(ContentDigest.of(List.of(2, 1)));
+        assert !ContentDigest.of(List.of("ab", "c")).equals(ContentDigest.of(List.of("a", "bc")));
+        assert !ContentDigest.of(List.of(List.of(1), 2)).equals(ContentDigest.of(List.of(1, List.of(2))));
+
+        //The iteration order of sets and maps must not change the digest
+        var set1 = new LinkedHashSet<>(List.of(1, 2, 3));
+        var set2 = new LinkedHashSet<>(List.of(3, 2, 1));
+        assert ContentDigest.of(set1).equals(ContentDigest.of(set2));
+        var map1 = new LinkedHashMap<String, Integer>();
+        map1.put("a", 1);
+        map1.put("b", 2);
+        var map2 = new LinkedHashMap<String, Integer>();
+        map2.put("b", 2);
+        map2.put("a", 1);
+        assert ContentDigest.of(map1).equals(ContentDigest.of(map2));
+        assert !ContentDigest.of(map1).equals(ContentDigest.of(Map.of("a", 2, "b", 1)));
+    }
 }
@@ -0,0 +1,22 @@
+package com.heig.resources;
+
+import io.quarkus.test.junit.QuarkusTest;
+import org.junit.jupiter.api.Test;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.CoreMatchers.notNullValue;
+
+@QuarkusTest
+class MetricsResourceTest {
+    @Test
+    void testMetricsEndpoint() {
+        given()
+          .when().get("/metrics")
+          .then()
+             .statusCode(200)
+             .body("memoryCache.hits", notNullValue())
+             .body("memoryCache.evictions", notNullValue())
+             .body("contextPool.reused", notNullValue())
+             .body("sourceCache.misses", notNullValue());
+    }
+}
@@ -2,6 +2,7 @@ package com.heig.testHelpers;
 
 import com.heig.entities.workflow.connectors.OutputConnector;
 import com.heig.entities.workflow.Workflow;
+import com.heig.entities.workflow.data.ContentDigest;
 import com.heig.entities.workflow.data.Data;
 import com.heig.entities.workflow.execution.*;
 import com.heig.entities.workflow.file.FileWrapper;
@@ -32,6 +33,9 @@ public class TestUtils {
             @Override
             public void nodeStateChanged(@Nonnull NodeState state) { }
 
+            @Override
+            public void runStateChanged(@Nonnull WorkflowRun run) { }
+
             @Override
             public void newLogLine(@Nonnull String line) { }
 
@@ -72,7 +76,10 @@ public class TestUtils {
 
         var cache = Data.getOrCreate(we).getCache();
         cache.set(n, inputsArgs, outputsArgs);
-        return cache.get(n, newInputsArgs).isPresent();
+        var isValid = cache.get(n, newInputsArgs).isPresent();
+        //The entries are shared between the workflows, they must be removed so the next identical node does not use them
+        cache.clear();
+        return isValid;
     }
 
     public static Optional<FileWrapper> executeFileNode(FileNode node, String path) {
@@ -106,11 +113,12 @@ public class TestUtils {
         betweenSetAndGet.accept(fw);
         var isValid = cache.get(fileNode, inputsArgs).isPresent() && validity.apply(fw);
         fw.delete();
+        //The entries are shared between the workflows, they must be removed so the next identical node does not use them
+        cache.clear();
         return isValid;
     }
 
     public static boolean hashCodeTest(Supplier<Object> supp) {
-        var realType = WorkflowTypes.fromObject(supp.get());
-        return realType.getHashCode(supp.get()) == realType.getHashCode(supp.get());
+        return ContentDigest.of(supp.get()).equals(ContentDigest.of(supp.get()));
     }
 }
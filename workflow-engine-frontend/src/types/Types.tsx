@@ -6,10 +6,12 @@ import Prism from "prismjs";
 // eslint-disable-next-line @typescript-eslint/no-unused-vars
 const _ = Prism;
 
-// import "prismjs/components/prism-python";
+import "prismjs/components/prism-python";
+import "prismjs/components/prism-ruby";
 export enum Languages {
   JS,
-  // Python
+  PYTHON,
+  RUBY
 }
 
 export enum PrimitiveTypes {
@@ -85,14 +85,16 @@ export function stringFromType(type: WType | undefined): string {
   return name + (type.parameters.length != 0 ? " " + type.parameters.map(t => stringFromType(t)).join(" ") : "");
 }
 
-export type GrammarLanguageName = "js" | "python" | "";
+export type GrammarLanguageName = "js" | "python" | "ruby" | "";
 
 export function getGrammarLanguageName(languageName: keyof typeof Languages): GrammarLanguageName {
   switch(languageName) {
     case "JS":
       return "js";
-    // case "Python":
-    //   return "python";
+    case "PYTHON":
+      return "python";
+    case "RUBY":
+      return "ruby";
     default:
       console.error(languageName + "not found");
   }